@@ -0,0 +1,73 @@
+/**
+ * Filename:   CacheStats.java
+ * Project:    p4
+ * Authors:    Bon
+ *
+ * Statistics of the installation order cache of a PackageManager, taken
+ * at one point in time.
+ */
+public class CacheStats {
+	private final long hits;
+	private final long misses;
+	private final long evictions;
+	private final long invalidations;
+	private final int entries;
+	private final long weight;
+
+	/**
+	 * Constructor
+	 * @param hits - lookups answered from the cache
+	 * @param misses - lookups that had to be computed
+	 * @param evictions - entries dropped to stay within the capacity
+	 * @param invalidations - entries dropped because the graph changed
+	 * @param entries - entries in the cache
+	 * @param weight - packages in all the cached entries
+	 */
+	CacheStats(long hits, long misses, long evictions, long invalidations, int entries, long weight) {
+		this.hits = hits;
+		this.misses = misses;
+		this.evictions = evictions;
+		this.invalidations = invalidations;
+		this.entries = entries;
+		this.weight = weight;
+	}
+
+	public long getHitCount() {
+		return hits;
+	}
+
+	public long getMissCount() {
+		return misses;
+	}
+
+	public long getEvictionCount() {
+		return evictions;
+	}
+
+	public long getInvalidationCount() {
+		return invalidations;
+	}
+
+	public int getEntryCount() {
+		return entries;
+	}
+
+	public long getWeight() {
+		return weight;
+	}
+
+	/**
+	 * Return the share of lookups answered from the cache
+	 * @return the hit rate, 0 if there were no lookups
+	 */
+	public double getHitRate() {
+		long lookups = hits + misses;
+		return lookups == 0 ? 0 : (double) hits / lookups;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("hits=%d misses=%d hitRate=%.3f evictions=%d invalidations=%d entries=%d weight=%d",
+				hits, misses, getHitRate(), evictions, invalidations, entries, weight);
+	}
+}
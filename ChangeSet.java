@@ -0,0 +1,117 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Filename:   ChangeSet.java
+ * Project:    p4
+ * Authors:    Bon
+ *
+ * The changes PackageManager.reload made to the dependency graph. Edges
+ * are grouped by the package they start from. The edges of a removed
+ * package are not listed separately.
+ */
+public class ChangeSet {
+	private final List<String> addedPackages = new ArrayList<String>();
+	private final List<String> removedPackages = new ArrayList<String>();
+	private final Map<String, List<String>> addedDependencies = new LinkedHashMap<String, List<String>>();
+	private final Map<String, List<String>> removedDependencies = new LinkedHashMap<String, List<String>>();
+
+	/**
+	 * Record a package that was added
+	 * @param pkg - the package
+	 */
+	void addPackage(String pkg) {
+		addedPackages.add(pkg);
+	}
+
+	/**
+	 * Record a package that was removed
+	 * @param pkg - the package
+	 */
+	void removePackage(String pkg) {
+		removedPackages.add(pkg);
+	}
+
+	/**
+	 * Record a dependency that was added
+	 * @param pkg - the package
+	 * @param dependency - its new dependency
+	 */
+	void addDependency(String pkg, String dependency) {
+		addedDependencies.computeIfAbsent(pkg, k -> new ArrayList<String>()).add(dependency);
+	}
+
+	/**
+	 * Record a dependency that was removed
+	 * @param pkg - the package
+	 * @param dependency - its former dependency
+	 */
+	void removeDependency(String pkg, String dependency) {
+		removedDependencies.computeIfAbsent(pkg, k -> new ArrayList<String>()).add(dependency);
+	}
+
+	/**
+	 * Return the packages that were added
+	 * @return the added packages
+	 */
+	public List<String> getAddedPackages() {
+		return Collections.unmodifiableList(addedPackages);
+	}
+
+	/**
+	 * Return the packages that were removed, with all their edges
+	 * @return the removed packages
+	 */
+	public List<String> getRemovedPackages() {
+		return Collections.unmodifiableList(removedPackages);
+	}
+
+	/**
+	 * Return the dependencies that were added
+	 * @return package -> its new dependencies
+	 */
+	public Map<String, List<String>> getAddedDependencies() {
+		return Collections.unmodifiableMap(addedDependencies);
+	}
+
+	/**
+	 * Return the dependencies that were removed from packages that are
+	 * still in the graph
+	 * @return package -> its former dependencies
+	 */
+	public Map<String, List<String>> getRemovedDependencies() {
+		return Collections.unmodifiableMap(removedDependencies);
+	}
+
+	/**
+	 * Return the number of changes
+	 * @return the number of packages and dependencies added or removed
+	 */
+	public int size() {
+		int size = addedPackages.size() + removedPackages.size();
+		for (List<String> d : addedDependencies.values()) {
+			size += d.size();
+		}
+		for (List<String> d : removedDependencies.values()) {
+			size += d.size();
+		}
+		return size;
+	}
+
+	/**
+	 * Return whether nothing changed
+	 * @return true if there are no changes
+	 */
+	public boolean isEmpty() {
+		return size() == 0;
+	}
+
+	@Override
+	public String toString() {
+		return "+packages " + addedPackages + " -packages " + removedPackages + " +dependencies " + addedDependencies
+				+ " -dependencies " + removedDependencies;
+	}
+}
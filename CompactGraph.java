@@ -0,0 +1,709 @@
+import java.util.AbstractList;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Filename:   CompactGraph.java
+ * Project:    p4
+ * Authors:    Bon
+ *
+ * Directed and unweighted graph implementation for large dependency graphs.
+ *
+ * Every vertex name is interned to a dense int id, and adjacency is kept in
+ * primitive int arrays instead of one hashtable per vertex. Once the graph
+ * is built, freeze() packs the adjacency into compressed sparse rows
+ * (an offsets array and a single targets array) so traversals walk
+ * contiguous memory. Mutating a frozen graph unpacks it again.
+ *
+ * The incoming edges of every vertex are kept in rows of their own,
+ * which are never packed, so removing a vertex and finding its
+ * dependents only look at the edges of that vertex.
+ */
+public class CompactGraph implements ObservableGraph {
+	// Latency of the graph operations, see Metrics
+	private static final Metrics.Histogram ADD_VERTEX = Metrics.timer("CompactGraph.addVertex");
+	private static final Metrics.Histogram REMOVE_VERTEX = Metrics.timer("CompactGraph.removeVertex");
+	private static final Metrics.Histogram ADD_EDGE = Metrics.timer("CompactGraph.addEdge");
+	private static final Metrics.Histogram REMOVE_EDGE = Metrics.timer("CompactGraph.removeEdge");
+	private static final Metrics.Histogram GET_ALL_VERTICES = Metrics.timer("CompactGraph.getAllVertices");
+	private static final Metrics.Histogram GET_ADJACENT_VERTICES_OF = Metrics.timer("CompactGraph.getAdjacentVerticesOf");
+	private static final Metrics.Histogram CONTAINS_VERTEX = Metrics.timer("CompactGraph.containsVertex");
+	private static final Metrics.Histogram CONTAINS_EDGE = Metrics.timer("CompactGraph.containsEdge");
+	private static final Metrics.Histogram GET_VERTEX_VIEW = Metrics.timer("CompactGraph.getVertexView");
+	private static final Metrics.Histogram GET_ADJACENT_VIEW_OF = Metrics.timer("CompactGraph.getAdjacentViewOf");
+	private static final Metrics.Histogram GET_DEPENDENTS_OF = Metrics.timer("CompactGraph.getDependentsOf");
+
+	private static final int INITIAL_CAPACITY = 16;
+	private static final int EMPTY = 0; // free slot in the name table
+	private static final int DELETED = -1; // removed slot in the name table
+	private static final int[] NO_TARGETS = new int[0];
+
+	private String[] names; // id -> name, null if the vertex was removed
+	private int[] slots; // open addressing name table, stores id + 1
+	private int used; // number of non-empty slots (including deleted)
+	private int nextId; // next id to hand out
+
+	// Mutable adjacency, used while the graph is being built
+	private int[][] adj;
+	private int[] degree;
+
+	// Compressed sparse rows, used once the graph is frozen
+	private int[] offsets;
+	private int[] targets;
+	private boolean frozen;
+
+	// Incoming adjacency, kept unpacked
+	private int[][] inc;
+	private int[] inDegree;
+	private List<GraphListener> listeners = new ArrayList<GraphListener>();
+	private final Set<String> vertexView = new VertexView();
+
+	private int size;
+	private int order;
+
+	/*
+	 * Default no-argument constructor
+	 */
+	public CompactGraph() {
+		this(INITIAL_CAPACITY);
+	}
+
+	/**
+	 * Constructor with an expected number of vertices
+	 * @param expectedVertices - number of vertices to make room for
+	 */
+	public CompactGraph(int expectedVertices) {
+		int capacity = Math.max(INITIAL_CAPACITY, expectedVertices);
+		names = new String[capacity];
+		adj = new int[capacity][];
+		degree = new int[capacity];
+		inc = new int[capacity][];
+		inDegree = new int[capacity];
+		slots = new int[tableSizeFor(capacity)];
+	}
+
+	/**
+	 * Add vertex to the graph, do nothing if the vertex is null
+	 * @param vertex - the vertex needs adding
+	 */
+	@Override
+	public void addVertex(String vertex) {
+		long start = Metrics.start();
+		try {
+			if (vertex == null) {
+				return;
+			}
+			intern(vertex);
+		} finally {
+			ADD_VERTEX.stop(start);
+		}
+	}
+
+	/**
+	 * Remove the vertex and all edges to and from it
+	 * @param vertex - the vertex needs removing
+	 */
+	@Override
+	public void removeVertex(String vertex) {
+		long start = Metrics.start();
+		try {
+			if (vertex == null) {
+				return;
+			}
+			int slot = findSlot(vertex);
+			if (slot < 0) {
+				return;
+			}
+			thaw();
+			int id = slots[slot] - 1;
+			slots[slot] = DELETED;
+			names[id] = null;
+			order--;
+			// Drop the outgoing edges
+			for (int i = 0; i < degree[id]; i++) {
+				remove(inc, inDegree, adj[id][i], id);
+			}
+			size -= degree[id];
+			degree[id] = 0;
+			adj[id] = null;
+			// Drop the incoming edges, a loop went with the outgoing ones
+			for (int i = 0; i < inDegree[id]; i++) {
+				if (remove(adj, degree, inc[id][i], id)) {
+					size--;
+				}
+			}
+			inDegree[id] = 0;
+			inc[id] = null;
+			fire(vertex);
+		} finally {
+			REMOVE_VERTEX.stop(start);
+		}
+	}
+
+	/**
+	 * Add the edge to the graph, adding missing vertices first
+	 * @param vertex1 - the starting point
+	 * @param vertex2 - the destination
+	 */
+	@Override
+	public void addEdge(String vertex1, String vertex2) {
+		long start = Metrics.start();
+		try {
+			if (vertex1 == null || vertex2 == null) {
+				return;
+			}
+			int u = intern(vertex1);
+			int v = intern(vertex2);
+			if (frozen && indexOf(u, v) >= 0) {
+				return; // edge already there, no need to unpack the rows
+			}
+			thaw();
+			if (indexOf(u, v) >= 0) {
+				return;
+			}
+			append(adj, degree, u, v);
+			append(inc, inDegree, v, u);
+			size++;
+			fire(vertex1);
+		} finally {
+			ADD_EDGE.stop(start);
+		}
+	}
+
+	/**
+	 * Remove the edge from the graph
+	 * @param vertex1 - the starting point
+	 * @param vertex2 - the destination
+	 */
+	@Override
+	public void removeEdge(String vertex1, String vertex2) {
+		long start = Metrics.start();
+		try {
+			if (vertex1 == null || vertex2 == null) {
+				return;
+			}
+			int u = idOf(vertex1);
+			int v = idOf(vertex2);
+			if (u < 0 || v < 0 || indexOf(u, v) < 0) {
+				return;
+			}
+			thaw();
+			remove(adj, degree, u, v);
+			remove(inc, inDegree, v, u);
+			size--;
+			fire(vertex1);
+		} finally {
+			REMOVE_EDGE.stop(start);
+		}
+	}
+
+	/**
+	 * Return the set of all vertices in the graph
+	 * @return set of all vertices
+	 */
+	@Override
+	public Set<String> getAllVertices() {
+		long start = Metrics.start();
+		try {
+			Set<String> vertices = new HashSet<String>(order * 2);
+			for (int id = 0; id < nextId; id++) {
+				if (names[id] != null) {
+					vertices.add(names[id]);
+				}
+			}
+			return vertices;
+		} finally {
+			GET_ALL_VERTICES.stop(start);
+		}
+	}
+
+	/**
+	 * Return the list of all vertices adjacent to the given one
+	 * @param vertex - the vertex needs finding adjacent vertices
+	 * @return the list of all adjacent vertices, empty if the vertex is not in the graph
+	 */
+	@Override
+	public List<String> getAdjacentVerticesOf(String vertex) {
+		long start = Metrics.start();
+		try {
+			int u = idOf(vertex);
+			if (u < 0) {
+				return new ArrayList<String>();
+			}
+			int from = rowStart(u);
+			int to = rowEnd(u);
+			int[] row = row(u);
+			List<String> adjacentVertices = new ArrayList<String>(to - from);
+			for (int i = from; i < to; i++) {
+				adjacentVertices.add(names[row[i]]);
+			}
+			return adjacentVertices;
+		} finally {
+			GET_ADJACENT_VERTICES_OF.stop(start);
+		}
+	}
+
+	/**
+	 * Return the list of all vertices with an edge to the given one, read
+	 * from the incoming rows
+	 * @param vertex - the vertex needs finding dependents
+	 * @return the list of all dependents, empty if the vertex is not in the graph
+	 */
+	@Override
+	public List<String> getDependentsOf(String vertex) {
+		long start = Metrics.start();
+		try {
+			int v = idOf(vertex);
+			if (v < 0) {
+				return new ArrayList<String>();
+			}
+			List<String> dependents = new ArrayList<String>(inDegree[v]);
+			for (int i = 0; i < inDegree[v]; i++) {
+				dependents.add(names[inc[v][i]]);
+			}
+			return dependents;
+		} finally {
+			GET_DEPENDENTS_OF.stop(start);
+		}
+	}
+
+	/**
+	 * Return whether a vertex is in the graph, with one lookup in the
+	 * name table
+	 * @param vertex - the vertex
+	 * @return true if it is
+	 */
+	@Override
+	public boolean containsVertex(String vertex) {
+		long start = Metrics.start();
+		try {
+			return idOf(vertex) >= 0;
+		} finally {
+			CONTAINS_VERTEX.stop(start);
+		}
+	}
+
+	/**
+	 * Return whether an edge is in the graph, scanning the row of the
+	 * starting point
+	 * @param vertex1 - the starting point
+	 * @param vertex2 - the destination
+	 * @return true if it is
+	 */
+	@Override
+	public boolean containsEdge(String vertex1, String vertex2) {
+		long start = Metrics.start();
+		try {
+			int u = idOf(vertex1);
+			int v = idOf(vertex2);
+			return u >= 0 && v >= 0 && indexOf(u, v) >= 0;
+		} finally {
+			CONTAINS_EDGE.stop(start);
+		}
+	}
+
+	/**
+	 * Return a read-only view of all the vertices, which copies nothing
+	 * and follows later changes to the graph
+	 * @return the vertices
+	 */
+	@Override
+	public Set<String> getVertexView() {
+		long start = Metrics.start();
+		try {
+			return vertexView;
+		} finally {
+			GET_VERTEX_VIEW.stop(start);
+		}
+	}
+
+	/**
+	 * Return a read-only view of the vertices adjacent to the given one,
+	 * which reads the row of the vertex on every access and follows later
+	 * changes until the vertex is removed
+	 * @param vertex - the vertex needs finding adjacent vertices
+	 * @return the adjacent vertices, empty if the vertex is not in the graph
+	 */
+	@Override
+	public List<String> getAdjacentViewOf(String vertex) {
+		long start = Metrics.start();
+		try {
+			int u = idOf(vertex);
+			if (u < 0) {
+				return Collections.<String>emptyList();
+			}
+			return new AbstractList<String>() {
+				@Override
+				public String get(int i) {
+					if (i < 0 || i >= size()) {
+						throw new IndexOutOfBoundsException("Index " + i);
+					}
+					return names[row(u)[rowStart(u) + i]];
+				}
+
+				@Override
+				public int size() {
+					return names[u] == null ? 0 : rowEnd(u) - rowStart(u);
+				}
+			};
+		} finally {
+			GET_ADJACENT_VIEW_OF.stop(start);
+		}
+	}
+
+	/**
+	 * Return the size of the graph
+	 * @return size
+	 */
+	@Override
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Return the order of graph
+	 * @return order
+	 */
+	@Override
+	public int order() {
+		return order;
+	}
+
+	/**
+	 * Pack the adjacency into compressed sparse rows. Call this once the
+	 * graph is built; any later mutation unpacks it again.
+	 */
+	public void freeze() {
+		if (frozen) {
+			return;
+		}
+		offsets = new int[nextId + 1];
+		for (int u = 0; u < nextId; u++) {
+			offsets[u + 1] = offsets[u] + degree[u];
+		}
+		targets = new int[offsets[nextId]];
+		for (int u = 0; u < nextId; u++) {
+			if (degree[u] > 0) {
+				System.arraycopy(adj[u], 0, targets, offsets[u], degree[u]);
+			}
+		}
+		adj = null;
+		degree = null;
+		frozen = true;
+	}
+
+	/**
+	 * Return whether the adjacency is currently packed
+	 * @return true if frozen
+	 */
+	public boolean isFrozen() {
+		return frozen;
+	}
+
+	/**
+	 * Register a listener to be told about every vertex whose dependencies
+	 * change
+	 * @param listener - the listener
+	 */
+	@Override
+	public void addListener(GraphListener listener) {
+		listeners.add(listener);
+	}
+
+	/**
+	 * Return the id of the vertex
+	 * @param vertex - the vertex name
+	 * @return the id, or -1 if the vertex is not in the graph
+	 */
+	int idOf(String vertex) {
+		if (vertex == null) {
+			return -1;
+		}
+		int slot = findSlot(vertex);
+		return slot < 0 ? -1 : slots[slot] - 1;
+	}
+
+	/**
+	 * Return the name of the vertex with the given id
+	 * @param id - the vertex id
+	 * @return the name, or null if the vertex was removed
+	 */
+	String nameOf(int id) {
+		return names[id];
+	}
+
+	/**
+	 * Return one past the largest id handed out so far. Removed vertices
+	 * keep their id, so some ids below this bound may be unused.
+	 * @return the id bound
+	 */
+	int idBound() {
+		return nextId;
+	}
+
+	/**
+	 * Return the backing row of the vertex; its neighbours are the ids
+	 * between rowStart(u) and rowEnd(u)
+	 * @param u - the vertex id
+	 * @return the backing array
+	 */
+	int[] row(int u) {
+		if (frozen) {
+			return targets;
+		}
+		return adj[u] == null ? NO_TARGETS : adj[u];
+	}
+
+	/**
+	 * Return the first index of the vertex's neighbours in row(u)
+	 * @param u - the vertex id
+	 * @return the start index
+	 */
+	int rowStart(int u) {
+		return frozen ? offsets[u] : 0;
+	}
+
+	/**
+	 * Return one past the last index of the vertex's neighbours in row(u)
+	 * @param u - the vertex id
+	 * @return the end index
+	 */
+	int rowEnd(int u) {
+		return frozen ? offsets[u + 1] : degree[u];
+	}
+
+	/**
+	 * The live set of vertex names, read from the name table
+	 */
+	private final class VertexView extends AbstractSet<String> {
+		@Override
+		public boolean contains(Object o) {
+			return o instanceof String && idOf((String) o) >= 0;
+		}
+
+		@Override
+		public int size() {
+			return order;
+		}
+
+		@Override
+		public Iterator<String> iterator() {
+			return new Iterator<String>() {
+				private int id = skip(0);
+
+				@Override
+				public boolean hasNext() {
+					return id < nextId;
+				}
+
+				@Override
+				public String next() {
+					if (id >= nextId) {
+						throw new NoSuchElementException();
+					}
+					String name = names[id];
+					id = skip(id + 1);
+					return name;
+				}
+
+				/**
+				 * Find the first vertex that was not removed from an id on
+				 */
+				private int skip(int from) {
+					while (from < nextId && names[from] == null) {
+						from++;
+					}
+					return from;
+				}
+			};
+		}
+	}
+
+	/**
+	 * Helper method to tell the listeners that the dependencies of a
+	 * vertex changed
+	 * @param vertex - the vertex
+	 */
+	private void fire(String vertex) {
+		for (GraphListener listener : listeners) {
+			listener.dependenciesChanged(vertex);
+		}
+	}
+
+	/**
+	 * Helper method to get the id of the vertex, adding it if needed
+	 * @param vertex - the vertex name
+	 * @return the id
+	 */
+	private int intern(String vertex) {
+		int slot = findSlot(vertex);
+		if (slot >= 0) {
+			return slots[slot] - 1;
+		}
+		thaw();
+		if (nextId == names.length) {
+			int capacity = names.length * 2;
+			names = Arrays.copyOf(names, capacity);
+			adj = Arrays.copyOf(adj, capacity);
+			degree = Arrays.copyOf(degree, capacity);
+			inc = Arrays.copyOf(inc, capacity);
+			inDegree = Arrays.copyOf(inDegree, capacity);
+		}
+		if ((used + 1) * 2 > slots.length) {
+			rehash(tableSizeFor(Math.max(order + 1, names.length)));
+		}
+		int id = nextId++;
+		names[id] = vertex;
+		int mask = slots.length - 1;
+		int i = hash(vertex) & mask;
+		while (slots[i] > EMPTY) {
+			i = (i + 1) & mask;
+		}
+		if (slots[i] == EMPTY) {
+			used++;
+		}
+		slots[i] = id + 1;
+		order++;
+		return id;
+	}
+
+	/**
+	 * Helper method to find the name table slot of the vertex
+	 * @param vertex - the vertex name
+	 * @return the slot, or -1 if the vertex is not in the graph
+	 */
+	private int findSlot(String vertex) {
+		int mask = slots.length - 1;
+		int i = hash(vertex) & mask;
+		int s;
+		while ((s = slots[i]) != EMPTY) {
+			if (s != DELETED && vertex.equals(names[s - 1])) {
+				return i;
+			}
+			i = (i + 1) & mask;
+		}
+		return -1;
+	}
+
+	/**
+	 * Helper method to rebuild the name table, dropping deleted slots
+	 * @param tableSize - the new table size, a power of two
+	 */
+	private void rehash(int tableSize) {
+		slots = new int[tableSize];
+		used = 0;
+		int mask = tableSize - 1;
+		for (int id = 0; id < nextId; id++) {
+			if (names[id] != null) {
+				int i = hash(names[id]) & mask;
+				while (slots[i] != EMPTY) {
+					i = (i + 1) & mask;
+				}
+				slots[i] = id + 1;
+				used++;
+			}
+		}
+	}
+
+	/**
+	 * Helper method to unpack the compressed rows before a mutation
+	 */
+	private void thaw() {
+		if (!frozen) {
+			return;
+		}
+		int capacity = Math.max(INITIAL_CAPACITY, names.length);
+		adj = new int[capacity][];
+		degree = new int[capacity];
+		for (int u = 0; u < nextId; u++) {
+			int d = offsets[u + 1] - offsets[u];
+			if (d > 0) {
+				adj[u] = Arrays.copyOfRange(targets, offsets[u], offsets[u + 1]);
+				degree[u] = d;
+			}
+		}
+		offsets = null;
+		targets = null;
+		frozen = false;
+	}
+
+	/**
+	 * Helper method to find an edge in the row of u
+	 * @param u - the source id
+	 * @param v - the destination id
+	 * @return the index of v in row(u), or -1 if there is no such edge
+	 */
+	private int indexOf(int u, int v) {
+		int[] row = row(u);
+		for (int i = rowStart(u), end = rowEnd(u); i < end; i++) {
+			if (row[i] == v) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Helper method to add v to the end of an unpacked row of u
+	 * @param rows - the rows, outgoing or incoming
+	 * @param degrees - the lengths of the rows
+	 * @param u - the vertex id of the row
+	 * @param v - the id to add
+	 */
+	private static void append(int[][] rows, int[] degrees, int u, int v) {
+		int[] row = rows[u];
+		if (row == null) {
+			row = rows[u] = new int[2];
+		} else if (degrees[u] == row.length) {
+			row = rows[u] = Arrays.copyOf(row, row.length * 2);
+		}
+		row[degrees[u]++] = v;
+	}
+
+	/**
+	 * Helper method to remove v from an unpacked row of u
+	 * @param rows - the rows, outgoing or incoming
+	 * @param degrees - the lengths of the rows
+	 * @param u - the vertex id of the row
+	 * @param v - the id to remove
+	 * @return true if v was there
+	 */
+	private static boolean remove(int[][] rows, int[] degrees, int u, int v) {
+		int[] row = rows[u];
+		for (int i = 0; i < degrees[u]; i++) {
+			if (row[i] == v) {
+				// Keep the insertion order of the remaining neighbours
+				System.arraycopy(row, i + 1, row, i, degrees[u] - i - 1);
+				degrees[u]--;
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Helper method to spread the hash code of a name
+	 * @param vertex - the vertex name
+	 * @return the spread hash
+	 */
+	private static int hash(String vertex) {
+		int h = vertex.hashCode() * 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+
+	/**
+	 * Helper method to size the name table for the given number of names
+	 * @param capacity - the number of names
+	 * @return a power of two at least twice the capacity
+	 */
+	private static int tableSizeFor(int capacity) {
+		return Integer.highestOneBit(Math.max(2, capacity) * 4 - 1);
+	}
+}
@@ -0,0 +1,198 @@
+///////////////////////////////////////////////////////////////////////////////
+//
+// Title:           CompactGraphTest
+// Files:           CompactGraphTest, CompactGraph
+// Course:          CS400 LEC001, Spring, 2020
+//
+// Author:          Binh Quoc Trinh (Bon)
+// Email:           btrinh@wisc.edu
+// Lecturer's Name: Debra Deppeler
+//
+/////////////////////////////// 80 COLUMNS WIDE ///////////////////////////////
+
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * This is the test suite for the compact graph class
+ * @author Bon
+ *
+ */
+public class CompactGraphTest {
+	CompactGraph g; // The graph used for the test
+
+	/**
+	 * Called before each test
+	 * @throws Exception
+	 */
+	@Before
+	public void setUp() throws Exception {
+		g = new CompactGraph();
+	}
+
+	/**
+	 * Called after each test
+	 * @throws Exception
+	 */
+	@After
+	public void tearDown() throws Exception {
+		g = null;
+	}
+
+	/**
+	 * Test if vertices and edges are counted correctly, including duplicates
+	 */
+	@Test
+	public void test00_addVertex_addEdge() {
+		g.addVertex(null);
+		g.addVertex("A");
+		g.addVertex("A");
+		g.addEdge("A", "B");
+		g.addEdge("A", "B");
+		g.addEdge("C", "B");
+		g.addEdge(null, "B");
+		assert(g.order() == 3);
+		assert(g.size() == 2);
+	}
+
+	/**
+	 * Test if removeVertex drops the vertex and the edges to and from it
+	 */
+	@Test
+	public void test01_removeVertex() {
+		g.addEdge("A", "B");
+		g.addEdge("B", "C");
+		g.addEdge("D", "B");
+		g.removeVertex("B");
+		g.removeVertex("B");
+		assert(g.order() == 3);
+		assert(g.size() == 0);
+		assert(g.getAdjacentVerticesOf("A").isEmpty());
+		// The name can be added again
+		g.addEdge("A", "B");
+		assert(g.order() == 4);
+		assert(g.getAdjacentVerticesOf("A").equals(Arrays.asList("B")));
+	}
+
+	/**
+	 * Test if removeEdge only counts edges that exist
+	 */
+	@Test
+	public void test02_removeEdge() {
+		g.addEdge("A", "B");
+		g.addEdge("A", "C");
+		g.removeEdge("A", "B");
+		g.removeEdge("A", "B");
+		g.removeEdge("C", "A");
+		assert(g.size() == 1);
+		assert(g.order() == 3);
+	}
+
+	/**
+	 * Test if the graph answers the same queries before and after freezing,
+	 * and can still be mutated once frozen
+	 */
+	@Test
+	public void test03_freeze() {
+		g.addEdge("A", "B");
+		g.addEdge("A", "C");
+		g.addEdge("B", "C");
+		g.freeze();
+		assert(g.isFrozen());
+		List<String> a = g.getAdjacentVerticesOf("A");
+		assert(a.equals(Arrays.asList("B", "C")));
+		// Adding an existing edge keeps the graph frozen
+		g.addEdge("A", "B");
+		assert(g.isFrozen());
+		g.addEdge("C", "D");
+		assert(!g.isFrozen());
+		assert(g.size() == 4);
+		assert(g.getAdjacentVerticesOf("C").equals(Arrays.asList("D")));
+	}
+
+	/**
+	 * Test if getAllVertices returns every vertex on a larger graph
+	 */
+	@Test
+	public void test04_getAllVertices_many() {
+		Set<String> ans = new HashSet<String>();
+		for (int i = 0; i < 1000; i++) {
+			g.addEdge("p" + i, "p" + (i + 1));
+			ans.add("p" + i);
+		}
+		ans.add("p1000");
+		g.freeze();
+		assert(g.getAllVertices().equals(ans));
+		assert(g.size() == 1000);
+		assert(g.getAdjacentVerticesOf("p500").equals(Arrays.asList("p501")));
+	}
+
+	/**
+	 * Test if the dependents queries follow the incoming rows of a
+	 * frozen graph
+	 */
+	@Test
+	public void test05_getDependentsOf() {
+		g.addEdge("A", "B");
+		g.addEdge("B", "C");
+		g.addEdge("C", "B");
+		g.addEdge("D", "A");
+		g.freeze();
+		assert(new HashSet<String>(g.getDependentsOf("B")).equals(new HashSet<String>(Arrays.asList("A", "C"))));
+		assert(g.getTransitiveDependentsOf("B").equals(new HashSet<String>(Arrays.asList("A", "B", "C", "D"))));
+		assert(g.getTransitiveDependentsOf("D").isEmpty());
+	}
+
+	/**
+	 * Test if the membership checks and the views follow the graph, also
+	 * across freeze and removals
+	 */
+	@Test
+	public void test06_contains_and_views() {
+		g.addEdge("A", "B");
+		g.addEdge("A", "C");
+		Set<String> vertices = g.getVertexView();
+		List<String> adjacent = g.getAdjacentViewOf("A");
+		assert(g.containsVertex("C") && !g.containsVertex("D") && !g.containsVertex(null));
+		assert(g.containsEdge("A", "C") && !g.containsEdge("C", "A"));
+		g.freeze();
+		assert(adjacent.equals(Arrays.asList("B", "C")));
+		g.removeVertex("B");
+		assert(vertices.equals(new HashSet<String>(Arrays.asList("A", "C"))));
+		assert(adjacent.equals(Arrays.asList("C")) && !g.containsEdge("A", "B"));
+		assert(g.getAdjacentViewOf("B").isEmpty());
+		try {
+			adjacent.add("D");
+			assert(false);
+		} catch (UnsupportedOperationException e) {}
+	}
+
+	/**
+	 * Test if removing vertices keeps the incoming rows right, loops and
+	 * cycles included
+	 */
+	@Test
+	public void test07_removeVertex_incoming() {
+		g.addEdge("A", "B");
+		g.addEdge("C", "B");
+		g.addEdge("B", "B");
+		g.addEdge("B", "D");
+		g.addEdge("D", "A");
+		g.freeze();
+		g.removeVertex("B");
+		assert(g.order() == 3 && g.size() == 1);
+		assert(g.getAdjacentVerticesOf("A").isEmpty() && g.getAdjacentVerticesOf("C").isEmpty());
+		assert(g.getDependentsOf("D").isEmpty() && g.getDependentsOf("A").equals(Arrays.asList("D")));
+		g.addEdge("A", "B");
+		assert(g.getDependentsOf("B").equals(Arrays.asList("A")) && g.size() == 2);
+		g.removeEdge("D", "A");
+		assert(g.getDependentsOf("A").isEmpty() && g.size() == 1);
+	}
+}
@@ -0,0 +1,414 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * Filename:   CriticalPath.java
+ * Project:    p4
+ * Authors:    Bon
+ *
+ * Critical path analysis of installing packages that take different
+ * times to install.
+ *
+ * Every package has an install cost, in any unit as long as it is the
+ * same for all packages (e.g. milliseconds); packages without a cost
+ * count as DEFAULT_COST. With unlimited workers, a package can start
+ * once its dependencies are installed, so the installation takes as
+ * long as the costliest chain of dependencies: the critical path. The
+ * analysis gives that path, the earliest and latest start of every
+ * package that do not delay the whole installation, and the slack
+ * between them; packages on the critical path have no slack.
+ *
+ * schedule() plans the installation on a fixed number of workers by list
+ * scheduling: whenever a worker is free it takes the ready package with
+ * the costliest chain of dependents still ahead of it. Finding the
+ * shortest schedule is NP-hard; this one is never longer than twice the
+ * optimum and usually close to the lower bound it reports.
+ */
+public class CriticalPath {
+	// Cost of a package without one
+	public static final long DEFAULT_COST = 1;
+
+	private final GraphIndex index;
+	private final int[] members; // ids of the packages, dependencies first
+	private final int[] position; // id -> position in members, -1 if not a member
+	private final long[] cost; // by position
+	private final long[] earliest; // earliest start, by position
+	private final long[] latest; // latest start, by position
+	private final long[] ahead; // cost of the costliest chain of dependents, the package included
+	private final long length;
+	private final long total;
+	private final List<String> path;
+
+	/**
+	 * A plan of the installation on a number of workers
+	 */
+	public static class Schedule {
+		private final int workers;
+		private final List<String> order = new ArrayList<String>();
+		private final Map<String, Long> starts = new LinkedHashMap<String, Long>();
+		private final Map<String, Integer> assignments = new LinkedHashMap<String, Integer>();
+		private long makespan;
+		private final long lowerBound;
+
+		private Schedule(int workers, long lowerBound) {
+			this.workers = workers;
+			this.lowerBound = lowerBound;
+		}
+
+		/**
+		 * Return the number of workers
+		 * @return the number of workers
+		 */
+		public int getWorkerCount() {
+			return workers;
+		}
+
+		/**
+		 * Return the packages in the order they start
+		 * @return the packages, a valid installation order
+		 */
+		public List<String> getOrder() {
+			return Collections.unmodifiableList(order);
+		}
+
+		/**
+		 * Return the start time of every package
+		 * @return package -> start, in the order they start
+		 */
+		public Map<String, Long> getStarts() {
+			return Collections.unmodifiableMap(starts);
+		}
+
+		/**
+		 * Return the worker of every package
+		 * @return package -> worker, 0 to getWorkerCount() - 1
+		 */
+		public Map<String, Integer> getWorkers() {
+			return Collections.unmodifiableMap(assignments);
+		}
+
+		/**
+		 * Return when the last package is installed
+		 * @return the total install time
+		 */
+		public long getMakespan() {
+			return makespan;
+		}
+
+		/**
+		 * Return a time no schedule on this many workers can beat: the
+		 * longer of the critical path and the total cost shared evenly
+		 * @return the lower bound
+		 */
+		public long getLowerBound() {
+			return lowerBound;
+		}
+	}
+
+	/**
+	 * Analyse the installation of every package of a graph
+	 * @param graph - the dependency graph
+	 * @param costs - package -> install cost
+	 * @return the analysis
+	 * @throws CycleException if the graph has a cycle
+	 * @throws IllegalArgumentException if a cost is negative
+	 */
+	public static CriticalPath of(GraphADT graph, Map<String, Long> costs) throws CycleException {
+		try {
+			return of(GraphIndex.of(graph), costs, null);
+		} catch (PackageNotFoundException e) {
+			throw new IllegalStateException(e); // no packages are named
+		}
+	}
+
+	/**
+	 * Analyse the installation of some packages and everything they
+	 * depend on
+	 * @param graph - the dependency graph
+	 * @param costs - package -> install cost
+	 * @param packages - the packages to install
+	 * @return the analysis
+	 * @throws CycleException if the packages depend on a cycle
+	 * @throws PackageNotFoundException if a package is not in the graph
+	 * @throws IllegalArgumentException if a cost is negative
+	 */
+	public static CriticalPath of(GraphADT graph, Map<String, Long> costs, Collection<String> packages)
+			throws CycleException, PackageNotFoundException {
+		return of(GraphIndex.of(graph), costs, packages);
+	}
+
+	/**
+	 * Analyse the installation of some packages of an index
+	 * @param index - the index of the graph
+	 * @param costs - package -> install cost
+	 * @param packages - the packages to install, null for all
+	 * @return the analysis
+	 */
+	static CriticalPath of(GraphIndex index, Map<String, Long> costs, Collection<String> packages)
+			throws CycleException, PackageNotFoundException {
+		int n = index.order();
+		int[] mark = new int[n];
+		if (packages == null) {
+			Arrays.fill(mark, 1);
+		} else {
+			int[] stack = new int[n];
+			int[] found = new int[n];
+			for (String pkg : packages) {
+				int u = index.id(pkg);
+				if (u < 0) {
+					throw new PackageNotFoundException();
+				}
+				if (mark[u] == 0) {
+					index.closure(u, mark, 1, stack, found);
+				}
+			}
+		}
+		for (int[] component : index.cyclicComponents()) {
+			for (int u : component) {
+				if (mark[u] == 1) {
+					throw new CycleException(index.cycleThrough(u));
+				}
+			}
+		}
+		return new CriticalPath(index, mark, costs);
+	}
+
+	/**
+	 * Constructor
+	 * @param index - the index of a graph without cycles among the members
+	 * @param member - id -> 1 for the packages to analyse
+	 * @param costs - package -> install cost
+	 */
+	private CriticalPath(GraphIndex index, int[] member, Map<String, Long> costs) {
+		this.index = index;
+		int n = index.order();
+		// Without cycles every package is a component of its own, and the
+		// component numbers put dependencies first
+		int[] rank = index.components();
+		int[] byRank = new int[index.componentCount()];
+		Arrays.fill(byRank, -1);
+		int count = 0;
+		for (int u = 0; u < n; u++) {
+			if (member[u] == 1) {
+				byRank[rank[u]] = u;
+				count++;
+			}
+		}
+		members = new int[count];
+		position = new int[n];
+		Arrays.fill(position, -1);
+		count = 0;
+		for (int u : byRank) {
+			if (u >= 0) {
+				position[u] = count;
+				members[count++] = u;
+			}
+		}
+
+		cost = new long[count];
+		earliest = new long[count];
+		latest = new long[count];
+		ahead = new long[count];
+		int[] before = new int[count]; // dependency that finishes last, -1 if none
+		long sum = 0;
+		long end = 0;
+		int last = -1;
+		// Forward: a package starts once its last dependency is installed
+		for (int p = 0; p < count; p++) {
+			int u = members[p];
+			Long c = costs.get(index.names[u]);
+			cost[p] = c == null ? DEFAULT_COST : c;
+			if (cost[p] < 0) {
+				throw new IllegalArgumentException("Negative cost for " + index.names[u]);
+			}
+			sum += cost[p];
+			before[p] = -1;
+			for (int i = index.offsets[u]; i < index.offsets[u + 1]; i++) {
+				int d = position[index.targets[i]];
+				long finish = earliest[d] + cost[d];
+				if (before[p] < 0 || finish > earliest[p]) {
+					earliest[p] = finish;
+					before[p] = d;
+				}
+			}
+			if (earliest[p] + cost[p] > end || last < 0) {
+				end = earliest[p] + cost[p];
+				last = p;
+			}
+		}
+		length = end;
+		total = sum;
+
+		// Backward: a package has to be installed before its first dependent starts
+		int[] roff = index.reverseOffsets();
+		int[] rtargets = index.reverseTargets();
+		for (int p = count - 1; p >= 0; p--) {
+			int u = members[p];
+			long finish = length;
+			long chain = 0;
+			for (int i = roff[u]; i < roff[u + 1]; i++) {
+				int w = position[rtargets[i]];
+				if (w >= 0) {
+					finish = Math.min(finish, latest[w]);
+					chain = Math.max(chain, ahead[w]);
+				}
+			}
+			latest[p] = finish - cost[p];
+			ahead[p] = cost[p] + chain;
+		}
+
+		List<String> chain = new ArrayList<String>();
+		for (int p = last; p >= 0; p = before[p]) {
+			chain.add(index.names[members[p]]);
+		}
+		Collections.reverse(chain);
+		path = Collections.unmodifiableList(chain);
+	}
+
+	/**
+	 * Return the total install time with unlimited workers
+	 * @return the cost of the critical path
+	 */
+	public long getLength() {
+		return length;
+	}
+
+	/**
+	 * Return the sum of the costs of all the packages, i.e. the install
+	 * time with one worker
+	 * @return the total cost
+	 */
+	public long getTotalCost() {
+		return total;
+	}
+
+	/**
+	 * Return the costliest chain of dependencies
+	 * @return the packages on the critical path, dependencies first
+	 */
+	public List<String> getPath() {
+		return path;
+	}
+
+	/**
+	 * Return the packages of the analysis
+	 * @return the packages in a valid installation order
+	 */
+	public List<String> getPackages() {
+		List<String> packages = new ArrayList<String>(members.length);
+		for (int u : members) {
+			packages.add(index.names[u]);
+		}
+		return packages;
+	}
+
+	/**
+	 * Return the earliest start of every package
+	 * @return package -> earliest start, in installation order
+	 */
+	public Map<String, Long> getEarliestStarts() {
+		return byPackage(earliest);
+	}
+
+	/**
+	 * Return the latest start of every package that does not delay the
+	 * installation
+	 * @return package -> latest start, in installation order
+	 */
+	public Map<String, Long> getLatestStarts() {
+		return byPackage(latest);
+	}
+
+	/**
+	 * Return how much every package can be delayed without delaying the
+	 * installation
+	 * @return package -> slack, in installation order, 0 on the critical path
+	 */
+	public Map<String, Long> getSlacks() {
+		long[] slack = new long[members.length];
+		for (int p = 0; p < members.length; p++) {
+			slack[p] = latest[p] - earliest[p];
+		}
+		return byPackage(slack);
+	}
+
+	/**
+	 * Plan the installation on a number of workers, starting the ready
+	 * package with the costliest chain of dependents first whenever a
+	 * worker is free
+	 * @param workers - the number of workers
+	 * @return the schedule
+	 * @throws IllegalArgumentException if workers is not positive
+	 */
+	public Schedule schedule(int workers) {
+		if (workers < 1) {
+			throw new IllegalArgumentException("Need at least one worker");
+		}
+		int count = members.length;
+		Schedule schedule = new Schedule(workers, Math.max(length, (total + workers - 1) / workers));
+		int[] remaining = new int[count]; // dependencies not installed yet
+		PriorityQueue<Integer> ready = new PriorityQueue<Integer>(
+				(a, b) -> ahead[a] != ahead[b] ? Long.compare(ahead[b], ahead[a]) : Integer.compare(a, b));
+		for (int p = 0; p < count; p++) {
+			int u = members[p];
+			remaining[p] = index.offsets[u + 1] - index.offsets[u];
+			if (remaining[p] == 0) {
+				ready.add(p);
+			}
+		}
+		// Running installs as {finish, position, worker}, the first to finish first
+		PriorityQueue<long[]> running = new PriorityQueue<long[]>((a, b) -> Long.compare(a[0], b[0]));
+		PriorityQueue<Integer> free = new PriorityQueue<Integer>();
+		for (int w = 0; w < workers; w++) {
+			free.add(w);
+		}
+		int[] roff = index.reverseOffsets();
+		int[] rtargets = index.reverseTargets();
+		long now = 0;
+		while (!ready.isEmpty() || !running.isEmpty()) {
+			while (!ready.isEmpty() && !free.isEmpty()) {
+				int p = ready.poll();
+				int w = free.poll();
+				String name = index.names[members[p]];
+				schedule.order.add(name);
+				schedule.starts.put(name, now);
+				schedule.assignments.put(name, w);
+				running.add(new long[] {now + cost[p], p, w});
+			}
+			// Finish everything that ends next
+			now = running.peek()[0];
+			while (!running.isEmpty() && running.peek()[0] == now) {
+				long[] done = running.poll();
+				free.add((int) done[2]);
+				int u = members[(int) done[1]];
+				for (int i = roff[u]; i < roff[u + 1]; i++) {
+					int w = position[rtargets[i]];
+					if (w >= 0 && --remaining[w] == 0) {
+						ready.add(w);
+					}
+				}
+			}
+			schedule.makespan = now;
+		}
+		return schedule;
+	}
+
+	/**
+	 * Helper method to name the values of the packages
+	 * @param values - the values by position
+	 * @return package -> value, in installation order
+	 */
+	private Map<String, Long> byPackage(long[] values) {
+		Map<String, Long> map = new LinkedHashMap<String, Long>(members.length * 2);
+		for (int p = 0; p < members.length; p++) {
+			map.put(index.names[members[p]], values[p]);
+		}
+		return map;
+	}
+}
@@ -0,0 +1,177 @@
+///////////////////////////////////////////////////////////////////////////////
+//
+// Title:           CriticalPathTest
+// Files:           CriticalPathTest, CriticalPath, PackageManager
+// Course:          CS400 LEC001, Spring, 2020
+//
+// Author:          Binh Quoc Trinh (Bon)
+// Email:           btrinh@wisc.edu
+// Lecturer's Name: Debra Deppeler
+//
+/////////////////////////////// 80 COLUMNS WIDE ///////////////////////////////
+
+
+import static org.junit.jupiter.api.Assertions.fail;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * This is the test suite for the critical path analysis
+ * @author Bon
+ *
+ */
+public class CriticalPathTest {
+	Graph g; // The graph used for the test
+	Map<String, Long> costs; // The install costs used for the test
+
+	/**
+	 * Called before each test: A needs B and C, which both need D, and E
+	 * stands alone with the default cost
+	 * @throws Exception
+	 */
+	@Before
+	public void setUp() throws Exception {
+		g = new Graph();
+		g.addEdge("A", "B");
+		g.addEdge("A", "C");
+		g.addEdge("B", "D");
+		g.addEdge("C", "D");
+		g.addVertex("E");
+		costs = new HashMap<String, Long>();
+		costs.put("A", 1L);
+		costs.put("B", 5L);
+		costs.put("C", 2L);
+		costs.put("D", 3L);
+	}
+
+	/**
+	 * Test if the critical path, start times and slack are right
+	 */
+	@Test
+	public void test00_analysis() {
+		try {
+			CriticalPath cp = new PackageManager(g).getCriticalPath(costs);
+			if (cp.getLength() != 9 || cp.getTotalCost() != 12 || !cp.getPath().equals(Arrays.asList("D", "B", "A"))) {
+				fail();
+			}
+			Map<String, Long> earliest = cp.getEarliestStarts();
+			Map<String, Long> slack = cp.getSlacks();
+			if (earliest.get("A") != 8 || earliest.get("C") != 3 || cp.getLatestStarts().get("C") != 6
+					|| slack.get("C") != 3 || slack.get("E") != 8 || slack.get("B") != 0 || slack.get("D") != 0) {
+				fail();
+			}
+			// Only C and what it needs
+			cp = new PackageManager(g).getCriticalPath(Arrays.asList("C"), costs);
+			if (cp.getLength() != 5 || !cp.getPackages().equals(Arrays.asList("D", "C"))) {
+				fail();
+			}
+		} catch (Exception e) {
+			fail();
+		}
+	}
+
+	/**
+	 * Test if the schedules keep the dependencies and stay within twice
+	 * the lower bound
+	 */
+	@Test
+	public void test01_schedule() {
+		try {
+			CriticalPath cp = CriticalPath.of(g, costs);
+			CriticalPath.Schedule two = cp.schedule(2);
+			if (two.getMakespan() != 9 || two.getLowerBound() != 9 || !two.getOrder().get(0).equals("D")) {
+				fail();
+			}
+			if (cp.schedule(1).getMakespan() != 12) {
+				fail();
+			}
+
+			Random random = new Random(7);
+			Graph big = new Graph();
+			Map<String, Long> bigCosts = new HashMap<String, Long>();
+			for (int i = 0; i < 500; i++) {
+				big.addVertex("P" + i);
+				bigCosts.put("P" + i, (long) random.nextInt(100));
+				for (int d = 0; d < 3 && i > 0; d++) {
+					big.addEdge("P" + i, "P" + random.nextInt(i));
+				}
+			}
+			cp = CriticalPath.of(big, bigCosts);
+			for (int workers : new int[] {1, 3, 16}) {
+				CriticalPath.Schedule schedule = cp.schedule(workers);
+				Map<String, Long> starts = schedule.getStarts();
+				if (starts.size() != 500 || schedule.getMakespan() < schedule.getLowerBound()
+						|| schedule.getMakespan() > 2 * schedule.getLowerBound()) {
+					fail();
+				}
+				for (String p : schedule.getOrder()) {
+					int worker = schedule.getWorkers().get(p);
+					if (worker < 0 || worker >= workers) {
+						fail();
+					}
+					List<String> dependencies = big.getAdjacentVerticesOf(p);
+					for (String d : dependencies) {
+						if (starts.get(p) < starts.get(d) + bigCosts.get(d)) {
+							fail();
+						}
+					}
+				}
+			}
+		} catch (Exception e) {
+			fail();
+		}
+	}
+
+	/**
+	 * Test if cycles, unknown packages and bad arguments are reported
+	 */
+	@Test
+	public void test02_errors() {
+		PackageManager pm = new PackageManager(g);
+		try {
+			pm.getCriticalPath(Arrays.asList("Z"), costs);
+			fail();
+		} catch (PackageNotFoundException e) {
+		} catch (Exception e) {
+			fail();
+		}
+		costs.put("A", -1L);
+		try {
+			pm.getCriticalPath(costs);
+			fail();
+		} catch (IllegalArgumentException e) {
+		} catch (Exception e) {
+			fail();
+		}
+		costs.put("A", 1L);
+		try {
+			pm.getCriticalPath(costs).schedule(0);
+			fail();
+		} catch (IllegalArgumentException e) {
+		} catch (Exception e) {
+			fail();
+		}
+		// A cycle only matters if the packages depend on it
+		g.addEdge("X", "Y");
+		g.addEdge("Y", "X");
+		try {
+			pm.getCriticalPath(costs);
+			fail();
+		} catch (CycleException e) {
+		} catch (Exception e) {
+			fail();
+		}
+		try {
+			pm.getCriticalPath(Arrays.asList("A"), costs);
+		} catch (Exception e) {
+			fail();
+		}
+	}
+}
@@ -1,5 +1,41 @@
+import java.util.Collections;
+import java.util.List;
 
+/**
+ * Filename:   CycleException.java
+ * Project:    p4
+ * Authors:    Bon
+ *
+ * Thrown when a cycle is found in the dependency graph. When it is known,
+ * the exception carries the cycle as a path of packages that starts and
+ * ends with the same package, e.g. [A, B, C, A] for A -> B -> C -> A.
+ */
 @SuppressWarnings("serial")
 public class CycleException extends Exception {
-	
+	private final List<String> cycle;
+
+	/**
+	 * Constructor for a cycle that is not known
+	 */
+	public CycleException() {
+		cycle = Collections.emptyList();
+	}
+
+	/**
+	 * Constructor
+	 * @param cycle - the packages on the cycle, the first one repeated at the end
+	 */
+	public CycleException(List<String> cycle) {
+		super("Cycle " + String.join(" -> ", cycle));
+		this.cycle = Collections.unmodifiableList(cycle);
+	}
+
+	/**
+	 * Return the cycle
+	 * @return the packages on the cycle, the first one repeated at the end,
+	 * or an empty list if it is not known
+	 */
+	public List<String> getCycle() {
+		return cycle;
+	}
 }
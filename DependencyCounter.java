@@ -0,0 +1,123 @@
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.stream.IntStream;
+
+/**
+ * Filename:   DependencyCounter.java
+ * Project:    p4
+ * Authors:    Bon
+ *
+ * Counts the transitive dependencies of every package in one pass.
+ *
+ * The graph is condensed into its strongly connected components, which
+ * form a DAG, and the closure of every component is propagated as a
+ * bitset from its dependencies in installation order. Bitsets over all
+ * components would take quadratic memory, so the components are split
+ * into blocks that fit in a fixed memory budget and one pass is made per
+ * block; the blocks are independent and run in parallel.
+ */
+final class DependencyCounter {
+	// Memory budget for the bitsets of all the running passes, in longs (64 MB)
+	private static final long MEMORY_WORDS = 1L << 23;
+
+	private DependencyCounter() {
+	}
+
+	/**
+	 * Count the transitive dependencies of every vertex. A package on a
+	 * cycle counts the other packages of the cycle, but never itself.
+	 * @param index - the graph
+	 * @return vertex id -> number of transitive dependencies
+	 */
+	static int[] count(GraphIndex index) {
+		int n = index.order();
+		int[] comp = index.components();
+		int c = index.componentCount();
+		int[] compSize = new int[c];
+		for (int u = 0; u < n; u++) {
+			compSize[comp[u]]++;
+		}
+		boolean singletons = c == n;
+
+		// Edges between components. Components only depend on components
+		// with smaller numbers, so every row points downwards.
+		int[] coff = new int[c + 1];
+		for (int u = 0; u < n; u++) {
+			for (int i = index.offsets[u]; i < index.offsets[u + 1]; i++) {
+				if (comp[index.targets[i]] != comp[u]) {
+					coff[comp[u] + 1]++;
+				}
+			}
+		}
+		for (int x = 0; x < c; x++) {
+			coff[x + 1] += coff[x];
+		}
+		int[] ctargets = new int[coff[c]];
+		int[] fill = new int[c];
+		for (int u = 0; u < n; u++) {
+			for (int i = index.offsets[u]; i < index.offsets[u + 1]; i++) {
+				int y = comp[index.targets[i]];
+				if (y != comp[u]) {
+					ctargets[coff[comp[u]] + fill[comp[u]]++] = y;
+				}
+			}
+		}
+
+		// Split the components into blocks of blockWords * 64 so that the
+		// bitsets of all the passes running at once fit in the budget
+		int words = (c + 63) / 64;
+		int threads = ForkJoinPool.getCommonPoolParallelism();
+		long perPass = Math.max(1, MEMORY_WORDS / Math.max(1, threads) / Math.max(1, c));
+		int blockWords = (int) Math.max(1, Math.min(words, perPass));
+		int blockBits = blockWords * 64;
+		int blocks = (c + blockBits - 1) / blockBits;
+
+		AtomicIntegerArray closure = new AtomicIntegerArray(c);
+		IntStream passes = IntStream.range(0, blocks);
+		if (blocks > 1) {
+			passes = passes.parallel();
+		}
+		passes.forEach(b -> {
+			int lo = b * blockBits;
+			int hi = Math.min(c, lo + blockBits);
+			// Components below lo cannot reach the block, so they get no row
+			long[] bits = new long[(c - lo) * blockWords];
+			for (int x = lo; x < c; x++) {
+				int row = (x - lo) * blockWords;
+				if (x < hi) {
+					bits[row + ((x - lo) >>> 6)] |= 1L << (x - lo);
+				}
+				for (int i = coff[x]; i < coff[x + 1]; i++) {
+					int y = ctargets[i];
+					if (y >= lo) {
+						int from = (y - lo) * blockWords;
+						for (int w = 0; w < blockWords; w++) {
+							bits[row + w] |= bits[from + w];
+						}
+					}
+				}
+				int reached = 0;
+				for (int w = 0; w < blockWords; w++) {
+					long word = bits[row + w];
+					if (singletons) {
+						reached += Long.bitCount(word);
+					} else {
+						while (word != 0) {
+							reached += compSize[lo + (w << 6) + Long.numberOfTrailingZeros(word)];
+							word &= word - 1;
+						}
+					}
+				}
+				if (reached > 0) {
+					closure.addAndGet(x, reached);
+				}
+			}
+		});
+
+		int[] counts = new int[n];
+		for (int u = 0; u < n; u++) {
+			counts[u] = closure.get(comp[u]) - 1;
+		}
+		return counts;
+	}
+}
@@ -1,6 +1,11 @@
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
 import java.util.HashSet;
 import java.util.Hashtable;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Set;
 
@@ -11,9 +16,33 @@ import java.util.Set;
  * Authors:    Bon
  * 
  * Directed and unweighted graph implementation
+ * 
+ * Every vertex name is stored once: the name a vertex was first added with
+ * is the key of the vertex table, the name of its node and the key of every
+ * edge to or from it, whatever String instances later calls pass in.
+ * 
+ * Optionally the graph keeps its vertices in a topological order while
+ * edges are added (Pearce and Kelly's dynamic algorithm): every vertex
+ * comes after all the vertices it has an edge to, so the order is an
+ * installation order, and an edge that would close a cycle is rejected
+ * when it is added.
  */
 
-public class Graph implements GraphADT {
+public class Graph implements ObservableGraph {
+	// Latency of the graph operations, see Metrics
+	private static final Metrics.Histogram ADD_VERTEX = Metrics.timer("Graph.addVertex");
+	private static final Metrics.Histogram REMOVE_VERTEX = Metrics.timer("Graph.removeVertex");
+	private static final Metrics.Histogram ADD_EDGE = Metrics.timer("Graph.addEdge");
+	private static final Metrics.Histogram REMOVE_EDGE = Metrics.timer("Graph.removeEdge");
+	private static final Metrics.Histogram GET_ALL_VERTICES = Metrics.timer("Graph.getAllVertices");
+	private static final Metrics.Histogram GET_ADJACENT_VERTICES_OF = Metrics.timer("Graph.getAdjacentVerticesOf");
+	private static final Metrics.Histogram CONTAINS_VERTEX = Metrics.timer("Graph.containsVertex");
+	private static final Metrics.Histogram CONTAINS_EDGE = Metrics.timer("Graph.containsEdge");
+	private static final Metrics.Histogram GET_VERTEX_VIEW = Metrics.timer("Graph.getVertexView");
+	private static final Metrics.Histogram GET_ADJACENT_VIEW_OF = Metrics.timer("Graph.getAdjacentViewOf");
+	private static final Metrics.Histogram GET_DEPENDENTS_OF = Metrics.timer("Graph.getDependentsOf");
+	private static final Metrics.Histogram GET_TRANSITIVE_DEPENDENTS_OF = Metrics.timer("Graph.getTransitiveDependentsOf");
+	
 	/**
 	 * The graph Node
 	 * @author Bon
@@ -22,6 +51,11 @@ public class Graph implements GraphADT {
 	class Node {
 		String name;
 		Hashtable<String, Node> adjacent;
+		Hashtable<String, Node> incoming; // nodes with an edge to this one
+		int position; // index in the topological order, if it is kept
+		int mark; // search number of the last search that visited the node
+		Set<String> adjacentView; // read-only views, made when first asked for
+		Set<String> incomingView;
 		
 		/**
 		 * Constructor of the graph node
@@ -30,18 +64,39 @@ public class Graph implements GraphADT {
 		public Node(String name) {
 			this.name = name;
 			adjacent = new Hashtable<String, Node>();
+			incoming = new Hashtable<String, Node>();
 		}
 	}
 	
 	Hashtable<String, Node> v_table; // implement graph using hashtable
 	private int size;
 	private int order;
+	// Topological order, null if it is not kept. Removed vertices leave a
+	// null entry until the list is compacted.
+	private ArrayList<Node> positions;
+	private int searches; // number of searches run, to mark visited nodes
+	private List<GraphListener> listeners = new ArrayList<GraphListener>();
+	private Set<String> vertexView;
+	
 	/*
 	 * Default no-argument constructor
 	 */ 
 	public Graph() {
+		this(false);
+	}
+	
+	/**
+	 * Constructor that can keep the vertices in topological order
+	 * @param keepOrder - true to maintain the order and reject edges that
+	 * would close a cycle
+	 */
+	public Graph(boolean keepOrder) {
 		v_table = new Hashtable<String, Node>();
+		vertexView = Collections.unmodifiableSet(v_table.keySet());
 		size = 0;
+		if (keepOrder) {
+			positions = new ArrayList<Node>();
+		}
 	}
 
 	/**
@@ -50,49 +105,90 @@ public class Graph implements GraphADT {
 	 */
 	@Override
 	public void addVertex(String vertex) {
-		if (vertex == null) {
-			return;
+		long start = Metrics.start();
+		try {
+			if (vertex == null) {
+				return;
+			}
+			insert(vertex);
+		} finally {
+			ADD_VERTEX.stop(start);
 		}
-		// Increase the order if the vertex is not already in the graph
-		if (v_table.putIfAbsent(vertex, new Node(vertex)) == null)
-			order++;
 	}
 
 	/**
-	 * Remove the vertex from the graph
+	 * Remove the vertex and the edges to and from it from the graph. Only
+	 * the neighbours of the vertex are touched, so this takes time
+	 * proportional to its degree.
 	 * @param vertex - the vertex needs removing
 	 */
 	@Override
 	public void removeVertex(String vertex) {
-		// Check if the vertex is null and is in the graph or not
-		if (vertex != null && v_table.remove(vertex) != null) {
-			order--; // decrease the order if it is
-			v_table.forEach((k, v) -> { // remove the edges to the vertex
-				v.adjacent.remove(vertex);
-			});
+		long start = Metrics.start();
+		try {
+			// Check if the vertex is null and is in the graph or not
+			Node node = vertex == null ? null : v_table.remove(vertex);
+			if (node != null) {
+				order--; // decrease the order if it is
+				// A self-loop is in both tables but is only one edge
+				size -= node.adjacent.size() + node.incoming.size() - (node.adjacent.containsKey(vertex) ? 1 : 0);
+				node.adjacent.forEach((k, v) -> { // remove the edges from the vertex
+					v.incoming.remove(vertex);
+				});
+				node.incoming.forEach((k, v) -> { // remove the edges to the vertex
+					v.adjacent.remove(vertex);
+				});
+				if (positions != null) {
+					positions.set(node.position, null);
+					// Drop the holes once they take up half of the order
+					if (positions.size() > 2 * order + 16) {
+						compact();
+					}
+				}
+				fire(vertex);
+			}
+		} finally {
+			REMOVE_VERTEX.stop(start);
 		}
 	}
 
 	/**
 	 * Add the edge to the vertex
+	 * 
+	 * If the graph keeps a topological order and the edge would close a
+	 * cycle, the edge is not added and an IllegalArgumentException is
+	 * thrown.
+	 * 
 	 * @param vertex1 - the starting point
 	 * @param vertex2 - the destination
 	 */
 	@Override
 	public void addEdge(String vertex1, String vertex2) {
-		// Check if any of the vertex is null
-		if (vertex1 != null && vertex2 != null) {
-			// If any of the vertex is not in the graph, add it in and increase the order
-			if (v_table.putIfAbsent(vertex1, new Node(vertex1))==null) {
-				order++;
-			}
-			if (v_table.putIfAbsent(vertex2, new Node(vertex2))==null) {
-				order++;
-			}
-			// Add the edge and increase the size if the edge is not already in the graph
-			if (v_table.get(vertex1).adjacent.putIfAbsent(vertex2, v_table.get(vertex2)) == null) {
+		long start = Metrics.start();
+		try {
+			// Check if any of the vertex is null
+			if (vertex1 != null && vertex2 != null) {
+				if (positions != null && vertex1.equals(vertex2)) {
+					throw new IllegalArgumentException("Edge " + vertex1 + " -> " + vertex2 + " would create a cycle");
+				}
+				// If any of the vertex is not in the graph, add it in and increase the order
+				Node from = insert(vertex1);
+				Node to = insert(vertex2);
+				if (from.adjacent.containsKey(vertex2)) {
+					return;
+				}
+				// Dependencies have to come first, move vertices if they do not
+				if (positions != null && to.position > from.position) {
+					reorder(from, to);
+				}
+				// Add the edge and increase the size, keyed by the stored names
+				from.adjacent.put(to.name, to);
+				to.incoming.put(from.name, from);
 				size++;
+				fire(vertex1);
 			}
+		} finally {
+			ADD_EDGE.stop(start);
 		}
 	}
 
@@ -103,11 +199,19 @@ public class Graph implements GraphADT {
 	 */
 	@Override
 	public void removeEdge(String vertex1, String vertex2) {
-		// Check if both vertex are non-null and in the graph
-		if (vertex1 != null && vertex2 != null && v_table.containsKey(vertex1) && v_table.containsKey(vertex2)) {
-			// Remove the edge and decrease the size
-			v_table.get(vertex1).adjacent.remove(vertex2);
-			size--;
+		long start = Metrics.start();
+		try {
+			// Check if both vertex are non-null and in the graph
+			if (vertex1 != null && vertex2 != null && v_table.containsKey(vertex1) && v_table.containsKey(vertex2)) {
+				// Remove the edge and decrease the size if the edge was in the graph
+				if (v_table.get(vertex1).adjacent.remove(vertex2) != null) {
+					v_table.get(vertex2).incoming.remove(vertex1);
+					size--;
+					fire(vertex1);
+				}
+			}
+		} finally {
+			REMOVE_EDGE.stop(start);
 		}
 	}
 
@@ -117,12 +221,12 @@ public class Graph implements GraphADT {
 	 */
 	@Override
 	public Set<String> getAllVertices() {
-		Set<String> vertices = new HashSet<String>();
-		// Get all the vertices in the graph
-		v_table.forEach((k, v) -> {
-			vertices.add(k);
-		});
-		return vertices;
+		long start = Metrics.start();
+		try {
+			return new HashSet<String>(v_table.keySet());
+		} finally {
+			GET_ALL_VERTICES.stop(start);
+		}
 	}
 
 	/**
@@ -132,12 +236,187 @@ public class Graph implements GraphADT {
 	 */
 	@Override
 	public List<String> getAdjacentVerticesOf(String vertex) {
-		List<String> adjacentVertices = new LinkedList<String>();
-		// Get all the adjacent vertices
-		v_table.get(vertex).adjacent.forEach((k,v) -> {
-			adjacentVertices.add(k);
-		});
-		return adjacentVertices;
+		long start = Metrics.start();
+		try {
+			return new ArrayList<String>(v_table.get(vertex).adjacent.keySet());
+		} finally {
+			GET_ADJACENT_VERTICES_OF.stop(start);
+		}
+	}
+
+	/**
+	 * Return the list of all vertices with an edge to the given one, read
+	 * from the incoming edge index
+	 * @param vertex - the vertex needs finding dependents
+	 * @return the list of all dependents, empty if the vertex is not in the graph
+	 */
+	@Override
+	public List<String> getDependentsOf(String vertex) {
+		long start = Metrics.start();
+		try {
+			Node node = vertex == null ? null : v_table.get(vertex);
+			if (node == null) {
+				return new ArrayList<String>();
+			}
+			return new ArrayList<String>(node.incoming.keySet());
+		} finally {
+			GET_DEPENDENTS_OF.stop(start);
+		}
+	}
+
+	/**
+	 * Return the set of all vertices from which the given one can be
+	 * reached, following the incoming edge index
+	 * @param vertex - the vertex needs finding dependents
+	 * @return the set of all transitive dependents
+	 */
+	@Override
+	public Set<String> getTransitiveDependentsOf(String vertex) {
+		long start = Metrics.start();
+		try {
+			Set<String> dependents = new HashSet<String>();
+			Node node = vertex == null ? null : v_table.get(vertex);
+			if (node == null) {
+				return dependents;
+			}
+			Deque<Node> pending = new ArrayDeque<Node>();
+			pending.push(node);
+			while (!pending.isEmpty()) {
+				for (Node u : pending.pop().incoming.values()) {
+					if (dependents.add(u.name)) {
+						pending.push(u);
+					}
+				}
+			}
+			return dependents;
+		} finally {
+			GET_TRANSITIVE_DEPENDENTS_OF.stop(start);
+		}
+	}
+
+	/**
+	 * Return whether a vertex is in the graph, in constant time
+	 * @param vertex - the vertex
+	 * @return true if it is
+	 */
+	@Override
+	public boolean containsVertex(String vertex) {
+		long start = Metrics.start();
+		try {
+			return vertex != null && v_table.containsKey(vertex);
+		} finally {
+			CONTAINS_VERTEX.stop(start);
+		}
+	}
+
+	/**
+	 * Return whether an edge is in the graph, in constant time
+	 * @param vertex1 - the starting point
+	 * @param vertex2 - the destination
+	 * @return true if it is
+	 */
+	@Override
+	public boolean containsEdge(String vertex1, String vertex2) {
+		long start = Metrics.start();
+		try {
+			Node node = vertex1 == null || vertex2 == null ? null : v_table.get(vertex1);
+			return node != null && node.adjacent.containsKey(vertex2);
+		} finally {
+			CONTAINS_EDGE.stop(start);
+		}
+	}
+
+	/**
+	 * Return a read-only view of all the vertices in the graph. Unlike
+	 * getAllVertices it copies nothing: the view follows later changes to
+	 * the graph, and must not be iterated while the graph changes.
+	 * @return the vertices
+	 */
+	@Override
+	public Set<String> getVertexView() {
+		long start = Metrics.start();
+		try {
+			return vertexView;
+		} finally {
+			GET_VERTEX_VIEW.stop(start);
+		}
+	}
+
+	/**
+	 * Return a read-only view of the vertices adjacent to the given one,
+	 * which copies nothing and follows later changes like getVertexView
+	 * @param vertex - the vertex needs finding adjacent vertices
+	 * @return the adjacent vertices, empty if the vertex is not in the graph
+	 */
+	@Override
+	public Set<String> getAdjacentViewOf(String vertex) {
+		long start = Metrics.start();
+		try {
+			Node node = vertex == null ? null : v_table.get(vertex);
+			if (node == null) {
+				return Collections.emptySet();
+			}
+			if (node.adjacentView == null) {
+				node.adjacentView = Collections.unmodifiableSet(node.adjacent.keySet());
+			}
+			return node.adjacentView;
+		} finally {
+			GET_ADJACENT_VIEW_OF.stop(start);
+		}
+	}
+
+	/**
+	 * Return a read-only view of the vertices with an edge to the given
+	 * one, which copies nothing and follows later changes like getVertexView
+	 * @param vertex - the vertex needs finding dependents
+	 * @return the dependents, empty if the vertex is not in the graph
+	 */
+	public Set<String> getDependentViewOf(String vertex) {
+		Node node = vertex == null ? null : v_table.get(vertex);
+		if (node == null) {
+			return Collections.emptySet();
+		}
+		if (node.incomingView == null) {
+			node.incomingView = Collections.unmodifiableSet(node.incoming.keySet());
+		}
+		return node.incomingView;
+	}
+
+	/**
+	 * Register a listener to be told about every vertex whose dependencies
+	 * change
+	 * @param listener - the listener
+	 */
+	@Override
+	public void addListener(GraphListener listener) {
+		listeners.add(listener);
+	}
+
+	/**
+	 * Return whether the graph keeps its vertices in topological order
+	 * @return true if the order is kept
+	 */
+	public boolean keepsOrder() {
+		return positions != null;
+	}
+
+	/**
+	 * Return the kept topological order: every vertex comes after all the
+	 * vertices it has an edge to. Takes time proportional to the order.
+	 * @return the vertices in topological order
+	 * @throws IllegalStateException if the graph does not keep the order
+	 */
+	public List<String> getTopologicalOrder() {
+		if (positions == null) {
+			throw new IllegalStateException("Graph does not keep a topological order");
+		}
+		List<String> vertices = new ArrayList<String>(order);
+		for (Node node : positions) {
+			if (node != null) {
+				vertices.add(node.name);
+			}
+		}
+		return vertices;
 	}
 
 	/**
@@ -158,6 +437,127 @@ public class Graph implements GraphADT {
 		return order;
 	}
 
-	// TODO: implement all the methods declared in GraphADT
+	/**
+	 * Helper method to tell the listeners that the dependencies of a
+	 * vertex changed
+	 * @param vertex - the vertex
+	 */
+	private void fire(String vertex) {
+		for (GraphListener listener : listeners) {
+			listener.dependenciesChanged(vertex);
+		}
+	}
+
+	/**
+	 * Helper method to get the node of a vertex, adding it if needed. New
+	 * vertices go to the end of the topological order.
+	 * @param vertex - the vertex
+	 * @return the node
+	 */
+	private Node insert(String vertex) {
+		Node node = v_table.get(vertex);
+		if (node == null) {
+			node = new Node(vertex);
+			v_table.put(vertex, node);
+			order++;
+			if (positions != null) {
+				node.position = positions.size();
+				positions.add(node);
+			}
+		}
+		return node;
+	}
+
+	/**
+	 * Helper method to restore the topological order before the edge
+	 * from -> to is added, where to comes after from. Only the vertices
+	 * between the two positions that are connected to them are searched
+	 * and moved.
+	 * @param from - the starting point of the new edge
+	 * @param to - the destination of the new edge
+	 * @throws IllegalArgumentException if the edge would close a cycle
+	 */
+	private void reorder(Node from, Node to) {
+		int lower = from.position;
+		int upper = to.position;
+		// Vertices that depend on from and sit before to have to move after to;
+		// reaching to itself means to already depends on from
+		List<Node> dependents = search(from, true, lower, upper);
+		if (dependents == null) {
+			throw new IllegalArgumentException("Edge " + from.name + " -> " + to.name + " would create a cycle");
+		}
+		// Vertices to depends on that sit after from have to move before it
+		List<Node> dependencies = search(to, false, lower, upper);
+		
+		// Hand out the positions of both groups again, dependencies first
+		Comparator<Node> byPosition = Comparator.comparingInt(n -> n.position);
+		dependents.sort(byPosition);
+		dependencies.sort(byPosition);
+		int[] free = new int[dependents.size() + dependencies.size()];
+		int i = 0;
+		for (Node node : dependencies) {
+			free[i++] = node.position;
+		}
+		for (Node node : dependents) {
+			free[i++] = node.position;
+		}
+		Arrays.sort(free);
+		i = 0;
+		for (Node node : dependencies) {
+			node.position = free[i++];
+			positions.set(node.position, node);
+		}
+		for (Node node : dependents) {
+			node.position = free[i++];
+			positions.set(node.position, node);
+		}
+	}
+
+	/**
+	 * Helper method to collect the vertices reachable from a vertex whose
+	 * positions are strictly between lower and upper
+	 * @param start - the vertex to start from, included in the result
+	 * @param up - true to follow incoming edges (to dependents), false to
+	 * follow outgoing edges (to dependencies)
+	 * @param lower - the lower position
+	 * @param upper - the upper position
+	 * @return the vertices, or null if the search going up reached upper
+	 */
+	private List<Node> search(Node start, boolean up, int lower, int upper) {
+		int mark = ++searches;
+		List<Node> found = new ArrayList<Node>();
+		Deque<Node> pending = new ArrayDeque<Node>();
+		start.mark = mark;
+		pending.push(start);
+		while (!pending.isEmpty()) {
+			Node node = pending.pop();
+			found.add(node);
+			for (Node next : (up ? node.incoming : node.adjacent).values()) {
+				if (up && next.position == upper) {
+					return null;
+				}
+				if (next.mark != mark && next.position > lower && next.position < upper) {
+					next.mark = mark;
+					pending.push(next);
+				}
+			}
+		}
+		return found;
+	}
+
+	/**
+	 * Helper method to drop the holes left in the topological order by
+	 * removed vertices
+	 */
+	private void compact() {
+		ArrayList<Node> packed = new ArrayList<Node>(order);
+		for (Node node : positions) {
+			if (node != null) {
+				node.position = packed.size();
+				packed.add(node);
+			}
+		}
+		positions = packed;
+	}
 
 }
@@ -1,4 +1,12 @@
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 /**
@@ -106,6 +114,124 @@ public interface GraphADT {
      */
     public List<String> getAdjacentVerticesOf(String vertex);
     
+    
+    /**
+     * Returns whether a vertex is in the graph
+     * 
+     * This default implementation copies the vertex set; implementations
+     * answer without copying anything.
+     * 
+     * @param vertex the vertex
+     * @return true if the vertex is non-null and in the graph
+     */
+    public default boolean containsVertex(String vertex) {
+        return vertex != null && getAllVertices().contains(vertex);
+    }
+    
+    
+    /**
+     * Returns whether the edge from vertex1 to vertex2 is in the graph
+     * 
+     * @param vertex1 the first vertex (src)
+     * @param vertex2 the second vertex (dst)
+     * @return true if both vertices are in the graph and the edge is too
+     */
+    public default boolean containsEdge(String vertex1, String vertex2) {
+        return containsVertex(vertex1) && getAdjacentVerticesOf(vertex1).contains(vertex2);
+    }
+    
+    
+    /**
+     * Returns an unmodifiable view of all the vertices
+     * 
+     * Unlike getAllVertices, implementations copy nothing: the view 
+     * follows later changes to the graph, and must not be iterated while
+     * the graph changes. This default implementation returns a copy.
+     * 
+     * @return a Set<String> of all the vertices, which cannot be changed
+     */
+    public default Set<String> getVertexView() {
+        return Collections.unmodifiableSet(getAllVertices());
+    }
+    
+    
+    /**
+     * Returns an unmodifiable view of the neighbors of a vertex, like
+     * getVertexView
+     * 
+     * @param vertex the specified vertex
+     * @return a Collection<String> of the adjacent vertices, which cannot
+     * be changed, empty if the vertex is not in the graph
+     */
+    public default Collection<String> getAdjacentViewOf(String vertex) {
+        if (!containsVertex(vertex)) {
+            return Collections.<String>emptyList();
+        }
+        return Collections.unmodifiableList(getAdjacentVerticesOf(vertex));
+    }
+    
+    
+    /**
+     * Get all the vertices with an edge to a vertex
+     * 
+     * For the example graph, A->[B, C], D->[A, B] 
+     *     getDependentsOf(B) should return [A, D]. 
+     * 
+     * In terms of packages, these are the packages that directly
+     * depend on the given one.
+     * 
+     * This default implementation scans the whole graph; implementations
+     * that index incoming edges answer in time proportional to the result.
+     * 
+     * @param vertex the specified vertex
+     * @return a List<String> of the vertices with an edge to the specified 
+     * vertex, empty if the vertex is not in the graph
+     */
+    public default List<String> getDependentsOf(String vertex) {
+        List<String> dependents = new ArrayList<String>();
+        for (String v : getAllVertices()) {
+            if (getAdjacentVerticesOf(v).contains(vertex)) {
+                dependents.add(v);
+            }
+        }
+        return dependents;
+    }
+    
+    
+    /**
+     * Get all the vertices from which a vertex can be reached, i.e. the
+     * packages that depend on the given one directly or through other
+     * packages. The vertex itself is only included if it is on a cycle.
+     * 
+     * This default implementation reverses the whole graph once and then
+     * searches it; implementations that index incoming edges only visit
+     * the dependents.
+     * 
+     * @param vertex the specified vertex
+     * @return a Set<String> of all the transitive dependents, empty if the
+     * vertex is not in the graph
+     */
+    public default Set<String> getTransitiveDependentsOf(String vertex) {
+        Map<String, List<String>> incoming = new HashMap<String, List<String>>();
+        for (String v : getAllVertices()) {
+            for (String w : getAdjacentVerticesOf(v)) {
+                incoming.computeIfAbsent(w, k -> new ArrayList<String>()).add(v);
+            }
+        }
+        Set<String> dependents = new HashSet<String>();
+        Deque<String> pending = new ArrayDeque<String>();
+        pending.push(vertex);
+        while (!pending.isEmpty()) {
+            for (String u : incoming.getOrDefault(pending.pop(), Collections.<String>emptyList())) {
+                if (dependents.add(u)) {
+                    pending.push(u);
+                }
+            }
+        }
+        return dependents;
+    }
+    
+    
 
     /**
      * Returns the number of edges in this graph.
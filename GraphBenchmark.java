@@ -0,0 +1,369 @@
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Filename:   GraphBenchmark.java
+ * Project:    p4
+ * Authors:    Bon
+ *
+ * Benchmark suite for graph construction and the ordering queries of
+ * PackageManager.
+ *
+ * Every operation is measured on generated graphs of several sizes
+ * (counted in edges) and shapes: a chain, a wide fan-out tree, stacked
+ * diamonds and a random DAG. Each measurement is warmed up first and then
+ * timed over several fixed-length iterations. Throughput is reported in
+ * ops/s and the allocation rate, measured per thread through the
+ * HotSpot ThreadMXBean, in bytes/op and MB/s. A removeVertex operation
+ * also puts the edges of the removed package back, so the graph stays
+ * the same size from one call to the next.
+ *
+ * The queries run with the cache of installation orders disabled, so
+ * they time the ordering itself. The getInstallationOrder.cached and
+ * toInstall.cached variants keep the cache on; after the warm-up they
+ * mostly time cache hits.
+ *
+ * Usage: java -Xmx8g GraphBenchmark [--sizes 1000,10000] [--shapes chain,random]
+ *            [--ops getInstallationOrder,toInstall] [--iterations 5] [--time 1000]
+ *
+ * The largest default size (10^7 edges) needs a few GB of heap.
+ */
+public class GraphBenchmark {
+	// Suffix of the operations that run with the cached installation orders
+	static final String CACHED = ".cached";
+	// The benchmarked operations
+	static final String[] OPS = {"constructGraph", "addEdge", "removeVertex", "getInstallationOrder",
+			"getInstallationOrder" + CACHED, "toInstall", "toInstall" + CACHED, "getInstallationOrderForAllPackages",
+			"getPackageWithMaxDependencies"};
+
+	/**
+	 * The generated graph shapes
+	 */
+	enum Shape {
+		CHAIN, FANOUT, DIAMOND, RANDOM;
+
+		/**
+		 * Generate the edges of a graph with this shape, as pairs of
+		 * package numbers (dependent, dependency)
+		 * @param edges - the number of edges
+		 * @param random - the source of randomness
+		 * @return the edges, edge i is [2i] -> [2i + 1]
+		 */
+		int[] edges(int edges, Random random) {
+			int[] e = new int[2 * edges];
+			for (int i = 0; i < edges; i++) {
+				int from;
+				int to;
+				switch (this) {
+				case CHAIN: // p0 -> p1 -> p2 -> ...
+					from = i;
+					to = i + 1;
+					break;
+				case FANOUT: // tree where every package has 32 dependencies
+					from = i / 32;
+					to = i + 1;
+					break;
+				case DIAMOND: // layers of 4, each depending on all of the next layer
+					int layer = i / 16;
+					from = layer * 4 + (i % 16) / 4;
+					to = (layer + 1) * 4 + i % 4;
+					break;
+				default: // random DAG with 4 edges per package on average
+					int n = Math.max(2, edges / 4);
+					from = random.nextInt(n - 1);
+					to = from + 1 + random.nextInt(n - from - 1);
+					break;
+				}
+				e[2 * i] = from;
+				e[2 * i + 1] = to;
+			}
+			return e;
+		}
+	}
+
+	/**
+	 * One timed invocation of an operation
+	 */
+	interface Op {
+		/**
+		 * Run the operation
+		 * @return the number of operations done, e.g. edges added
+		 * @throws Exception if the operation fails
+		 */
+		long run() throws Exception;
+	}
+
+	static volatile Object sink; // keeps results alive so the JIT cannot drop the work
+
+	private final int iterations;
+	private final long iterationNanos;
+	private final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+
+	/**
+	 * Constructor
+	 * @param iterations - timed iterations per measurement
+	 * @param iterationMillis - length of an iteration
+	 */
+	GraphBenchmark(int iterations, long iterationMillis) {
+		this.iterations = iterations;
+		this.iterationNanos = iterationMillis * 1000000L;
+	}
+
+	public static void main(String[] args) throws Exception {
+		int[] sizes = {1000, 10000, 100000, 1000000, 10000000};
+		List<Shape> shapes = Arrays.asList(Shape.values());
+		List<String> ops = Arrays.asList(OPS);
+		int iterations = 5;
+		long millis = 1000;
+		for (int i = 0; i + 1 < args.length; i += 2) {
+			String value = args[i + 1];
+			switch (args[i]) {
+			case "--sizes":
+				sizes = Arrays.stream(value.split(",")).mapToInt(Integer::parseInt).toArray();
+				break;
+			case "--shapes":
+				shapes = new ArrayList<Shape>();
+				for (String s : value.split(",")) {
+					shapes.add(Shape.valueOf(s.toUpperCase()));
+				}
+				break;
+			case "--ops":
+				ops = Arrays.asList(value.split(","));
+				break;
+			case "--iterations":
+				iterations = Integer.parseInt(value);
+				break;
+			case "--time":
+				millis = Long.parseLong(value);
+				break;
+			default:
+				throw new IllegalArgumentException("Unknown option " + args[i]);
+			}
+		}
+
+		GraphBenchmark bench = new GraphBenchmark(iterations, millis);
+		System.out.printf("%-36s %-8s %10s %14s %14s %12s %10s%n",
+				"Benchmark", "Shape", "Edges", "ops/s", "ns/op", "B/op", "MB/s");
+		for (Shape shape : shapes) {
+			for (int size : sizes) {
+				for (String op : ops) {
+					bench.run(op, shape, size);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Measure one operation on one graph and print the result
+	 * @param op - the operation name
+	 * @param shape - the graph shape
+	 * @param size - the number of edges
+	 * @throws Exception if the operation fails
+	 */
+	void run(String op, Shape shape, int size) throws Exception {
+		Random random = new Random(42);
+		int[] edges = shape.edges(size, random);
+		Graph graph = build(edges);
+		String[] names = graph.getAllVertices().toArray(new String[0]);
+		Arrays.sort(names);
+		boolean cached = op.endsWith(CACHED);
+		PackageManager pm = new PackageManager(graph);
+		if (!cached) {
+			pm.setCacheCapacity(0);
+		}
+		Op body;
+		switch (cached ? op.substring(0, op.length() - CACHED.length()) : op) {
+		case "constructGraph":
+			File json = writeManifest(edges);
+			body = () -> {
+				PackageManager fresh = new PackageManager();
+				fresh.constructGraph(json.getPath());
+				sink = fresh;
+				return 1;
+			};
+			break;
+		case "addEdge":
+			body = () -> {
+				sink = build(edges);
+				return size;
+			};
+			break;
+		case "removeVertex":
+			int[][] incident = incidentEdges(edges);
+			Graph target = build(edges);
+			body = () -> {
+				// Remove a package, then put its edges back for the next call
+				int v = random.nextInt(incident.length);
+				target.removeVertex("p" + v);
+				for (int i : incident[v]) {
+					target.addEdge("p" + edges[2 * i], "p" + edges[2 * i + 1]);
+				}
+				return 1;
+			};
+			break;
+		case "getInstallationOrder":
+			body = () -> {
+				sink = pm.getInstallationOrder(names[random.nextInt(names.length)]);
+				return 1;
+			};
+			break;
+		case "toInstall":
+			body = () -> {
+				sink = pm.toInstall(names[random.nextInt(names.length)], names[random.nextInt(names.length)]);
+				return 1;
+			};
+			break;
+		case "getInstallationOrderForAllPackages":
+			body = () -> {
+				sink = pm.getInstallationOrderForAllPackages();
+				return 1;
+			};
+			break;
+		case "getPackageWithMaxDependencies":
+			body = () -> {
+				sink = pm.getPackageWithMaxDependencies();
+				return 1;
+			};
+			break;
+		default:
+			throw new IllegalArgumentException("Unknown operation " + op);
+		}
+		measure(op, shape, size, body);
+	}
+
+	/**
+	 * Warm up and time an operation, then print ops/s and allocation
+	 * @param op - the operation name
+	 * @param shape - the graph shape
+	 * @param size - the number of edges
+	 * @param body - the operation
+	 * @throws Exception if the operation fails
+	 */
+	void measure(String op, Shape shape, int size, Op body) throws Exception {
+		// Warm up for as long as one timed iteration
+		iteration(body);
+		long ops = 0;
+		long nanos = 0;
+		long bytes = 0;
+		for (int i = 0; i < iterations; i++) {
+			long[] result = iteration(body);
+			ops += result[0];
+			nanos += result[1];
+			bytes += result[2];
+		}
+		double seconds = nanos / 1e9;
+		System.out.printf("%-36s %-8s %10d %14.1f %14.1f %12s %10s%n",
+				op, shape.name().toLowerCase(), size, ops / seconds, (double) nanos / ops,
+				bytes < 0 ? "n/a" : String.format("%.0f", (double) bytes / ops),
+				bytes < 0 ? "n/a" : String.format("%.1f", bytes / seconds / (1 << 20)));
+	}
+
+	/**
+	 * Run an operation repeatedly for one iteration
+	 * @param body - the operation
+	 * @return operations done, nanoseconds taken and bytes allocated (-1 if unknown)
+	 * @throws Exception if the operation fails
+	 */
+	private long[] iteration(Op body) throws Exception {
+		long startBytes = allocatedBytes();
+		long start = System.nanoTime();
+		long ops = 0;
+		long elapsed;
+		do {
+			ops += body.run();
+			elapsed = System.nanoTime() - start;
+		} while (elapsed < iterationNanos);
+		long endBytes = allocatedBytes();
+		return new long[] {ops, elapsed, startBytes < 0 ? -1 : endBytes - startBytes};
+	}
+
+	/**
+	 * Helper method to read the bytes allocated so far by this thread
+	 * @return the allocated bytes, or -1 if the JVM cannot tell
+	 */
+	private long allocatedBytes() {
+		if (threads instanceof com.sun.management.ThreadMXBean) {
+			return ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(Thread.currentThread().getId());
+		}
+		return -1;
+	}
+
+	/**
+	 * Helper method to build a graph from generated edges
+	 * @param edges - the edges
+	 * @return the graph
+	 */
+	static Graph build(int[] edges) {
+		Graph g = new Graph();
+		for (int i = 0; i < edges.length; i += 2) {
+			g.addEdge("p" + edges[i], "p" + edges[i + 1]);
+		}
+		return g;
+	}
+
+	/**
+	 * Helper method to list the edges touching every package
+	 * @param edges - the edges
+	 * @return package number -> indexes of its edges
+	 */
+	static int[][] incidentEdges(int[] edges) {
+		int n = 0;
+		for (int v : edges) {
+			n = Math.max(n, v + 1);
+		}
+		int[] degree = new int[n];
+		for (int v : edges) {
+			degree[v]++;
+		}
+		int[][] incident = new int[n][];
+		for (int v = 0; v < n; v++) {
+			incident[v] = new int[degree[v]];
+			degree[v] = 0;
+		}
+		for (int i = 0; i < edges.length; i++) {
+			int v = edges[i];
+			incident[v][degree[v]++] = i / 2;
+		}
+		return incident;
+	}
+
+	/**
+	 * Helper method to write generated edges as a json manifest
+	 * @param edges - the edges, grouped by dependent
+	 * @return the temporary file
+	 * @throws IOException if the file cannot be written
+	 */
+	static File writeManifest(int[] edges) throws IOException {
+		Graph g = build(edges);
+		File file = File.createTempFile("bench", ".json");
+		file.deleteOnExit();
+		try (BufferedWriter out = new BufferedWriter(new FileWriter(file))) {
+			out.write("{\"packages\": [\n");
+			boolean first = true;
+			for (String name : g.getAllVertices()) {
+				out.write(first ? "  {\"name\": \"" : ",\n  {\"name\": \"");
+				out.write(name);
+				out.write("\", \"dependencies\": [");
+				boolean firstDep = true;
+				for (String dep : g.getAdjacentVerticesOf(name)) {
+					out.write(firstDep ? "\"" : ", \"");
+					out.write(dep);
+					out.write('"');
+					firstDep = false;
+				}
+				out.write("]}");
+				first = false;
+			}
+			out.write("\n]}\n");
+		}
+		return file;
+	}
+}
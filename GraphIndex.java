@@ -0,0 +1,449 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Filename:   GraphIndex.java
+ * Project:    p4
+ * Authors:    Bon
+ *
+ * Read-only, int-indexed copy of a graph used by the whole-graph
+ * algorithms in PackageManager.
+ *
+ * Vertices are numbered 0..n-1 and the edges of vertex u are
+ * targets[offsets[u]] .. targets[offsets[u + 1] - 1] (compressed sparse
+ * rows). The reversed edges, i.e. the dependents of every vertex, are
+ * built on first use.
+ */
+final class GraphIndex {
+	final String[] names; // id -> name
+	final Map<String, Integer> ids; // name -> id
+	final int[] offsets;
+	final int[] targets;
+
+	private int[] reverseOffsets;
+	private int[] reverseTargets;
+	private int[] components;
+	private int componentCount;
+
+	/**
+	 * Constructor from already numbered rows
+	 * @param names - id -> name
+	 * @param offsets - row offsets, of length names.length + 1
+	 * @param targets - the edges of all the rows
+	 */
+	GraphIndex(String[] names, int[] offsets, int[] targets) {
+		this(names, idsOf(names), offsets, targets);
+	}
+
+	/**
+	 * Constructor from already numbered rows and their name lookup
+	 * @param names - id -> name
+	 * @param ids - name -> id
+	 * @param offsets - row offsets, of length names.length + 1
+	 * @param targets - the edges of all the rows
+	 */
+	private GraphIndex(String[] names, Map<String, Integer> ids, int[] offsets, int[] targets) {
+		this.names = names;
+		this.ids = ids;
+		this.offsets = offsets;
+		this.targets = targets;
+	}
+
+	/**
+	 * Build the index of the current state of a graph
+	 * @param graph - the graph to copy
+	 * @return the index
+	 */
+	static GraphIndex of(GraphADT graph) {
+		if (graph instanceof CompactGraph) {
+			return of((CompactGraph) graph);
+		}
+		if (graph instanceof GraphSnapshot) {
+			return ((GraphSnapshot) graph).index();
+		}
+		String[] names = graph.getVertexView().toArray(new String[0]);
+		Map<String, Integer> ids = idsOf(names);
+		int[] offsets = new int[names.length + 1];
+		int[] targets = new int[Math.max(0, graph.size())];
+		int m = 0;
+		for (int u = 0; u < names.length; u++) {
+			Collection<String> adjacent = graph.getAdjacentViewOf(names[u]);
+			if (m + adjacent.size() > targets.length) {
+				targets = Arrays.copyOf(targets, Math.max(m + adjacent.size(), targets.length * 2));
+			}
+			for (String v : adjacent) {
+				targets[m++] = ids.get(v);
+			}
+			offsets[u + 1] = m;
+		}
+		if (m < targets.length) {
+			targets = Arrays.copyOf(targets, m);
+		}
+		return new GraphIndex(names, ids, offsets, targets);
+	}
+
+	/**
+	 * Build the index of a compact graph straight from its rows,
+	 * renumbering the ids to skip removed vertices
+	 * @param graph - the graph to copy
+	 * @return the index
+	 */
+	private static GraphIndex of(CompactGraph graph) {
+		int bound = graph.idBound();
+		int[] dense = new int[bound];
+		String[] names = new String[graph.order()];
+		int n = 0;
+		for (int id = 0; id < bound; id++) {
+			String name = graph.nameOf(id);
+			dense[id] = name == null ? -1 : n;
+			if (name != null) {
+				names[n++] = name;
+			}
+		}
+		int[] offsets = new int[n + 1];
+		int[] targets = new int[graph.size()];
+		int m = 0;
+		for (int id = 0; id < bound; id++) {
+			if (dense[id] < 0) {
+				continue;
+			}
+			int[] row = graph.row(id);
+			for (int i = graph.rowStart(id), end = graph.rowEnd(id); i < end; i++) {
+				targets[m++] = dense[row[i]];
+			}
+			offsets[dense[id] + 1] = m;
+		}
+		return new GraphIndex(names, offsets, targets);
+	}
+
+	/**
+	 * Build the index of an unchanged snapshot, keeping its ids; see
+	 * GraphSnapshot.index, which keeps the result
+	 * @param graph - the snapshot to copy
+	 * @return the index
+	 */
+	static GraphIndex read(GraphSnapshot graph) {
+		int n = graph.order();
+		String[] names = new String[n];
+		int[] offsets = new int[n + 1];
+		int[] targets = new int[graph.size()];
+		for (int u = 0; u < n; u++) {
+			names[u] = graph.nameOf(u);
+			offsets[u + 1] = graph.rowStart(u + 1);
+		}
+		for (int i = 0; i < targets.length; i++) {
+			targets[i] = graph.target(i);
+		}
+		return new GraphIndex(names, offsets, targets);
+	}
+
+	/**
+	 * Return the number of vertices
+	 * @return the number of vertices
+	 */
+	int order() {
+		return names.length;
+	}
+
+	/**
+	 * Return the id of the vertex
+	 * @param name - the vertex name
+	 * @return the id, or -1 if the vertex is not in the graph
+	 */
+	int id(String name) {
+		Integer id = ids.get(name);
+		return id == null ? -1 : id;
+	}
+
+	/**
+	 * Return the number of edges leaving the vertex
+	 * @param u - the vertex id
+	 * @return the out degree
+	 */
+	int outDegree(int u) {
+		return offsets[u + 1] - offsets[u];
+	}
+
+	/**
+	 * Return the row offsets of the reversed edges
+	 * @return the reversed row offsets
+	 */
+	int[] reverseOffsets() {
+		buildReverse();
+		return reverseOffsets;
+	}
+
+	/**
+	 * Return the reversed edges, indexed by reverseOffsets()
+	 * @return the reversed edges
+	 */
+	int[] reverseTargets() {
+		buildReverse();
+		return reverseTargets;
+	}
+
+	/**
+	 * Return the strongly connected component of every vertex.
+	 * 
+	 * Components are numbered in the order Tarjan's algorithm completes
+	 * them, so every edge goes from a component to one with a smaller or
+	 * equal number: component 0 has no dependencies outside itself, and
+	 * walking the numbers upwards is a valid installation order of the
+	 * condensed graph.
+	 * 
+	 * @return vertex id -> component number
+	 */
+	synchronized int[] components() {
+		if (components == null) {
+			tarjan();
+		}
+		return components;
+	}
+
+	/**
+	 * Return the number of strongly connected components
+	 * @return the number of components
+	 */
+	int componentCount() {
+		components();
+		return componentCount;
+	}
+
+	/**
+	 * Return whether the graph has a cycle, i.e. a component with more
+	 * than one vertex or a vertex that depends on itself
+	 * @return true if there is a cycle
+	 */
+	boolean hasCycle() {
+		if (componentCount() < names.length) {
+			return true;
+		}
+		for (int u = 0; u < names.length; u++) {
+			if (hasSelfLoop(u)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Return the vertices of every component that has a cycle, in
+	 * component order, so components come after the ones they depend on
+	 * @return the member ids of every cyclic component
+	 */
+	List<int[]> cyclicComponents() {
+		int[] comp = components();
+		int n = names.length;
+		// Group the vertices by component with a counting sort
+		int[] start = new int[componentCount + 1];
+		for (int u = 0; u < n; u++) {
+			start[comp[u] + 1]++;
+		}
+		for (int c = 0; c < componentCount; c++) {
+			start[c + 1] += start[c];
+		}
+		int[] fill = Arrays.copyOf(start, componentCount);
+		int[] members = new int[n];
+		for (int u = 0; u < n; u++) {
+			members[fill[comp[u]]++] = u;
+		}
+		List<int[]> cyclic = new ArrayList<int[]>();
+		for (int c = 0; c < componentCount; c++) {
+			if (start[c + 1] - start[c] > 1 || hasSelfLoop(members[start[c]])) {
+				cyclic.add(Arrays.copyOfRange(members, start[c], start[c + 1]));
+			}
+		}
+		return cyclic;
+	}
+
+	/**
+	 * Return a shortest cycle through a vertex, found with a breadth first
+	 * search that stays inside the vertex's component
+	 * @param u - the vertex id
+	 * @return the names on the cycle, u first and last, or null if u is
+	 * not on a cycle
+	 */
+	List<String> cycleThrough(int u) {
+		int[] comp = components();
+		int[] parent = new int[names.length];
+		Arrays.fill(parent, -1);
+		int[] queue = new int[names.length];
+		int head = 0;
+		int tail = 0;
+		queue[tail++] = u;
+		while (head < tail) {
+			int v = queue[head++];
+			for (int i = offsets[v]; i < offsets[v + 1]; i++) {
+				int w = targets[i];
+				if (w == u) {
+					// Walk the parents back from v to u
+					List<String> cycle = new ArrayList<String>();
+					cycle.add(names[u]);
+					for (int x = v; x != u; x = parent[x]) {
+						cycle.add(names[x]);
+					}
+					cycle.add(names[u]);
+					Collections.reverse(cycle);
+					return cycle;
+				}
+				if (comp[w] == comp[u] && parent[w] < 0) {
+					parent[w] = v;
+					queue[tail++] = w;
+				}
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Collect the vertices reachable from a vertex, the vertex included.
+	 * Vertices are marked with the stamp as they are found, so the same
+	 * arrays can be used for many calls without clearing them as long as
+	 * every call has a new stamp.
+	 * @param root - the vertex id to start from
+	 * @param mark - vertex id -> stamp of the last call that found it
+	 * @param stamp - the stamp of this call
+	 * @param stack - room for the search, of length order()
+	 * @param found - receives the vertices found, of length order()
+	 * @return the number of vertices found
+	 */
+	int closure(int root, int[] mark, int stamp, int[] stack, int[] found) {
+		int count = 0;
+		int sp = 0;
+		mark[root] = stamp;
+		stack[sp++] = root;
+		while (sp > 0) {
+			int u = stack[--sp];
+			found[count++] = u;
+			for (int i = offsets[u]; i < offsets[u + 1]; i++) {
+				int v = targets[i];
+				if (mark[v] != stamp) {
+					mark[v] = stamp;
+					stack[sp++] = v;
+				}
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Helper method to check whether a vertex has an edge to itself
+	 * @param u - the vertex id
+	 * @return true if it does
+	 */
+	private boolean hasSelfLoop(int u) {
+		for (int i = offsets[u]; i < offsets[u + 1]; i++) {
+			if (targets[i] == u) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Helper method to run an iterative version of Tarjan's algorithm,
+	 * so deep graphs do not overflow the call stack
+	 */
+	private void tarjan() {
+		int n = names.length;
+		int[] comp = new int[n];
+		int[] index = new int[n]; // discovery index + 1, 0 if not visited
+		int[] low = new int[n];
+		int[] stack = new int[n]; // vertices of the open components
+		int[] callVertex = new int[n]; // the simulated call stack
+		int[] callEdge = new int[n]; // next edge to look at for each call
+		int sp = 0;
+		int next = 1;
+		int count = 0;
+		Arrays.fill(comp, -1);
+		
+		for (int root = 0; root < n; root++) {
+			if (index[root] != 0) {
+				continue;
+			}
+			int depth = 0;
+			callVertex[0] = root;
+			callEdge[0] = offsets[root];
+			index[root] = low[root] = next++;
+			stack[sp++] = root;
+			while (depth >= 0) {
+				int u = callVertex[depth];
+				if (callEdge[depth] < offsets[u + 1]) {
+					int v = targets[callEdge[depth]++];
+					if (index[v] == 0) {
+						// Descend into v
+						index[v] = low[v] = next++;
+						stack[sp++] = v;
+						depth++;
+						callVertex[depth] = v;
+						callEdge[depth] = offsets[v];
+					} else if (comp[v] < 0) {
+						// v is still open, so it is on the stack
+						low[u] = Math.min(low[u], index[v]);
+					}
+				} else {
+					// u is done; close its component if it is the root of one
+					if (low[u] == index[u]) {
+						int v;
+						do {
+							v = stack[--sp];
+							comp[v] = count;
+						} while (v != u);
+						count++;
+					}
+					depth--;
+					if (depth >= 0) {
+						int parent = callVertex[depth];
+						low[parent] = Math.min(low[parent], low[u]);
+					}
+				}
+			}
+		}
+		components = comp;
+		componentCount = count;
+	}
+
+	/**
+	 * Helper method to map every name to its position
+	 * @param names - id -> name
+	 * @return name -> id
+	 */
+	private static Map<String, Integer> idsOf(String[] names) {
+		Map<String, Integer> ids = new HashMap<String, Integer>(names.length * 2);
+		for (int i = 0; i < names.length; i++) {
+			ids.put(names[i], i);
+		}
+		return ids;
+	}
+
+	/**
+	 * Helper method to build the reversed rows with a counting sort
+	 */
+	private synchronized void buildReverse() {
+		if (reverseTargets != null) {
+			return;
+		}
+		int n = names.length;
+		int[] roff = new int[n + 1];
+		for (int i = 0; i < targets.length; i++) {
+			roff[targets[i] + 1]++;
+		}
+		for (int v = 0; v < n; v++) {
+			roff[v + 1] += roff[v];
+		}
+		int[] fill = Arrays.copyOf(roff, n);
+		int[] rtargets = new int[targets.length];
+		for (int u = 0; u < n; u++) {
+			for (int i = offsets[u]; i < offsets[u + 1]; i++) {
+				rtargets[fill[targets[i]]++] = u;
+			}
+		}
+		reverseOffsets = roff;
+		reverseTargets = rtargets;
+	}
+}
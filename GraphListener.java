@@ -0,0 +1,19 @@
+/**
+ * Filename:   GraphListener.java
+ * Project:    p4
+ * Authors:    Bon
+ *
+ * Listener told about changes to a graph that supports listeners, see
+ * ObservableGraph.addListener.
+ */
+public interface GraphListener {
+
+	/**
+	 * Called after the dependencies of a vertex changed: an edge from it
+	 * was added or removed, or the vertex itself was removed. Every vertex
+	 * whose transitive dependencies changed reaches the given vertex, so
+	 * it is the only one reported.
+	 * @param vertex - the vertex whose dependencies changed
+	 */
+	void dependenciesChanged(String vertex);
+}
@@ -0,0 +1,543 @@
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractList;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Filename:   GraphSnapshot.java
+ * Project:    p4
+ * Authors:    Bon
+ *
+ * Read-only graph backed by a binary snapshot file.
+ *
+ * The file holds a string table with the vertex names sorted by their
+ * UTF-8 bytes, the row offsets and the edge array of the graph in
+ * compressed sparse rows:
+ *
+ *     int magic, int version, int order, int size, int nameBytes
+ *     int[order + 1] name offsets
+ *     int[order + 1] row offsets
+ *     int[size]      edges (ids are positions in the sorted names)
+ *     byte[nameBytes] names in UTF-8
+ *
+ * open() maps the file read-only, so queries start right away: a name is
+ * found by binary search over the mapped string table and rows are read
+ * straight from the mapping. The GraphIndex of the whole-graph queries is
+ * built once and kept. Snapshots are limited to 2 GB.
+ *
+ * The file is never written. The first change copies the graph into a
+ * CompactGraph, and from then on every method works on the copy, so a
+ * snapshot can be changed like any other graph, e.g. reloaded.
+ */
+public class GraphSnapshot implements ObservableGraph {
+	// Latency of the graph operations, see Metrics
+	private static final Metrics.Histogram GET_ALL_VERTICES = Metrics.timer("GraphSnapshot.getAllVertices");
+	private static final Metrics.Histogram GET_ADJACENT_VERTICES_OF = Metrics.timer("GraphSnapshot.getAdjacentVerticesOf");
+
+	private static final int MAGIC = 0x504B4753; // "PKGS"
+	private static final int VERSION = 1;
+	private static final int HEADER_BYTES = 20;
+
+	private final ByteBuffer buffer;
+	private final int order;
+	private final int size;
+	private final int nameOffsets; // byte positions of the sections
+	private final int rowOffsets;
+	private final int edges;
+	private final int names;
+
+	private volatile CompactGraph written; // copy made by the first change, null before
+	private GraphIndex index; // guarded by this, built on first use before any change
+	private final List<GraphListener> listeners = new ArrayList<GraphListener>(); // guarded by this
+
+	/**
+	 * Constructor over an already mapped snapshot
+	 * @param buffer - the snapshot
+	 * @throws IOException if the buffer is not a snapshot
+	 */
+	private GraphSnapshot(ByteBuffer buffer) throws IOException {
+		this.buffer = buffer;
+		if (buffer.capacity() < HEADER_BYTES || buffer.getInt(0) != MAGIC) {
+			throw new IOException("Not a graph snapshot");
+		}
+		if (buffer.getInt(4) != VERSION) {
+			throw new IOException("Unsupported graph snapshot version " + buffer.getInt(4));
+		}
+		order = buffer.getInt(8);
+		size = buffer.getInt(12);
+		nameOffsets = HEADER_BYTES;
+		rowOffsets = nameOffsets + 4 * (order + 1);
+		edges = rowOffsets + 4 * (order + 1);
+		names = edges + 4 * size;
+		if ((long) names + buffer.getInt(16) > buffer.capacity()) {
+			throw new IOException("Truncated graph snapshot");
+		}
+	}
+
+	/**
+	 * Map a snapshot file read-only
+	 * @param path - the snapshot file
+	 * @return the graph
+	 * @throws IOException if the file cannot be read or is not a snapshot
+	 */
+	public static GraphSnapshot open(String path) throws IOException {
+		try (FileChannel channel = FileChannel.open(Paths.get(path), StandardOpenOption.READ)) {
+			// The mapping stays valid after the channel is closed
+			return new GraphSnapshot(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+		}
+	}
+
+	/**
+	 * Write a snapshot of the current state of a graph
+	 * @param graph - the graph
+	 * @param path - the file to write
+	 * @throws IOException if the file cannot be written
+	 */
+	public static void save(GraphADT graph, String path) throws IOException {
+		GraphIndex index = GraphIndex.of(graph);
+		int n = index.order();
+		byte[][] utf8 = new byte[n][];
+		Integer[] sorted = new Integer[n];
+		long nameBytes = 0;
+		for (int u = 0; u < n; u++) {
+			utf8[u] = index.names[u].getBytes(StandardCharsets.UTF_8);
+			sorted[u] = u;
+			nameBytes += utf8[u].length;
+		}
+		if (HEADER_BYTES + 8L * (n + 1) + 4L * index.targets.length + nameBytes > Integer.MAX_VALUE) {
+			throw new IOException("Graph too large for a snapshot");
+		}
+		Arrays.sort(sorted, Comparator.comparing((Integer u) -> utf8[u], GraphSnapshot::compare));
+		int[] position = new int[n];
+		for (int i = 0; i < n; i++) {
+			position[sorted[i]] = i;
+		}
+
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(path), 1 << 16))) {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(n);
+			out.writeInt(index.targets.length);
+			out.writeInt((int) nameBytes);
+			int offset = 0;
+			for (int i = 0; i < n; i++) {
+				out.writeInt(offset);
+				offset += utf8[sorted[i]].length;
+			}
+			out.writeInt(offset);
+			offset = 0;
+			for (int i = 0; i < n; i++) {
+				out.writeInt(offset);
+				offset += index.outDegree(sorted[i]);
+			}
+			out.writeInt(offset);
+			for (int i = 0; i < n; i++) {
+				int u = sorted[i];
+				for (int j = index.offsets[u]; j < index.offsets[u + 1]; j++) {
+					out.writeInt(position[index.targets[j]]);
+				}
+			}
+			for (int i = 0; i < n; i++) {
+				out.write(utf8[sorted[i]]);
+			}
+		}
+	}
+
+	/**
+	 * Add vertex to the graph, copying the snapshot first
+	 * @param vertex - the vertex needs adding
+	 */
+	@Override
+	public void addVertex(String vertex) {
+		writable().addVertex(vertex);
+	}
+
+	/**
+	 * Remove the vertex from the graph, copying the snapshot first
+	 * @param vertex - the vertex needs removing
+	 */
+	@Override
+	public void removeVertex(String vertex) {
+		writable().removeVertex(vertex);
+	}
+
+	/**
+	 * Add the edge to the graph, copying the snapshot first
+	 * @param vertex1 - the starting point
+	 * @param vertex2 - the destination
+	 */
+	@Override
+	public void addEdge(String vertex1, String vertex2) {
+		writable().addEdge(vertex1, vertex2);
+	}
+
+	/**
+	 * Remove the edge from the graph, copying the snapshot first
+	 * @param vertex1 - the starting point
+	 * @param vertex2 - the destination
+	 */
+	@Override
+	public void removeEdge(String vertex1, String vertex2) {
+		writable().removeEdge(vertex1, vertex2);
+	}
+
+	/**
+	 * Return the set of all vertices in the graph
+	 * @return set of all vertices
+	 */
+	@Override
+	public Set<String> getAllVertices() {
+		CompactGraph copy = written;
+		if (copy != null) {
+			return copy.getAllVertices();
+		}
+		long start = Metrics.start();
+		try {
+			Set<String> vertices = new HashSet<String>(order * 2);
+			for (int id = 0; id < order; id++) {
+				vertices.add(nameOf(id));
+			}
+			return vertices;
+		} finally {
+			GET_ALL_VERTICES.stop(start);
+		}
+	}
+
+	/**
+	 * Return the list of all vertices adjacent to the given one
+	 * @param vertex - the vertex needs finding adjacent vertices
+	 * @return the list of all adjacent vertices, empty if the vertex is not in the graph
+	 */
+	@Override
+	public List<String> getAdjacentVerticesOf(String vertex) {
+		CompactGraph copy = written;
+		if (copy != null) {
+			return copy.getAdjacentVerticesOf(vertex);
+		}
+		long start = Metrics.start();
+		try {
+			int u = idOf(vertex);
+			if (u < 0) {
+				return new ArrayList<String>();
+			}
+			int from = rowStart(u);
+			int to = rowStart(u + 1);
+			List<String> adjacentVertices = new ArrayList<String>(to - from);
+			for (int i = from; i < to; i++) {
+				adjacentVertices.add(nameOf(target(i)));
+			}
+			return adjacentVertices;
+		} finally {
+			GET_ADJACENT_VERTICES_OF.stop(start);
+		}
+	}
+
+	/**
+	 * Return whether a vertex is in the graph, by binary search over the
+	 * mapped names
+	 * @param vertex - the vertex
+	 * @return true if it is
+	 */
+	@Override
+	public boolean containsVertex(String vertex) {
+		CompactGraph copy = written;
+		if (copy != null) {
+			return copy.containsVertex(vertex);
+		}
+		return idOf(vertex) >= 0;
+	}
+
+	/**
+	 * Return whether an edge is in the graph, scanning the mapped row of
+	 * the starting point
+	 * @param vertex1 - the starting point
+	 * @param vertex2 - the destination
+	 * @return true if it is
+	 */
+	@Override
+	public boolean containsEdge(String vertex1, String vertex2) {
+		CompactGraph copy = written;
+		if (copy != null) {
+			return copy.containsEdge(vertex1, vertex2);
+		}
+		int u = idOf(vertex1);
+		int v = idOf(vertex2);
+		if (u < 0 || v < 0) {
+			return false;
+		}
+		for (int i = rowStart(u), end = rowStart(u + 1); i < end; i++) {
+			if (target(i) == v) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Return a read-only view of all the vertices, decoding the names
+	 * from the mapping as they are read
+	 * @return the vertices
+	 */
+	@Override
+	public Set<String> getVertexView() {
+		CompactGraph copy = written;
+		if (copy != null) {
+			return copy.getVertexView();
+		}
+		return new AbstractSet<String>() {
+			@Override
+			public boolean contains(Object o) {
+				return o instanceof String && idOf((String) o) >= 0;
+			}
+
+			@Override
+			public int size() {
+				return order;
+			}
+
+			@Override
+			public Iterator<String> iterator() {
+				return new Iterator<String>() {
+					private int id;
+
+					@Override
+					public boolean hasNext() {
+						return id < order;
+					}
+
+					@Override
+					public String next() {
+						if (id >= order) {
+							throw new NoSuchElementException();
+						}
+						return nameOf(id++);
+					}
+				};
+			}
+		};
+	}
+
+	/**
+	 * Return a read-only view of the vertices adjacent to the given one,
+	 * read straight from the mapped row
+	 * @param vertex - the vertex needs finding adjacent vertices
+	 * @return the adjacent vertices, empty if the vertex is not in the graph
+	 */
+	@Override
+	public List<String> getAdjacentViewOf(String vertex) {
+		CompactGraph copy = written;
+		if (copy != null) {
+			return copy.getAdjacentViewOf(vertex);
+		}
+		int u = idOf(vertex);
+		int from = u < 0 ? 0 : rowStart(u);
+		int to = u < 0 ? 0 : rowStart(u + 1);
+		return new AbstractList<String>() {
+			@Override
+			public String get(int i) {
+				if (i < 0 || i >= to - from) {
+					throw new IndexOutOfBoundsException("Index " + i);
+				}
+				return nameOf(target(from + i));
+			}
+
+			@Override
+			public int size() {
+				return to - from;
+			}
+		};
+	}
+
+	/**
+	 * Register a listener to be told about every vertex whose dependencies
+	 * change, which only happens once the snapshot has been copied
+	 * @param listener - the listener
+	 */
+	@Override
+	public synchronized void addListener(GraphListener listener) {
+		listeners.add(listener);
+		if (written != null) {
+			written.addListener(listener);
+		}
+	}
+
+	/**
+	 * Return the index of the graph for the whole-graph queries. Before
+	 * any change the index is built once and shared, as the snapshot
+	 * cannot change under it.
+	 * @return the index
+	 */
+	GraphIndex index() {
+		CompactGraph copy = written;
+		if (copy != null) {
+			return GraphIndex.of(copy);
+		}
+		synchronized (this) {
+			if (index == null) {
+				index = GraphIndex.read(this);
+			}
+			return index;
+		}
+	}
+
+	/**
+	 * Return the size of the graph
+	 * @return size
+	 */
+	@Override
+	public int size() {
+		CompactGraph copy = written;
+		if (copy != null) {
+			return copy.size();
+		}
+		return size;
+	}
+
+	/**
+	 * Return the order of graph
+	 * @return order
+	 */
+	@Override
+	public int order() {
+		CompactGraph copy = written;
+		if (copy != null) {
+			return copy.order();
+		}
+		return order;
+	}
+
+	/**
+	 * Helper method to return the copy to change, copying the snapshot on
+	 * the first change
+	 * @return the copy
+	 */
+	private synchronized CompactGraph writable() {
+		if (written == null) {
+			GraphIndex graph = index();
+			CompactGraph copy = new CompactGraph(graph.order());
+			for (int u = 0; u < graph.order(); u++) {
+				copy.addVertex(graph.names[u]);
+				for (int i = graph.offsets[u]; i < graph.offsets[u + 1]; i++) {
+					copy.addEdge(graph.names[u], graph.names[graph.targets[i]]);
+				}
+			}
+			for (GraphListener listener : listeners) {
+				copy.addListener(listener);
+			}
+			written = copy;
+			index = null;
+		}
+		return written;
+	}
+
+	/**
+	 * Return the id of the vertex, i.e. its position in the sorted names
+	 * @param vertex - the vertex name
+	 * @return the id, or -1 if the vertex is not in the graph
+	 */
+	int idOf(String vertex) {
+		if (vertex == null) {
+			return -1;
+		}
+		byte[] key = vertex.getBytes(StandardCharsets.UTF_8);
+		int lo = 0;
+		int hi = order - 1;
+		while (lo <= hi) {
+			int mid = (lo + hi) >>> 1;
+			int cmp = compareName(mid, key);
+			if (cmp < 0) {
+				lo = mid + 1;
+			} else if (cmp > 0) {
+				hi = mid - 1;
+			} else {
+				return mid;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Return the name of the vertex with the given id
+	 * @param id - the vertex id
+	 * @return the name
+	 */
+	String nameOf(int id) {
+		int from = buffer.getInt(nameOffsets + 4 * id);
+		int to = buffer.getInt(nameOffsets + 4 * (id + 1));
+		byte[] bytes = new byte[to - from];
+		for (int i = 0; i < bytes.length; i++) {
+			bytes[i] = buffer.get(names + from + i);
+		}
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Return the index of the first edge of the vertex; the edges of u
+	 * are target(rowStart(u)) .. target(rowStart(u + 1) - 1)
+	 * @param u - the vertex id, or order for the end of the last row
+	 * @return the edge index
+	 */
+	int rowStart(int u) {
+		return buffer.getInt(rowOffsets + 4 * u);
+	}
+
+	/**
+	 * Return the destination of an edge
+	 * @param i - the edge index
+	 * @return the destination id
+	 */
+	int target(int i) {
+		return buffer.getInt(edges + 4 * i);
+	}
+
+	/**
+	 * Helper method to compare a stored name with UTF-8 bytes
+	 * @param id - the stored name
+	 * @param key - the bytes to compare with
+	 * @return the comparison of the name with the key
+	 */
+	private int compareName(int id, byte[] key) {
+		int from = buffer.getInt(nameOffsets + 4 * id);
+		int length = buffer.getInt(nameOffsets + 4 * (id + 1)) - from;
+		int common = Math.min(length, key.length);
+		for (int i = 0; i < common; i++) {
+			int cmp = (buffer.get(names + from + i) & 0xFF) - (key[i] & 0xFF);
+			if (cmp != 0) {
+				return cmp;
+			}
+		}
+		return length - key.length;
+	}
+
+	/**
+	 * Helper method to compare UTF-8 byte strings as unsigned bytes
+	 * @param a - the first string
+	 * @param b - the second string
+	 * @return the comparison of a with b
+	 */
+	private static int compare(byte[] a, byte[] b) {
+		int common = Math.min(a.length, b.length);
+		for (int i = 0; i < common; i++) {
+			int cmp = (a[i] & 0xFF) - (b[i] & 0xFF);
+			if (cmp != 0) {
+				return cmp;
+			}
+		}
+		return a.length - b.length;
+	}
+}
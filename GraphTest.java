@@ -17,6 +17,7 @@ import static org.junit.jupiter.api.Assertions.fail;
 import java.util.Arrays;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Random;
 import java.util.Set;
 
 import org.junit.After;
@@ -236,4 +237,133 @@ public class GraphTest {
 		// Test the size
 		assert(g.size()==3);
 	}
+	
+	/**
+	 * Test if removeVertex also drops the edges to and from the vertex
+	 * from the size
+	 */
+	@Test
+	public void test10_removeVertex_size() {
+		g.addEdge("A", "B");
+		g.addEdge("B", "C");
+		g.addEdge("D", "B");
+		g.addEdge("B", "B");
+		g.removeVertex("B");
+		assert(g.size() == 0);
+		assert(g.order() == 3);
+		assert(g.getAdjacentVerticesOf("A").isEmpty());
+		// Removing an edge that is not there does not change the size
+		g.addEdge("A", "C");
+		g.removeEdge("C", "A");
+		assert(g.size() == 1);
+	}
+	
+	/**
+	 * Test if getDependentsOf and getTransitiveDependentsOf follow the
+	 * incoming edges
+	 */
+	@Test
+	public void test11_getDependentsOf() {
+		g.addEdge("A", "B");
+		g.addEdge("D", "B");
+		g.addEdge("B", "C");
+		g.addEdge("E", "A");
+		List<String> b = g.getDependentsOf("B");
+		assert(b.size() == 2 && b.contains("A") && b.contains("D"));
+		Set<String> c = g.getTransitiveDependentsOf("C");
+		assert(c.equals(new HashSet<String>(Arrays.asList("A", "B", "D", "E"))));
+		assert(g.getDependentsOf("F").isEmpty());
+		// The index follows removals
+		g.removeEdge("D", "B");
+		g.removeVertex("A");
+		assert(g.getTransitiveDependentsOf("C").equals(new HashSet<String>(Arrays.asList("B"))));
+	}
+	
+	/**
+	 * Test if a graph that keeps its order rejects an edge closing a cycle
+	 * and leaves the graph unchanged
+	 */
+	@Test
+	public void test12_keepOrder_rejects_cycle() {
+		g = new Graph(true);
+		g.addEdge("A", "B");
+		g.addEdge("B", "C");
+		try {
+			g.addEdge("C", "A");
+			fail();
+		} catch (IllegalArgumentException e) {}
+		try {
+			g.addEdge("D", "D");
+			fail();
+		} catch (IllegalArgumentException e) {}
+		assert(g.size() == 2);
+		assert(g.order() == 3);
+		assert(g.getTopologicalOrder().equals(Arrays.asList("C", "B", "A")));
+	}
+	
+	/**
+	 * Test if the kept order stays a valid installation order while edges
+	 * are added against it and vertices are removed
+	 */
+	@Test
+	public void test13_keepOrder_random() {
+		g = new Graph(true);
+		Random random = new Random(7);
+		for (int i = 0; i < 3000; i++) {
+			String a = "p" + random.nextInt(300);
+			String b = "p" + random.nextInt(300);
+			try {
+				g.addEdge(a, b);
+			} catch (IllegalArgumentException e) {}
+			if (i % 50 == 0) {
+				g.removeVertex("p" + random.nextInt(300));
+			}
+		}
+		List<String> order = g.getTopologicalOrder();
+		assert(order.size() == g.order());
+		for (int i = 0; i < order.size(); i++) {
+			for (String d : g.getAdjacentVerticesOf(order.get(i))) {
+				assert(order.indexOf(d) < i);
+			}
+		}
+	}
+	
+	/**
+	 * Test if the views follow the graph, cannot be changed, and share
+	 * one stored name per vertex
+	 */
+	@Test
+	public void test14_views() {
+		String b = new String("B");
+		g.addEdge("A", b);
+		g.addEdge(new String("C"), new String("B"));
+		Set<String> vertices = g.getVertexView();
+		Set<String> adjacent = g.getAdjacentViewOf("C");
+		assert(vertices.size() == 3 && adjacent.equals(new HashSet<String>(Arrays.asList("B"))));
+		// The edge from C is keyed by the name B was first added with
+		assert(adjacent.iterator().next() == b);
+		assert(g.getDependentViewOf("B").size() == 2);
+		g.addEdge("C", "D");
+		g.removeVertex("A");
+		assert(vertices.size() == 3 && adjacent.size() == 2 && g.getDependentViewOf("B").size() == 1);
+		assert(g.getAdjacentViewOf("X").isEmpty());
+		try {
+			vertices.remove("B");
+			assert(false);
+		} catch (UnsupportedOperationException e) {}
+	}
+	
+	/**
+	 * Test if the membership checks answer without copying the graph
+	 */
+	@Test
+	public void test15_containsVertex_containsEdge() {
+		g.addEdge("A", "B");
+		g.addVertex("C");
+		assert(g.containsVertex("A") && g.containsVertex("C") && !g.containsVertex("D"));
+		assert(!g.containsVertex(null));
+		assert(g.containsEdge("A", "B") && !g.containsEdge("B", "A") && !g.containsEdge("A", null));
+		g.removeEdge("A", "B");
+		assert(!g.containsEdge("A", "B"));
+	}
 }
@@ -0,0 +1,461 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Filename:   InstallExecutor.java
+ * Project:    p4
+ * Authors:    Bon
+ *
+ * Runs the installation of packages in parallel, starting every package
+ * as soon as all of its dependencies are installed.
+ *
+ * The installation itself is done by a pluggable Installer. Every package
+ * runs on its own virtual thread when the JVM has them (Java 21 and
+ * later), otherwise on a fixed pool of platform threads; either way at
+ * most the given number of installs run at once. A package whose install
+ * fails is reported with its exception, and every package depending on it
+ * is skipped, while independent packages carry on. cancel() stops a run:
+ * installs that have not started are cancelled and running ones are
+ * interrupted.
+ *
+ * Usage: java InstallExecutor manifest.json [--parallelism 8] [--sleep 10]
+ *
+ * installs every package of the manifest with an installer that sleeps
+ * for the given milliseconds, and prints the makespan.
+ */
+public class InstallExecutor {
+	// States of a package during a run
+	private static final int PENDING = 0;
+	private static final int RUNNING = 1;
+	private static final int INSTALLED = 2;
+	private static final int FAILED = 3;
+	private static final int SKIPPED = 4;
+	private static final int CANCELLED = 5;
+
+	/**
+	 * Installs a single package
+	 */
+	public interface Installer {
+		/**
+		 * Install the package. Called once all its dependencies are
+		 * installed, possibly from many threads at once.
+		 * @param pkg - the package
+		 * @throws Exception if the install fails
+		 */
+		void install(String pkg) throws Exception;
+	}
+
+	/**
+	 * Installer that does nothing, to measure the scheduling overhead
+	 */
+	public static final Installer NO_OP = pkg -> {};
+
+	/**
+	 * Return an installer that sleeps instead of installing, to measure
+	 * the makespan of a graph
+	 * @param millis - how long every install takes
+	 * @return the installer
+	 */
+	public static Installer sleeping(long millis) {
+		return pkg -> Thread.sleep(millis);
+	}
+
+	/**
+	 * The outcome of a run
+	 */
+	public static class Result {
+		private final List<String> installed;
+		private final Map<String, Throwable> failed;
+		private final Set<String> skipped;
+		private final Set<String> cancelled;
+		private final long elapsedNanos;
+
+		/**
+		 * Constructor
+		 * @param installed - installed packages, in the order they finished
+		 * @param failed - failed packages -> what they threw
+		 * @param skipped - packages not run because a dependency failed
+		 * @param cancelled - packages not run or interrupted by cancel()
+		 * @param elapsedNanos - time from the start to the end of the run
+		 */
+		Result(List<String> installed, Map<String, Throwable> failed, Set<String> skipped, Set<String> cancelled,
+				long elapsedNanos) {
+			this.installed = Collections.unmodifiableList(installed);
+			this.failed = Collections.unmodifiableMap(failed);
+			this.skipped = Collections.unmodifiableSet(skipped);
+			this.cancelled = Collections.unmodifiableSet(cancelled);
+			this.elapsedNanos = elapsedNanos;
+		}
+
+		public List<String> getInstalled() {
+			return installed;
+		}
+
+		public Map<String, Throwable> getFailed() {
+			return failed;
+		}
+
+		public Set<String> getSkipped() {
+			return skipped;
+		}
+
+		public Set<String> getCancelled() {
+			return cancelled;
+		}
+
+		/**
+		 * Return the makespan of the run
+		 * @return the time from the start to the end of the run
+		 */
+		public long getElapsedNanos() {
+			return elapsedNanos;
+		}
+
+		/**
+		 * Return whether every package was installed
+		 * @return true if nothing failed, was skipped or was cancelled
+		 */
+		public boolean isSuccess() {
+			return failed.isEmpty() && skipped.isEmpty() && cancelled.isEmpty();
+		}
+	}
+
+	private final GraphADT graph;
+	private final Installer installer;
+	private final int parallelism;
+	private volatile Run current; // the run in progress, if any
+
+	/**
+	 * Constructor
+	 * @param graph - the dependency graph, read when a run starts
+	 * @param installer - installs single packages
+	 * @param parallelism - the largest number of installs running at once
+	 */
+	public InstallExecutor(GraphADT graph, Installer installer, int parallelism) {
+		if (parallelism < 1) {
+			throw new IllegalArgumentException("Parallelism must be at least 1");
+		}
+		this.graph = graph;
+		this.installer = installer;
+		this.parallelism = parallelism;
+	}
+
+	public static void main(String[] args) throws Exception {
+		if (args.length == 0) {
+			System.err.println("Usage: java InstallExecutor manifest.json [--parallelism n] [--sleep ms]");
+			System.exit(1);
+		}
+		int parallelism = Runtime.getRuntime().availableProcessors();
+		long sleep = 10;
+		for (int i = 1; i + 1 < args.length; i += 2) {
+			String value = args[i + 1];
+			switch (args[i]) {
+			case "--parallelism":
+				parallelism = Integer.parseInt(value);
+				break;
+			case "--sleep":
+				sleep = Long.parseLong(value);
+				break;
+			default:
+				throw new IllegalArgumentException("Unknown option " + args[i]);
+			}
+		}
+		PackageManager pm = new PackageManager(new CompactGraph());
+		pm.constructGraph(args[0]);
+		InstallExecutor executor = pm.installExecutor(sleeping(sleep), parallelism);
+		Result result = executor.installAll();
+		int packages = result.getInstalled().size();
+		double serial = packages * sleep / 1e3;
+		double makespan = result.getElapsedNanos() / 1e9;
+		System.out.printf("Installed %d packages with parallelism %d in %.3f s (serial %.3f s, speedup %.1fx)%n",
+				packages, parallelism, makespan, serial, serial / makespan);
+		if (!result.isSuccess()) {
+			System.out.printf("Failed %d, skipped %d, cancelled %d%n", result.getFailed().size(),
+					result.getSkipped().size(), result.getCancelled().size());
+		}
+	}
+
+	/**
+	 * Install every package of the graph
+	 * @return the outcome
+	 * @throws CycleException if the graph has a cycle, before anything is installed
+	 * @throws InterruptedException if interrupted while waiting, the run is cancelled
+	 */
+	public Result installAll() throws CycleException, InterruptedException {
+		GraphIndex index = GraphIndex.of(graph);
+		boolean[] needed = new boolean[index.order()];
+		Arrays.fill(needed, true);
+		return run(index, needed);
+	}
+
+	/**
+	 * Install the given packages and everything they depend on
+	 * @param packages - the packages to install
+	 * @return the outcome
+	 * @throws CycleException if the packages depend on a cycle, before anything is installed
+	 * @throws PackageNotFoundException if a package is not in the graph
+	 * @throws InterruptedException if interrupted while waiting, the run is cancelled
+	 */
+	public Result install(Collection<String> packages)
+			throws CycleException, PackageNotFoundException, InterruptedException {
+		GraphIndex index = GraphIndex.of(graph);
+		boolean[] needed = new boolean[index.order()];
+		int[] stack = new int[index.order()];
+		int sp = 0;
+		for (String pkg : packages) {
+			int u = index.id(pkg);
+			if (u < 0) {
+				throw new PackageNotFoundException();
+			}
+			if (!needed[u]) {
+				needed[u] = true;
+				stack[sp++] = u;
+			}
+		}
+		// Mark the closure of the packages
+		while (sp > 0) {
+			int u = stack[--sp];
+			for (int i = index.offsets[u]; i < index.offsets[u + 1]; i++) {
+				int v = index.targets[i];
+				if (!needed[v]) {
+					needed[v] = true;
+					stack[sp++] = v;
+				}
+			}
+		}
+		return run(index, needed);
+	}
+
+	/**
+	 * Cancel the run in progress: installs that have not started are not
+	 * run and running installs are interrupted. Does nothing if no run is
+	 * in progress.
+	 */
+	public void cancel() {
+		Run run = current;
+		if (run != null) {
+			run.cancel();
+		}
+	}
+
+	/**
+	 * Helper method to check the packages for cycles and run them
+	 * @param index - the graph
+	 * @param needed - vertex id -> whether to install it
+	 * @return the outcome
+	 * @throws CycleException if a needed package is on a cycle
+	 * @throws InterruptedException if interrupted while waiting
+	 */
+	private Result run(GraphIndex index, boolean[] needed) throws CycleException, InterruptedException {
+		// A package on a cycle could never start, so refuse the whole run
+		for (int[] members : index.cyclicComponents()) {
+			if (needed[members[0]]) {
+				throw new CycleException(index.cycleThrough(members[0]));
+			}
+		}
+		Run run = new Run(index, needed);
+		current = run;
+		try {
+			return run.execute();
+		} finally {
+			current = null;
+		}
+	}
+
+	/**
+	 * Helper method to create the executor for a run: one virtual thread
+	 * per task where the JVM supports it, a fixed pool otherwise
+	 * @return the executor
+	 */
+	private ExecutorService newExecutor() {
+		try {
+			return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		} catch (ReflectiveOperationException e) {
+			return Executors.newFixedThreadPool(parallelism);
+		}
+	}
+
+	/**
+	 * The state of one run
+	 */
+	private class Run {
+		private final GraphIndex index;
+		private final boolean[] needed;
+		private final int[] roff;
+		private final int[] rtargets;
+		private final AtomicIntegerArray state;
+		private final AtomicIntegerArray remaining; // dependencies not installed yet
+		private final Semaphore permits = new Semaphore(parallelism);
+		private final ExecutorService executor = newExecutor();
+		private final CountDownLatch done;
+		private final ConcurrentLinkedQueue<String> installed = new ConcurrentLinkedQueue<String>();
+		private final Map<String, Throwable> failed = new ConcurrentHashMap<String, Throwable>();
+		private volatile boolean cancelled;
+
+		/**
+		 * Constructor
+		 * @param index - the graph
+		 * @param needed - vertex id -> whether to install it
+		 */
+		Run(GraphIndex index, boolean[] needed) {
+			this.index = index;
+			this.needed = needed;
+			roff = index.reverseOffsets();
+			rtargets = index.reverseTargets();
+			int n = index.order();
+			state = new AtomicIntegerArray(n);
+			remaining = new AtomicIntegerArray(n);
+			int count = 0;
+			for (int u = 0; u < n; u++) {
+				if (needed[u]) {
+					count++;
+					remaining.set(u, index.outDegree(u));
+				}
+			}
+			done = new CountDownLatch(count);
+		}
+
+		/**
+		 * Start the packages without dependencies and wait for the run
+		 * @return the outcome
+		 * @throws InterruptedException if interrupted while waiting
+		 */
+		Result execute() throws InterruptedException {
+			long start = System.nanoTime();
+			try {
+				for (int u = 0; u < needed.length; u++) {
+					if (needed[u] && remaining.get(u) == 0) {
+						submit(u);
+					}
+				}
+				done.await();
+			} catch (InterruptedException e) {
+				cancel();
+				done.await();
+				throw e;
+			} finally {
+				executor.shutdownNow();
+			}
+			long elapsed = System.nanoTime() - start;
+			Set<String> skipped = new HashSet<String>();
+			Set<String> stopped = new HashSet<String>();
+			for (int u = 0; u < needed.length; u++) {
+				if (state.get(u) == SKIPPED) {
+					skipped.add(index.names[u]);
+				} else if (state.get(u) == CANCELLED) {
+					stopped.add(index.names[u]);
+				}
+			}
+			return new Result(new ArrayList<String>(installed), new HashMap<String, Throwable>(failed), skipped, stopped,
+					elapsed);
+		}
+
+		/**
+		 * Cancel every package that has not started and interrupt the
+		 * running ones
+		 */
+		void cancel() {
+			cancelled = true;
+			for (int u = 0; u < needed.length; u++) {
+				if (needed[u] && state.compareAndSet(u, PENDING, CANCELLED)) {
+					done.countDown();
+				}
+			}
+			executor.shutdownNow();
+		}
+
+		/**
+		 * Helper method to start the install of a package
+		 * @param u - the vertex id
+		 */
+		private void submit(int u) {
+			try {
+				executor.execute(() -> install(u));
+			} catch (RejectedExecutionException e) {
+				// The executor is shut down by cancel()
+				if (state.compareAndSet(u, PENDING, CANCELLED)) {
+					done.countDown();
+				}
+			}
+		}
+
+		/**
+		 * Helper method to install one package once a permit is free, then
+		 * start the dependents it was the last dependency of
+		 * @param u - the vertex id
+		 */
+		private void install(int u) {
+			try {
+				permits.acquire();
+			} catch (InterruptedException e) {
+				if (state.compareAndSet(u, PENDING, CANCELLED)) {
+					done.countDown();
+				}
+				return;
+			}
+			try {
+				if (!state.compareAndSet(u, PENDING, RUNNING)) {
+					return; // cancelled while waiting
+				}
+				String pkg = index.names[u];
+				try {
+					installer.install(pkg);
+				} catch (Throwable t) {
+					state.set(u, cancelled ? CANCELLED : FAILED);
+					if (!cancelled) {
+						failed.put(pkg, t);
+						skipDependents(u);
+					}
+					done.countDown();
+					return;
+				}
+				state.set(u, INSTALLED);
+				installed.add(pkg);
+				done.countDown();
+			} finally {
+				permits.release();
+			}
+			for (int i = roff[u]; i < roff[u + 1]; i++) {
+				int v = rtargets[i];
+				if (needed[v] && remaining.decrementAndGet(v) == 0) {
+					submit(v);
+				}
+			}
+		}
+
+		/**
+		 * Helper method to skip every package that depends on a failed one
+		 * @param u - the failed vertex id
+		 */
+		private void skipDependents(int u) {
+			int[] stack = new int[needed.length];
+			int sp = 0;
+			stack[sp++] = u;
+			while (sp > 0) {
+				int w = stack[--sp];
+				for (int i = roff[w]; i < roff[w + 1]; i++) {
+					int v = rtargets[i];
+					if (needed[v] && state.compareAndSet(v, PENDING, SKIPPED)) {
+						done.countDown();
+						stack[sp++] = v;
+					}
+				}
+			}
+		}
+	}
+}
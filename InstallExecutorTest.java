@@ -0,0 +1,166 @@
+///////////////////////////////////////////////////////////////////////////////
+//
+// Title:           InstallExecutorTest
+// Files:           InstallExecutorTest, InstallExecutor
+// Course:          CS400 LEC001, Spring, 2020
+//
+// Author:          Binh Quoc Trinh (Bon)
+// Email:           btrinh@wisc.edu
+// Lecturer's Name: Debra Deppeler
+//
+/////////////////////////////// 80 COLUMNS WIDE ///////////////////////////////
+
+
+import static org.junit.jupiter.api.Assertions.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * This is the test suite for the install executor class
+ * @author Bon
+ *
+ */
+public class InstallExecutorTest {
+	Graph g; // The graph used for the test
+
+	/**
+	 * Called before each test
+	 * @throws Exception
+	 */
+	@Before
+	public void setUp() throws Exception {
+		g = new Graph();
+		// A -> B -> C, A -> D, E -> D
+		g.addEdge("A", "B");
+		g.addEdge("B", "C");
+		g.addEdge("A", "D");
+		g.addEdge("E", "D");
+	}
+
+	/**
+	 * Called after each test
+	 * @throws Exception
+	 */
+	@After
+	public void tearDown() throws Exception {
+		g = null;
+	}
+
+	/**
+	 * Test if every package is installed after its dependencies
+	 */
+	@Test
+	public void test00_installAll_order() throws Exception {
+		Set<String> done = ConcurrentHashMap.newKeySet();
+		AtomicInteger violations = new AtomicInteger();
+		InstallExecutor executor = new InstallExecutor(g, pkg -> {
+			for (String d : g.getAdjacentVerticesOf(pkg)) {
+				if (!done.contains(d)) {
+					violations.incrementAndGet();
+				}
+			}
+			done.add(pkg);
+		}, 4);
+		InstallExecutor.Result result = executor.installAll();
+		assert(result.isSuccess());
+		assert(result.getInstalled().size() == 5);
+		assert(violations.get() == 0);
+		// Only the closure of B is installed
+		result = executor.install(Arrays.asList("B"));
+		assert(new HashSet<String>(result.getInstalled()).equals(new HashSet<String>(Arrays.asList("B", "C"))));
+	}
+
+	/**
+	 * Test if a failure skips the dependents and nothing else
+	 */
+	@Test
+	public void test01_failure_skips_dependents() throws Exception {
+		InstallExecutor executor = new InstallExecutor(g, pkg -> {
+			if (pkg.equals("C")) {
+				throw new IllegalStateException("broken");
+			}
+		}, 2);
+		InstallExecutor.Result result = executor.installAll();
+		assert(!result.isSuccess());
+		assert(result.getFailed().keySet().equals(new HashSet<String>(Arrays.asList("C"))));
+		assert(result.getFailed().get("C").getMessage().equals("broken"));
+		assert(result.getSkipped().equals(new HashSet<String>(Arrays.asList("A", "B"))));
+		assert(new HashSet<String>(result.getInstalled()).equals(new HashSet<String>(Arrays.asList("D", "E"))));
+	}
+
+	/**
+	 * Test if no more installs than allowed run at once
+	 */
+	@Test
+	public void test02_bounded_concurrency() throws Exception {
+		Graph wide = new Graph();
+		for (int i = 0; i < 50; i++) {
+			wide.addEdge("root", "p" + i);
+		}
+		AtomicInteger running = new AtomicInteger();
+		AtomicInteger most = new AtomicInteger();
+		InstallExecutor executor = new InstallExecutor(wide, pkg -> {
+			most.accumulateAndGet(running.incrementAndGet(), Math::max);
+			Thread.sleep(2);
+			running.decrementAndGet();
+		}, 3);
+		InstallExecutor.Result result = executor.installAll();
+		assert(result.isSuccess());
+		assert(result.getInstalled().get(50).equals("root"));
+		assert(most.get() <= 3);
+	}
+
+	/**
+	 * Test if cancel interrupts running installs and stops the rest
+	 */
+	@Test
+	public void test03_cancel() throws Exception {
+		CountDownLatch started = new CountDownLatch(1);
+		InstallExecutor executor = new InstallExecutor(g, pkg -> {
+			started.countDown();
+			Thread.sleep(60000);
+		}, 1);
+		Thread canceller = new Thread(() -> {
+			try {
+				started.await();
+			} catch (InterruptedException e) {}
+			executor.cancel();
+		});
+		canceller.start();
+		InstallExecutor.Result result = executor.installAll();
+		canceller.join();
+		assert(result.getInstalled().isEmpty());
+		assert(result.getFailed().isEmpty());
+		assert(result.getCancelled().size() + result.getSkipped().size() == 5);
+	}
+
+	/**
+	 * Test if a cycle is reported before anything is installed
+	 */
+	@Test
+	public void test04_cycle() throws Exception {
+		g.addEdge("C", "A");
+		List<String> calls = new ArrayList<String>();
+		InstallExecutor executor = new InstallExecutor(g, calls::add, 1);
+		try {
+			executor.installAll();
+			fail();
+		} catch (CycleException e) {
+			assert(e.getCycle().size() == 4);
+		}
+		// E does not depend on the cycle
+		assert(executor.install(Arrays.asList("E")).getInstalled().equals(Arrays.asList("D", "E")));
+		assert(calls.equals(Arrays.asList("D", "E")));
+	}
+}
@@ -0,0 +1,248 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Filename:   LoadDriver.java
+ * Project:    p4
+ * Authors:    Bon
+ *
+ * Multi-threaded load test for PackageManager.
+ *
+ * Loads a manifest (e.g. one written by ManifestGenerator), then has a
+ * number of threads replay a weighted mix of queries against the same
+ * PackageManager for a fixed time. Prints the throughput and the latency
+ * percentiles of every query type. Queries that hit a cycle are counted
+ * separately and still timed.
+ *
+ * Usage: java LoadDriver manifest.json [--threads 8] [--seconds 30]
+ *            [--mix getInstallationOrder=70,toInstall=25,getInstallationOrderForAllPackages=5]
+ *            [--graph graph|compact|versioned] [--metrics true]
+ */
+public class LoadDriver {
+	// The queries that can be part of the mix
+	static final String[] QUERIES = {"getInstallationOrder", "toInstall", "getInstallationOrderForAllPackages",
+			"getInstallationWaves", "getPackageWithMaxDependencies"};
+
+	/**
+	 * Latencies of one query type recorded by one thread
+	 */
+	static class Latencies {
+		long[] nanos = new long[1024];
+		int count;
+		long cycles;
+
+		/**
+		 * Record the latency of one query
+		 * @param latency - the latency in nanoseconds
+		 */
+		void add(long latency) {
+			if (count == nanos.length) {
+				nanos = Arrays.copyOf(nanos, count * 2);
+			}
+			nanos[count++] = latency;
+		}
+	}
+
+	public static void main(String[] args) throws Exception {
+		if (args.length == 0) {
+			System.err.println("Usage: java LoadDriver manifest.json [--threads n] [--seconds s]"
+					+ " [--mix query=weight,...] [--graph graph|compact|versioned] [--metrics true]");
+			System.exit(1);
+		}
+		int threads = Runtime.getRuntime().availableProcessors();
+		int seconds = 30;
+		String mix = "getInstallationOrder=70,toInstall=25,getInstallationOrderForAllPackages=5";
+		String graph = "graph";
+		for (int i = 1; i + 1 < args.length; i += 2) {
+			String value = args[i + 1];
+			switch (args[i]) {
+			case "--threads":
+				threads = Integer.parseInt(value);
+				break;
+			case "--seconds":
+				seconds = Integer.parseInt(value);
+				break;
+			case "--mix":
+				mix = value;
+				break;
+			case "--graph":
+				graph = value;
+				break;
+			case "--metrics":
+				Metrics.setEnabled(Boolean.parseBoolean(value));
+				break;
+			default:
+				throw new IllegalArgumentException("Unknown option " + args[i]);
+			}
+		}
+
+		PackageManager pm;
+		switch (graph) {
+		case "compact":
+			pm = new PackageManager(new CompactGraph());
+			break;
+		case "versioned":
+			pm = new PackageManager(new VersionedGraph());
+			break;
+		default:
+			pm = new PackageManager();
+		}
+		long start = System.nanoTime();
+		pm.constructGraph(args[0]);
+		System.out.printf("Loaded %s in %.1f ms%n", args[0], (System.nanoTime() - start) / 1e6);
+
+		run(pm, parseMix(mix), threads, seconds * 1000000000L);
+		System.out.println("Cache: " + pm.getCacheStats());
+		if (Metrics.isEnabled()) {
+			System.out.print(Metrics.report());
+		}
+	}
+
+	/**
+	 * Replay the query mix from several threads and print the results
+	 * @param pm - the package manager to query
+	 * @param mix - query name -> weight
+	 * @param threads - the number of threads
+	 * @param durationNanos - how long to run
+	 * @throws InterruptedException if interrupted while waiting for the threads
+	 */
+	static void run(PackageManager pm, Map<String, Integer> mix, int threads, long durationNanos)
+			throws InterruptedException {
+		String[] packages = pm.getAllPackages().toArray(new String[0]);
+		String[] queries = mix.keySet().toArray(new String[0]);
+		int[] cumulative = new int[queries.length];
+		int total = 0;
+		for (int q = 0; q < queries.length; q++) {
+			total += mix.get(queries[q]);
+			cumulative[q] = total;
+		}
+		int weights = total;
+
+		Latencies[][] recorded = new Latencies[threads][queries.length];
+		AtomicLong errors = new AtomicLong();
+		long deadline = System.nanoTime() + durationNanos;
+		Thread[] workers = new Thread[threads];
+		for (int t = 0; t < threads; t++) {
+			Latencies[] mine = recorded[t];
+			for (int q = 0; q < queries.length; q++) {
+				mine[q] = new Latencies();
+			}
+			Random random = new Random(t);
+			workers[t] = new Thread(() -> {
+				while (System.nanoTime() < deadline) {
+					int pick = random.nextInt(weights);
+					int q = 0;
+					while (cumulative[q] <= pick) {
+						q++;
+					}
+					long begin = System.nanoTime();
+					try {
+						query(pm, queries[q], packages, random);
+					} catch (CycleException e) {
+						mine[q].cycles++;
+					} catch (Exception e) {
+						errors.incrementAndGet();
+					}
+					mine[q].add(System.nanoTime() - begin);
+				}
+			});
+			workers[t].start();
+		}
+		for (Thread worker : workers) {
+			worker.join();
+		}
+
+		double seconds = durationNanos / 1e9;
+		System.out.printf("%-36s %10s %10s %8s %10s %10s %10s %10s %10s%n",
+				"Query", "count", "ops/s", "cycles", "p50 us", "p90 us", "p99 us", "p99.9 us", "max us");
+		for (int q = 0; q < queries.length; q++) {
+			List<long[]> parts = new ArrayList<long[]>();
+			int count = 0;
+			long cycles = 0;
+			for (int t = 0; t < threads; t++) {
+				parts.add(Arrays.copyOf(recorded[t][q].nanos, recorded[t][q].count));
+				count += recorded[t][q].count;
+				cycles += recorded[t][q].cycles;
+			}
+			long[] all = new long[count];
+			int at = 0;
+			for (long[] part : parts) {
+				System.arraycopy(part, 0, all, at, part.length);
+				at += part.length;
+			}
+			Arrays.sort(all);
+			System.out.printf("%-36s %10d %10.1f %8d %10.1f %10.1f %10.1f %10.1f %10.1f%n",
+					queries[q], count, count / seconds, cycles, percentile(all, 50), percentile(all, 90),
+					percentile(all, 99), percentile(all, 99.9), percentile(all, 100));
+		}
+		if (errors.get() > 0) {
+			System.out.println("Errors: " + errors.get());
+		}
+	}
+
+	/**
+	 * Helper method to run one query on random packages
+	 * @param pm - the package manager
+	 * @param query - the query name
+	 * @param packages - all the package names
+	 * @param random - the source of randomness
+	 * @throws Exception if the query fails
+	 */
+	private static void query(PackageManager pm, String query, String[] packages, Random random) throws Exception {
+		switch (query) {
+		case "getInstallationOrder":
+			pm.getInstallationOrder(packages[random.nextInt(packages.length)]);
+			break;
+		case "toInstall":
+			pm.toInstall(packages[random.nextInt(packages.length)], packages[random.nextInt(packages.length)]);
+			break;
+		case "getInstallationOrderForAllPackages":
+			pm.getInstallationOrderForAllPackages();
+			break;
+		case "getInstallationWaves":
+			pm.getInstallationWaves();
+			break;
+		case "getPackageWithMaxDependencies":
+			pm.getPackageWithMaxDependencies();
+			break;
+		default:
+			throw new IllegalArgumentException("Unknown query " + query);
+		}
+	}
+
+	/**
+	 * Helper method to parse a query mix such as getInstallationOrder=70,toInstall=30
+	 * @param mix - the mix
+	 * @return query name -> weight
+	 */
+	static Map<String, Integer> parseMix(String mix) {
+		Map<String, Integer> weights = new LinkedHashMap<String, Integer>();
+		for (String part : mix.split(",")) {
+			String[] kv = part.split("=");
+			if (!Arrays.asList(QUERIES).contains(kv[0])) {
+				throw new IllegalArgumentException("Unknown query " + kv[0]);
+			}
+			weights.put(kv[0], kv.length > 1 ? Integer.parseInt(kv[1]) : 1);
+		}
+		return weights;
+	}
+
+	/**
+	 * Helper method to read a percentile from sorted latencies
+	 * @param sorted - the latencies in nanoseconds, sorted
+	 * @param p - the percentile, 0 to 100
+	 * @return the latency in microseconds, 0 if there are none
+	 */
+	private static double percentile(long[] sorted, double p) {
+		if (sorted.length == 0) {
+			return 0;
+		}
+		int i = (int) Math.ceil(p / 100 * sorted.length) - 1;
+		return sorted[Math.max(0, Math.min(sorted.length - 1, i))] / 1000.0;
+	}
+}
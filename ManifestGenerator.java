@@ -0,0 +1,277 @@
+import java.io.BufferedWriter;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Filename:   ManifestGenerator.java
+ * Project:    p4
+ * Authors:    Bon
+ *
+ * Generates synthetic package registries in the json format read by
+ * PackageManager.constructGraph, for testing at sizes far beyond the
+ * hand-written test files.
+ *
+ * Packages p0 .. p(n-1) are split into depth layers and only depend on
+ * packages in deeper layers, so the result is acyclic unless cycles are
+ * planted. The number of dependencies of each package follows the chosen
+ * out-degree distribution. With probability shared a dependency is drawn
+ * from the first packages of the deeper layers, which makes a few
+ * packages popular as in real registries; otherwise it is drawn
+ * uniformly. Every package's dependencies come from its own seeded random
+ * generator, so the manifest is streamed out without keeping the graph
+ * in memory and the same settings always give the same file.
+ *
+ * Usage: java ManifestGenerator out.json [--packages 100000] [--degree uniform:0-8]
+ *            [--depth 20] [--shared 0.3] [--cycles 0] [--seed 1]
+ *
+ * The degree is one of fixed:k, uniform:min-max, geometric:mean or zipf:max.
+ */
+public class ManifestGenerator {
+	private int packages = 100000;
+	private String degree = "uniform:0-8";
+	private int depth = 20;
+	private double shared = 0.3;
+	private int cycles = 0;
+	private long seed = 1;
+
+	public static void main(String[] args) throws IOException {
+		if (args.length == 0) {
+			System.err.println("Usage: java ManifestGenerator out.json [--packages n] [--degree dist]"
+					+ " [--depth d] [--shared ratio] [--cycles c] [--seed s]");
+			System.exit(1);
+		}
+		ManifestGenerator generator = new ManifestGenerator();
+		for (int i = 1; i + 1 < args.length; i += 2) {
+			String value = args[i + 1];
+			switch (args[i]) {
+			case "--packages":
+				generator.setPackages(Integer.parseInt(value));
+				break;
+			case "--degree":
+				generator.setDegree(value);
+				break;
+			case "--depth":
+				generator.setDepth(Integer.parseInt(value));
+				break;
+			case "--shared":
+				generator.setShared(Double.parseDouble(value));
+				break;
+			case "--cycles":
+				generator.setCycles(Integer.parseInt(value));
+				break;
+			case "--seed":
+				generator.setSeed(Long.parseLong(value));
+				break;
+			default:
+				throw new IllegalArgumentException("Unknown option " + args[i]);
+			}
+		}
+		generator.write(args[0]);
+	}
+
+	/**
+	 * Set the number of packages
+	 * @param packages - the number of packages, p0 .. p(packages-1)
+	 */
+	public void setPackages(int packages) {
+		this.packages = packages;
+	}
+
+	/**
+	 * Set the out-degree distribution
+	 * @param degree - fixed:k, uniform:min-max, geometric:mean or zipf:max
+	 */
+	public void setDegree(String degree) {
+		dependencyCount(degree, new Random(0)); // fail early on a bad spec
+		this.degree = degree;
+	}
+
+	/**
+	 * Set the number of layers; packages only depend on deeper layers
+	 * @param depth - the number of layers, at least 1
+	 */
+	public void setDepth(int depth) {
+		this.depth = Math.max(1, depth);
+	}
+
+	/**
+	 * Set how often a dependency is drawn from the popular packages at the
+	 * start of the deeper layers
+	 * @param shared - the probability, 0 to 1
+	 */
+	public void setShared(double shared) {
+		this.shared = shared;
+	}
+
+	/**
+	 * Set the number of cycles to plant
+	 * @param cycles - the number of cycles, 0 for an acyclic manifest
+	 */
+	public void setCycles(int cycles) {
+		this.cycles = cycles;
+	}
+
+	/**
+	 * Set the seed; the same settings and seed give the same manifest
+	 * @param seed - the seed
+	 */
+	public void setSeed(long seed) {
+		this.seed = seed;
+	}
+
+	/**
+	 * Write the manifest to a file
+	 * @param path - the file to write
+	 * @throws IOException if the file cannot be written
+	 */
+	public void write(String path) throws IOException {
+		try (Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(path), StandardCharsets.UTF_8), 1 << 16)) {
+			write(out);
+		}
+	}
+
+	/**
+	 * Write the manifest
+	 * @param out - where to write it
+	 * @throws IOException if it cannot be written
+	 */
+	public void write(Writer out) throws IOException {
+		Map<Integer, List<Integer>> planted = plantCycles();
+		out.write("{\"packages\": [\n");
+		for (int i = 0; i < packages; i++) {
+			out.write(i == 0 ? "  {\"name\": \"p" : ",\n  {\"name\": \"p");
+			out.write(Integer.toString(i));
+			out.write("\", \"dependencies\": [");
+			List<Integer> dependencies = dependencies(i);
+			if (planted.containsKey(i)) {
+				dependencies.addAll(planted.get(i));
+			}
+			for (int j = 0; j < dependencies.size(); j++) {
+				out.write(j == 0 ? "\"p" : ", \"p");
+				out.write(Integer.toString(dependencies.get(j)));
+				out.write('"');
+			}
+			out.write("]}");
+		}
+		out.write("\n]}\n");
+	}
+
+	/**
+	 * Return the generated dependencies of a package, without planted
+	 * cycle edges
+	 * @param i - the package number
+	 * @return the numbers of its dependencies, without duplicates
+	 */
+	List<Integer> dependencies(int i) {
+		List<Integer> dependencies = new ArrayList<Integer>();
+		int layer = layerOf(i);
+		if (layer == depth - 1) {
+			return dependencies; // deepest layer has no dependencies
+		}
+		// Packages in deeper layers are the ones from lo to packages - 1
+		int lo = firstOfLayer(layer + 1);
+		int span = packages - lo;
+		if (span <= 0) {
+			return dependencies;
+		}
+		Random random = new Random(seed * 0x9E3779B97F4A7C15L + i);
+		int count = Math.min(span, dependencyCount(degree, random));
+		while (dependencies.size() < count) {
+			int d;
+			if (random.nextDouble() < shared) {
+				// Skewed towards the start of the deeper layers
+				double u = random.nextDouble();
+				d = lo + (int) (span * u * u * u);
+			} else {
+				d = lo + random.nextInt(span);
+			}
+			if (!dependencies.contains(d)) {
+				dependencies.add(d);
+			}
+		}
+		return dependencies;
+	}
+
+	/**
+	 * Helper method to pick the cycle edges to plant. Every cycle follows
+	 * generated dependencies down from a package and closes with an edge
+	 * back to it.
+	 * @return package number -> extra dependencies
+	 */
+	private Map<Integer, List<Integer>> plantCycles() {
+		Map<Integer, List<Integer>> planted = new HashMap<Integer, List<Integer>>();
+		Random random = new Random(~seed);
+		for (int c = 0; c < cycles && packages > 1; c++) {
+			int start = random.nextInt(packages);
+			int current = start;
+			int length = 1 + random.nextInt(Math.max(1, depth - 1));
+			for (int step = 0; step < length; step++) {
+				List<Integer> next = dependencies(current);
+				if (next.isEmpty()) {
+					break;
+				}
+				current = next.get(random.nextInt(next.size()));
+			}
+			// A package without dependencies gets a cycle of length one
+			planted.computeIfAbsent(current, k -> new ArrayList<Integer>()).add(start);
+		}
+		return planted;
+	}
+
+	/**
+	 * Helper method to get the layer of a package
+	 * @param i - the package number
+	 * @return the layer, 0 is the top
+	 */
+	private int layerOf(int i) {
+		return (int) ((long) i * depth / packages);
+	}
+
+	/**
+	 * Helper method to get the first package of a layer
+	 * @param layer - the layer
+	 * @return the first package number in the layer
+	 */
+	private int firstOfLayer(int layer) {
+		return (int) (((long) layer * packages + depth - 1) / depth);
+	}
+
+	/**
+	 * Helper method to draw a number of dependencies
+	 * @param spec - the distribution
+	 * @param random - the source of randomness
+	 * @return the number of dependencies
+	 */
+	private static int dependencyCount(String spec, Random random) {
+		String[] parts = spec.split(":", 2);
+		if (parts.length != 2) {
+			throw new IllegalArgumentException("Bad degree distribution " + spec);
+		}
+		switch (parts[0]) {
+		case "fixed":
+			return Integer.parseInt(parts[1]);
+		case "uniform":
+			String[] range = parts[1].split("-");
+			int min = Integer.parseInt(range[0]);
+			int max = Integer.parseInt(range[1]);
+			return min + random.nextInt(max - min + 1);
+		case "geometric":
+			double p = 1.0 / (1.0 + Double.parseDouble(parts[1]));
+			return (int) (Math.log(1.0 - random.nextDouble()) / Math.log(1.0 - p));
+		case "zipf":
+			// P(k) ~ 1/(k+1) for 0 <= k <= max, drawn by inverting the log
+			int top = Integer.parseInt(parts[1]);
+			return Math.min(top, (int) Math.floor(Math.exp(random.nextDouble() * Math.log(top + 2.0))) - 1);
+		default:
+			throw new IllegalArgumentException("Bad degree distribution " + spec);
+		}
+	}
+}
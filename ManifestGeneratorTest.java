@@ -0,0 +1,140 @@
+///////////////////////////////////////////////////////////////////////////////
+//
+// Title:           ManifestGeneratorTest
+// Files:           ManifestGeneratorTest, ManifestGenerator
+// Course:          CS400 LEC001, Spring, 2020
+//
+// Author:          Binh Quoc Trinh (Bon)
+// Email:           btrinh@wisc.edu
+// Lecturer's Name: Debra Deppeler
+//
+/////////////////////////////// 80 COLUMNS WIDE ///////////////////////////////
+
+
+import static org.junit.jupiter.api.Assertions.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Test;
+
+/**
+ * This is the test suite for the manifest generator
+ * @author Bon
+ *
+ */
+public class ManifestGeneratorTest {
+	static final int PACKAGES = 300; // packages per generated manifest
+
+	/**
+	 * Helper method to make a generator for a small manifest
+	 * @param cycles - the number of cycles to plant
+	 * @param seed - the seed
+	 * @return the generator
+	 */
+	private static ManifestGenerator generator(int cycles, long seed) {
+		ManifestGenerator generator = new ManifestGenerator();
+		generator.setPackages(PACKAGES);
+		generator.setDegree("uniform:0-4");
+		generator.setDepth(6);
+		generator.setCycles(cycles);
+		generator.setSeed(seed);
+		return generator;
+	}
+
+	/**
+	 * Helper method to write a manifest to a temporary file and load it
+	 * @param generator - the generator
+	 * @param graph - the graph to load it into
+	 * @return the package manager
+	 * @throws Exception if the manifest cannot be written or loaded
+	 */
+	private static PackageManager load(ManifestGenerator generator, Graph graph) throws Exception {
+		File json = File.createTempFile("generated", ".json");
+		json.deleteOnExit();
+		generator.write(json.getPath());
+		PackageManager pm = new PackageManager(graph);
+		pm.constructGraph(json.getPath());
+		return pm;
+	}
+
+	/**
+	 * Helper method to write a manifest to a string
+	 * @param generator - the generator
+	 * @return the manifest
+	 * @throws IOException never for a string
+	 */
+	private static String write(ManifestGenerator generator) throws IOException {
+		StringWriter out = new StringWriter();
+		generator.write(out);
+		return out.toString();
+	}
+
+	/**
+	 * Test if a manifest without planted cycles loads with every generated
+	 * dependency and has an installation order
+	 */
+	@Test
+	public void test00_acyclic_and_readable() {
+		try {
+			ManifestGenerator generator = generator(0, 7);
+			Graph g = new Graph();
+			PackageManager pm = load(generator, g);
+			if (pm.getAllPackages().size() != PACKAGES || pm.getInstallationOrderForAllPackages().size() != PACKAGES
+					|| !pm.findCycles().isEmpty()) {
+				fail();
+			}
+			for (int i = 0; i < PACKAGES; i++) {
+				Set<String> expected = new HashSet<String>();
+				for (int d : generator.dependencies(i)) {
+					expected.add("p" + d);
+				}
+				if (!new HashSet<String>(g.getAdjacentVerticesOf("p" + i)).equals(expected)) {
+					fail();
+				}
+			}
+		} catch (Exception e) {
+			fail();
+		}
+	}
+
+	/**
+	 * Test if planted cycles are found
+	 */
+	@Test
+	public void test01_planted_cycles() {
+		try {
+			PackageManager pm = load(generator(3, 7), new Graph());
+			if (pm.findCycles().isEmpty()) {
+				fail();
+			}
+			pm.getInstallationOrderForAllPackages();
+			fail();
+		} catch (CycleException e) {
+			if (e.getCycle().isEmpty()) {
+				fail();
+			}
+		} catch (Exception e) {
+			fail();
+		}
+	}
+
+	/**
+	 * Test if the same settings give the same manifest and another seed
+	 * gives another one
+	 */
+	@Test
+	public void test02_deterministic() {
+		try {
+			if (!write(generator(2, 11)).equals(write(generator(2, 11)))
+					|| write(generator(2, 11)).equals(write(generator(2, 12)))) {
+				fail();
+			}
+		} catch (IOException e) {
+			fail();
+		}
+	}
+}
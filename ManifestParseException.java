@@ -0,0 +1,72 @@
+import org.json.simple.parser.ParseException;
+
+/**
+ * Filename:   ManifestParseException.java
+ * Project:    p4
+ * Authors:    Bon
+ *
+ * Thrown by ManifestReader when a manifest is malformed. The position is
+ * the byte offset of the problem in the file, which can be larger than
+ * the int position of ParseException for very big manifests.
+ */
+@SuppressWarnings("serial")
+public class ManifestParseException extends ParseException {
+	private final String file;
+	private final long offset;
+	private final String problem;
+
+	/**
+	 * Constructor
+	 * @param offset - byte offset of the problem in the input
+	 * @param problem - what was wrong
+	 */
+	public ManifestParseException(long offset, String problem) {
+		this(null, offset, problem);
+	}
+
+	/**
+	 * Constructor for a problem in a known file
+	 * @param file - the manifest file, or null if not known
+	 * @param offset - byte offset of the problem in the input
+	 * @param problem - what was wrong
+	 */
+	public ManifestParseException(String file, long offset, String problem) {
+		super((int) Math.min(offset, Integer.MAX_VALUE), ERROR_UNEXPECTED_TOKEN, problem);
+		this.file = file;
+		this.offset = offset;
+		this.problem = problem;
+	}
+
+	/**
+	 * Return the manifest file the problem is in
+	 * @return the file, or null if not known
+	 */
+	public String getFile() {
+		return file;
+	}
+
+	/**
+	 * Return the description of the problem, without where it is
+	 * @return the problem
+	 */
+	public String getProblem() {
+		return problem;
+	}
+
+	/**
+	 * Return the byte offset of the problem in the input
+	 * @return the byte offset
+	 */
+	public long getOffset() {
+		return offset;
+	}
+
+	/**
+	 * Return the description of the problem and where it is
+	 * @return the message
+	 */
+	@Override
+	public String getMessage() {
+		return problem + (file == null ? "" : " in " + file) + " at byte " + offset;
+	}
+}
@@ -0,0 +1,382 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Filename:   ManifestReader.java
+ * Project:    p4
+ * Authors:    Bon
+ *
+ * Streaming reader for json package dependency files of the form
+ *
+ *     { "packages": [ { "name": "A", "dependencies": ["B", "C"] }, ... ] }
+ *
+ * The input is read token by token through a fixed size buffer and every
+ * package is handed to a PackageHandler as soon as its object is closed,
+ * so memory use does not depend on the size of the file. Other members
+ * of the objects are skipped. Malformed input is reported with the byte
+ * offset of the problem.
+ */
+public class ManifestReader implements Closeable {
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	/**
+	 * Receives the packages of a manifest in file order
+	 */
+	public interface PackageHandler {
+		/**
+		 * Called once per package object
+		 * @param name - the package name
+		 * @param dependencies - its dependencies, only valid during the call
+		 */
+		void onPackage(String name, List<String> dependencies);
+	}
+
+	private final InputStream in;
+	private final byte[] buffer = new byte[BUFFER_SIZE];
+	private int pos;
+	private int limit;
+	private long offset; // byte offset of buffer[0] in the input
+
+	// Reused while reading
+	private final StringBuilder text = new StringBuilder();
+	private byte[] bytes = new byte[64];
+	private final List<String> dependencies = new ArrayList<String>();
+
+	/**
+	 * Constructor
+	 * @param in - the manifest, read from its current position
+	 */
+	public ManifestReader(InputStream in) {
+		this.in = in;
+	}
+
+	/**
+	 * Read the whole manifest
+	 * @param handler - receives every package
+	 * @throws IOException if the input cannot be read
+	 * @throws ManifestParseException if the input is malformed
+	 */
+	public void read(PackageHandler handler) throws IOException, ManifestParseException {
+		boolean found = false;
+		expect('{');
+		if (peek() == '}') {
+			next();
+		} else {
+			do {
+				String key = readString();
+				expect(':');
+				if (key.equals("packages")) {
+					readPackages(handler);
+					found = true;
+				} else {
+					skipValue();
+				}
+			} while (endOfMember('}'));
+		}
+		if (peek() != -1) {
+			throw error("Unexpected data after the manifest");
+		}
+		if (!found) {
+			throw error("Missing \"packages\" array");
+		}
+	}
+
+	/**
+	 * Close the underlying input
+	 * @throws IOException if the input cannot be closed
+	 */
+	@Override
+	public void close() throws IOException {
+		in.close();
+	}
+
+	/**
+	 * Helper method to read the packages array
+	 * @param handler - receives every package
+	 */
+	private void readPackages(PackageHandler handler) throws IOException, ManifestParseException {
+		expect('[');
+		if (peek() == ']') {
+			next();
+			return;
+		}
+		do {
+			readPackage(handler);
+		} while (endOfMember(']'));
+	}
+
+	/**
+	 * Helper method to read one package object
+	 * @param handler - receives the package
+	 */
+	private void readPackage(PackageHandler handler) throws IOException, ManifestParseException {
+		String name = null;
+		dependencies.clear();
+		expect('{');
+		if (peek() == '}') {
+			next();
+		} else {
+			do {
+				String key = readString();
+				expect(':');
+				if (key.equals("name")) {
+					name = readString();
+				} else if (key.equals("dependencies")) {
+					readDependencies();
+				} else {
+					skipValue();
+				}
+			} while (endOfMember('}'));
+		}
+		if (name == null) {
+			throw error("Package without a \"name\"");
+		}
+		handler.onPackage(name, dependencies);
+	}
+
+	/**
+	 * Helper method to read a dependencies array into the reused list
+	 */
+	private void readDependencies() throws IOException, ManifestParseException {
+		dependencies.clear();
+		expect('[');
+		if (peek() == ']') {
+			next();
+			return;
+		}
+		do {
+			dependencies.add(readString());
+		} while (endOfMember(']'));
+	}
+
+	/**
+	 * Helper method to read the separator after an array element or an
+	 * object member
+	 * @param close - the closing bracket of the array or object
+	 * @return true if another element follows, false if it was the last
+	 */
+	private boolean endOfMember(char close) throws IOException, ManifestParseException {
+		int c = peek();
+		if (c == ',') {
+			next();
+			return true;
+		}
+		if (c == close) {
+			next();
+			return false;
+		}
+		throw unexpected(c, "',' or '" + close + "'");
+	}
+
+	/**
+	 * Helper method to skip any json value
+	 */
+	private void skipValue() throws IOException, ManifestParseException {
+		int c = peek();
+		if (c == '"') {
+			readString();
+		} else if (c == '{') {
+			next();
+			if (peek() == '}') {
+				next();
+				return;
+			}
+			do {
+				readString();
+				expect(':');
+				skipValue();
+			} while (endOfMember('}'));
+		} else if (c == '[') {
+			next();
+			if (peek() == ']') {
+				next();
+				return;
+			}
+			do {
+				skipValue();
+			} while (endOfMember(']'));
+		} else if (c == '-' || (c >= '0' && c <= '9')) {
+			// Numbers only have to be skipped, not checked in detail
+			while ((c = peekRaw()) == '-' || c == '+' || c == '.' || c == 'e' || c == 'E'
+					|| (c >= '0' && c <= '9')) {
+				next();
+			}
+		} else if (c == 't') {
+			literal("true");
+		} else if (c == 'f') {
+			literal("false");
+		} else if (c == 'n') {
+			literal("null");
+		} else {
+			throw unexpected(c, "a value");
+		}
+	}
+
+	/**
+	 * Helper method to read a literal such as true
+	 * @param word - the literal
+	 */
+	private void literal(String word) throws IOException, ManifestParseException {
+		for (int i = 0; i < word.length(); i++) {
+			if (peekRaw() != word.charAt(i)) {
+				throw unexpected(peekRaw(), word);
+			}
+			next();
+		}
+	}
+
+	/**
+	 * Helper method to read a json string
+	 * @return the decoded string
+	 */
+	private String readString() throws IOException, ManifestParseException {
+		expect('"');
+		text.setLength(0);
+		int n = 0; // pending UTF-8 bytes, decoded in one go
+		while (true) {
+			int c = next();
+			if (c == '"') {
+				break;
+			}
+			if (c == -1) {
+				throw error("Unterminated string");
+			}
+			if (c < 0x20) {
+				throw error("Control character in string");
+			}
+			if (c != '\\') {
+				if (n == bytes.length) {
+					bytes = Arrays.copyOf(bytes, n * 2);
+				}
+				bytes[n++] = (byte) c;
+				continue;
+			}
+			// Escapes are decoded into the text, so flush the bytes before them
+			if (n > 0) {
+				text.append(new String(bytes, 0, n, StandardCharsets.UTF_8));
+				n = 0;
+			}
+			c = next();
+			switch (c) {
+			case '"': case '\\': case '/':
+				text.append((char) c);
+				break;
+			case 'b': text.append('\b'); break;
+			case 'f': text.append('\f'); break;
+			case 'n': text.append('\n'); break;
+			case 'r': text.append('\r'); break;
+			case 't': text.append('\t'); break;
+			case 'u':
+				int code = 0;
+				for (int i = 0; i < 4; i++) {
+					int digit = Character.digit(next(), 16);
+					if (digit < 0) {
+						throw error("Invalid \\u escape");
+					}
+					code = code * 16 + digit;
+				}
+				text.append((char) code);
+				break;
+			default:
+				throw error("Invalid escape");
+			}
+		}
+		if (text.length() == 0) {
+			return new String(bytes, 0, n, StandardCharsets.UTF_8);
+		}
+		if (n > 0) {
+			text.append(new String(bytes, 0, n, StandardCharsets.UTF_8));
+		}
+		return text.toString();
+	}
+
+	/**
+	 * Helper method to consume the given character after any whitespace
+	 * @param c - the expected character
+	 */
+	private void expect(char c) throws IOException, ManifestParseException {
+		int actual = peek();
+		if (actual != c) {
+			throw unexpected(actual, "'" + c + "'");
+		}
+		next();
+	}
+
+	/**
+	 * Helper method to skip whitespace and look at the next byte
+	 * @return the next byte, or -1 at the end of the input
+	 */
+	private int peek() throws IOException {
+		int c;
+		while ((c = peekRaw()) == ' ' || c == '\n' || c == '\r' || c == '\t') {
+			pos++;
+		}
+		return c;
+	}
+
+	/**
+	 * Helper method to look at the next byte
+	 * @return the next byte, or -1 at the end of the input
+	 */
+	private int peekRaw() throws IOException {
+		if (pos == limit && !fill()) {
+			return -1;
+		}
+		return buffer[pos] & 0xFF;
+	}
+
+	/**
+	 * Helper method to consume the next byte
+	 * @return the next byte, or -1 at the end of the input
+	 */
+	private int next() throws IOException {
+		if (pos == limit && !fill()) {
+			return -1;
+		}
+		return buffer[pos++] & 0xFF;
+	}
+
+	/**
+	 * Helper method to refill the buffer once it is used up
+	 * @return false at the end of the input
+	 */
+	private boolean fill() throws IOException {
+		offset += limit;
+		pos = 0;
+		limit = 0;
+		int read;
+		while ((read = in.read(buffer)) == 0) {
+			// Streams may return 0 bytes without being at the end
+		}
+		if (read < 0) {
+			return false;
+		}
+		limit = read;
+		return true;
+	}
+
+	/**
+	 * Helper method to create an error at the current position
+	 * @param problem - what was wrong
+	 * @return the exception
+	 */
+	private ManifestParseException error(String problem) {
+		return new ManifestParseException(offset + pos, problem);
+	}
+
+	/**
+	 * Helper method to create an error for an unexpected byte
+	 * @param c - the byte found, or -1 at the end of the input
+	 * @param expected - what was expected instead
+	 * @return the exception
+	 */
+	private ManifestParseException unexpected(int c, String expected) {
+		String found = c == -1 ? "end of input" : c >= 0x20 && c < 0x7F ? "'" + (char) c + "'" : "byte " + c;
+		return error("Expected " + expected + " but found " + found);
+	}
+}
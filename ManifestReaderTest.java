@@ -0,0 +1,113 @@
+///////////////////////////////////////////////////////////////////////////////
+//
+// Title:           ManifestReaderTest
+// Files:           ManifestReaderTest, ManifestReader, ManifestParseException
+// Course:          CS400 LEC001, Spring, 2020
+//
+// Author:          Binh Quoc Trinh (Bon)
+// Email:           btrinh@wisc.edu
+// Lecturer's Name: Debra Deppeler
+//
+/////////////////////////////// 80 COLUMNS WIDE ///////////////////////////////
+
+
+import static org.junit.jupiter.api.Assertions.fail;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * This is the test suite for the streaming manifest reader
+ * @author Bon
+ *
+ */
+public class ManifestReaderTest {
+
+	/**
+	 * Helper method to read a manifest from a string
+	 * @param json - the manifest
+	 * @return every package as its name followed by its dependencies
+	 * @throws Exception if the manifest cannot be read
+	 */
+	private List<List<String>> read(String json) throws Exception {
+		List<List<String>> packages = new ArrayList<List<String>>();
+		ManifestReader reader = new ManifestReader(new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)));
+		reader.read((name, dependencies) -> {
+			List<String> p = new ArrayList<String>();
+			p.add(name);
+			p.addAll(dependencies);
+			packages.add(p);
+		});
+		return packages;
+	}
+
+	/**
+	 * Test if packages are read in order, whatever the order of their members
+	 */
+	@Test
+	public void test00_read() {
+		try {
+			List<List<String>> p = read("{\"version\": 2, \"packages\": [\n"
+					+ "  {\"name\": \"A\", \"dependencies\": [\"B\", \"C\"]},\n"
+					+ "  {\"dependencies\": [], \"extra\": {\"x\": [1, -2.5e3, true, null]}, \"name\": \"B\"},\n"
+					+ "  {\"name\": \"C\"}\n"
+					+ "]}");
+			if (!p.equals(Arrays.asList(Arrays.asList("A", "B", "C"), Arrays.asList("B"), Arrays.asList("C")))) {
+				fail();
+			}
+		} catch (Exception e) {
+			fail();
+		}
+	}
+
+	/**
+	 * Test if escapes and multi-byte characters are decoded
+	 */
+	@Test
+	public void test01_read_escapes() {
+		try {
+			List<List<String>> p = read("{\"packages\": [{\"name\": \"caf\u00e9\", \"dependencies\": [\"a\\\"b\", \"\\u00e9t\\u00e9\"]}]}");
+			if (!p.equals(Arrays.asList(Arrays.asList("caf\u00e9", "a\"b", "\u00e9t\u00e9")))) {
+				fail();
+			}
+		} catch (Exception e) {
+			fail();
+		}
+	}
+
+	/**
+	 * Test if malformed input is reported with the byte offset of the problem
+	 */
+	@Test
+	public void test02_read_malformed() {
+		try {
+			read("{\"packages\": [{\"name\": \"A\" \"dependencies\": []}]}");
+			fail();
+		} catch (ManifestParseException e) {
+			if (e.getOffset() != 27) {
+				fail();
+			}
+		} catch (Exception e) {
+			fail();
+		}
+	}
+
+	/**
+	 * Test if a truncated manifest is rejected
+	 */
+	@Test
+	public void test03_read_truncated() {
+		try {
+			read("{\"packages\": [{\"name\": \"A\", \"dependencies\": [\"B\"");
+			fail();
+		} catch (ManifestParseException e) {
+		} catch (Exception e) {
+			fail();
+		}
+	}
+}
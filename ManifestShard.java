@@ -0,0 +1,375 @@
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Filename:   ManifestShard.java
+ * Project:    p4
+ * Authors:    Bon
+ *
+ * The packages of one manifest file, parsed but not yet added to a graph.
+ *
+ * Shards are parsed in parallel by PackageManager.constructGraph and then
+ * added to the graph one after the other in the order of their files, so
+ * the result is the same as loading the files one by one. PackageManager
+ * .reload compares a shard with the live graph instead. A shard keeps
+ * its packages flat: package i depends on dependencies[offsets[i]] ..
+ * dependencies[offsets[i + 1] - 1]. Names repeated within the shard
+ * share one String.
+ *
+ * A Graph that keeps its topological order rejects an edge that would
+ * close a cycle. Changes to such a graph are journaled, so a rejected
+ * edge undoes everything the shards changed and becomes a CycleException
+ * with the cycle.
+ */
+final class ManifestShard {
+	private final List<String> names = new ArrayList<String>();
+	private int[] offsets = new int[17];
+	private String[] dependencies = new String[64];
+	private int count; // number of dependencies
+
+	/**
+	 * Parse a manifest file into a shard
+	 * @param path - the manifest file
+	 * @return the shard
+	 * @throws IOException if the file cannot be read
+	 * @throws ManifestParseException if the file is malformed, with the
+	 * file name in the message
+	 */
+	static ManifestShard parse(String path) throws IOException, ManifestParseException {
+		ManifestShard shard = new ManifestShard();
+		Map<String, String> canonical = new HashMap<String, String>();
+		try (ManifestReader reader = new ManifestReader(new FileInputStream(path))) {
+			reader.read((name, dependencies) -> {
+				shard.add(canonical.computeIfAbsent(name, k -> k), dependencies, canonical);
+			});
+		} catch (ManifestParseException e) {
+			throw new ManifestParseException(path, e.getOffset(), e.getProblem());
+		}
+		return shard;
+	}
+
+	/**
+	 * Return the number of packages
+	 * @return the number of packages
+	 */
+	int packageCount() {
+		return names.size();
+	}
+
+	/**
+	 * Return the number of dependencies of all the packages
+	 * @return the number of dependencies
+	 */
+	int dependencyCount() {
+		return count;
+	}
+
+	/**
+	 * Add the packages to a graph in file order
+	 * @param graph - the graph
+	 * @throws CycleException if the graph rejects a dependency that closes
+	 * a cycle, with the cycle; the graph is not changed
+	 */
+	void addTo(GraphADT graph) throws CycleException {
+		addAll(Collections.singletonList(this), graph);
+	}
+
+	/**
+	 * Add the packages of several shards to a graph, shard after shard in
+	 * file order
+	 * @param shards - the shards
+	 * @param graph - the graph
+	 * @throws CycleException if the graph rejects a dependency that closes
+	 * a cycle, with the cycle; the graph is not changed
+	 */
+	static void addAll(List<ManifestShard> shards, GraphADT graph) throws CycleException {
+		Deque<Runnable> undo = rejectsCycles(graph) ? new ArrayDeque<Runnable>() : null;
+		for (ManifestShard shard : shards) {
+			for (int i = 0; i < shard.names.size(); i++) {
+				String name = shard.names.get(i);
+				addVertex(graph, name, undo);
+				for (int j = shard.offsets[i]; j < shard.offsets[i + 1]; j++) {
+					addEdge(graph, name, shard.dependencies[j], undo);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Change a graph to match the packages, touching only the packages and
+	 * dependencies that differ. Packages of the graph that are not in the
+	 * shard at all are removed, and packages that only appear as a
+	 * dependency lose their own dependencies.
+	 * 
+	 * The differences are worked out before the graph is touched, and all
+	 * the removals are made before the additions, so a graph that rejects
+	 * cycles on addEdge only sees the edges of the new manifest next to
+	 * what is left of the old one.
+	 * @param graph - the graph to change
+	 * @return the changes made
+	 * @throws CycleException if the graph rejects a dependency that closes
+	 * a cycle, with the cycle; the graph is not changed
+	 */
+	ChangeSet reloadInto(GraphADT graph) throws CycleException {
+		ChangeSet changes = new ChangeSet();
+		Deque<Runnable> undo = rejectsCycles(graph) ? new ArrayDeque<Runnable>() : null;
+		Set<String> before = graph.getAllVertices();
+		// Package -> dependencies, in file order; a package listed twice
+		// keeps the dependencies of both entries
+		Map<String, Set<String>> wanted = new LinkedHashMap<String, Set<String>>();
+		Set<String> present = new LinkedHashSet<String>(); // in file order
+		for (int i = 0; i < names.size(); i++) {
+			String name = names.get(i);
+			Set<String> deps = wanted.computeIfAbsent(name, k -> new LinkedHashSet<String>());
+			deps.addAll(Arrays.asList(dependencies).subList(offsets[i], offsets[i + 1]));
+			present.add(name);
+			present.addAll(deps);
+		}
+
+		// Work out the differences without changing the graph
+		List<String> removedPackages = new ArrayList<String>();
+		List<String[]> removedEdges = new ArrayList<String[]>();
+		List<String[]> addedEdges = new ArrayList<String[]>();
+		for (String v : before) {
+			if (!present.contains(v)) {
+				removedPackages.add(v);
+				continue;
+			}
+			Set<String> deps = wanted.getOrDefault(v, Collections.<String>emptySet());
+			for (String d : graph.getAdjacentVerticesOf(v)) {
+				if (!deps.contains(d)) {
+					removedEdges.add(new String[] {v, d});
+				}
+			}
+		}
+		for (Map.Entry<String, Set<String>> entry : wanted.entrySet()) {
+			String name = entry.getKey();
+			Set<String> current = before.contains(name)
+					? new HashSet<String>(graph.getAdjacentVerticesOf(name)) : Collections.<String>emptySet();
+			for (String d : entry.getValue()) {
+				if (!current.contains(d)) {
+					addedEdges.add(new String[] {name, d});
+				}
+			}
+		}
+
+		// Remove everything that goes, then add everything that is new
+		for (String[] edge : removedEdges) {
+			graph.removeEdge(edge[0], edge[1]);
+			if (undo != null) {
+				undo.push(() -> graph.addEdge(edge[0], edge[1]));
+			}
+			changes.removeDependency(edge[0], edge[1]);
+		}
+		for (String v : removedPackages) {
+			if (undo != null) {
+				// Edges into v went with removedEdges, keep the ones out of it
+				List<String> adjacent = graph.getAdjacentVerticesOf(v);
+				undo.push(() -> {
+					graph.addVertex(v);
+					for (String d : adjacent) {
+						graph.addEdge(v, d);
+					}
+				});
+			}
+			graph.removeVertex(v);
+			changes.removePackage(v);
+		}
+		for (String v : present) {
+			if (!before.contains(v)) {
+				addVertex(graph, v, undo);
+				changes.addPackage(v);
+			}
+		}
+		for (String[] edge : addedEdges) {
+			addEdge(graph, edge[0], edge[1], undo);
+			changes.addDependency(edge[0], edge[1]);
+		}
+		return changes;
+	}
+
+	/**
+	 * Helper method to tell whether a graph rejects edges that close a
+	 * cycle, so changes to it have to be journaled
+	 * @param graph - the graph
+	 * @return true if it is a Graph that keeps its topological order
+	 */
+	private static boolean rejectsCycles(GraphADT graph) {
+		return graph instanceof Graph && ((Graph) graph).keepsOrder();
+	}
+
+	/**
+	 * Helper method to add a vertex, journaling it if it is new
+	 * @param graph - the graph
+	 * @param vertex - the vertex
+	 * @param undo - the journal, null if the graph accepts every edge
+	 */
+	private static void addVertex(GraphADT graph, String vertex, Deque<Runnable> undo) {
+		if (undo != null && !graph.containsVertex(vertex)) {
+			undo.push(() -> graph.removeVertex(vertex));
+		}
+		graph.addVertex(vertex);
+	}
+
+	/**
+	 * Helper method to add an edge, journaling it and the vertices it adds.
+	 * If the graph rejects it, the journal is undone.
+	 * @param graph - the graph
+	 * @param from - the package
+	 * @param to - the dependency
+	 * @param undo - the journal, null if the graph accepts every edge
+	 * @throws CycleException if the edge closes a cycle, with the cycle
+	 */
+	private static void addEdge(GraphADT graph, String from, String to, Deque<Runnable> undo) throws CycleException {
+		if (undo == null) {
+			graph.addEdge(from, to);
+			return;
+		}
+		// A rejected edge may already have added its vertices
+		addVertex(graph, from, undo);
+		addVertex(graph, to, undo);
+		if (!graph.containsEdge(from, to)) {
+			try {
+				graph.addEdge(from, to);
+			} catch (IllegalArgumentException e) {
+				List<String> cycle = cycleClosedBy(graph, from, to);
+				while (!undo.isEmpty()) {
+					undo.pop().run();
+				}
+				throw new CycleException(cycle);
+			}
+			undo.push(() -> graph.removeEdge(from, to));
+		}
+	}
+
+	/**
+	 * Helper method to find the cycle an edge would close, with a breadth
+	 * first search back from its destination to its start
+	 * @param graph - the graph, without the edge
+	 * @param from - the package
+	 * @param to - the dependency
+	 * @return the cycle from -> to -> ... -> from
+	 */
+	private static List<String> cycleClosedBy(GraphADT graph, String from, String to) {
+		Map<String, String> parent = new HashMap<String, String>();
+		Deque<String> queue = new ArrayDeque<String>();
+		parent.put(to, to);
+		queue.add(to);
+		while (!queue.isEmpty() && !parent.containsKey(from)) {
+			String v = queue.poll();
+			for (String d : graph.getAdjacentViewOf(v)) {
+				if (!parent.containsKey(d)) {
+					parent.put(d, v);
+					queue.add(d);
+				}
+			}
+		}
+		List<String> path = new ArrayList<String>();
+		for (String v = from; !v.equals(to); v = parent.get(v)) {
+			path.add(v);
+		}
+		path.add(to);
+		path.add(from);
+		Collections.reverse(path);
+		return path;
+	}
+
+	/**
+	 * Helper method to append one package
+	 * @param name - the package name
+	 * @param deps - its dependencies
+	 * @param canonical - the names seen so far in the shard
+	 */
+	private void add(String name, List<String> deps, Map<String, String> canonical) {
+		names.add(name);
+		if (names.size() + 1 > offsets.length) {
+			offsets = Arrays.copyOf(offsets, offsets.length * 2);
+		}
+		if (count + deps.size() > dependencies.length) {
+			dependencies = Arrays.copyOf(dependencies, Math.max(count + deps.size(), dependencies.length * 2));
+		}
+		for (String d : deps) {
+			dependencies[count++] = canonical.computeIfAbsent(d, k -> k);
+		}
+		offsets[names.size()] = count;
+	}
+
+	/**
+	 * Fork-join task that parses a range of manifest files, splitting the
+	 * range in halves until a single file is left
+	 */
+	@SuppressWarnings("serial")
+	static final class ParseTask extends RecursiveTask<List<ManifestShard>> {
+		private final List<String> paths;
+		private final int from;
+		private final int to;
+
+		/**
+		 * Constructor
+		 * @param paths - all the manifest files
+		 * @param from - first file of the range
+		 * @param to - end of the range, exclusive
+		 */
+		ParseTask(List<String> paths, int from, int to) {
+			this.paths = paths;
+			this.from = from;
+			this.to = to;
+		}
+
+		/**
+		 * Parse the range
+		 * @return the shards in file order
+		 * @throws ShardException if a file cannot be read or parsed
+		 */
+		@Override
+		protected List<ManifestShard> compute() {
+			if (to - from == 1) {
+				List<ManifestShard> shard = new ArrayList<ManifestShard>(1);
+				try {
+					shard.add(parse(paths.get(from)));
+				} catch (IOException | ManifestParseException e) {
+					throw new ShardException(e);
+				}
+				return shard;
+			}
+			int mid = (from + to) >>> 1;
+			ParseTask left = new ParseTask(paths, from, mid);
+			ParseTask right = new ParseTask(paths, mid, to);
+			left.fork();
+			List<ManifestShard> shards = new ArrayList<ManifestShard>(to - from);
+			List<ManifestShard> rightShards = right.compute();
+			shards.addAll(left.join());
+			shards.addAll(rightShards);
+			return shards;
+		}
+	}
+
+	/**
+	 * Carries a checked exception of a ParseTask out of the fork-join pool,
+	 * or of a shard out of a VersionedGraph update
+	 */
+	@SuppressWarnings("serial")
+	static final class ShardException extends RuntimeException {
+		/**
+		 * Constructor
+		 * @param cause - the IOException, ManifestParseException or
+		 * CycleException
+		 */
+		ShardException(Exception cause) {
+			super(cause);
+		}
+	}
+}
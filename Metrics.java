@@ -0,0 +1,387 @@
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Filename:   Metrics.java
+ * Project:    p4
+ * Authors:    Bon
+ *
+ * In-process registry of operation metrics for PackageManager and the
+ * graphs.
+ *
+ * Counters count events. Histograms record values such as the number of
+ * vertices a traversal visited; timers are histograms of latencies in
+ * nanoseconds. Histograms keep four buckets per power of two, so a
+ * percentile is exact to within 25%.
+ *
+ * Metrics are off by default. While they are off, Metrics.start() returns
+ * 0 without reading the clock and recording returns after one volatile
+ * read, so the instrumented code costs next to nothing. Instrumented
+ * classes look their metrics up once, into static fields.
+ *
+ * The registry can be read with counts(), counters() and histograms(),
+ * printed with report(), and exported over JMX with registerMBean().
+ */
+public final class Metrics {
+	// Name the MXBean is registered under
+	public static final String OBJECT_NAME = "p4:type=Metrics";
+
+	private static volatile boolean enabled;
+	private static final Map<String, Counter> counters = new ConcurrentHashMap<String, Counter>();
+	private static final Map<String, Histogram> histograms = new ConcurrentHashMap<String, Histogram>();
+
+	private Metrics() {
+	}
+
+	/**
+	 * A count of events
+	 */
+	public static final class Counter {
+		private final LongAdder count = new LongAdder();
+
+		private Counter() {
+		}
+
+		/**
+		 * Count one event, if metrics are enabled
+		 */
+		public void increment() {
+			if (enabled) {
+				count.increment();
+			}
+		}
+
+		/**
+		 * Count events, if metrics are enabled
+		 * @param n - the number of events
+		 */
+		public void add(long n) {
+			if (enabled) {
+				count.add(n);
+			}
+		}
+
+		/**
+		 * Return the count
+		 * @return the number of events counted
+		 */
+		public long get() {
+			return count.sum();
+		}
+	}
+
+	/**
+	 * A distribution of non-negative values
+	 */
+	public static final class Histogram {
+		private static final int BUCKETS = 256;
+		private final boolean nanos;
+		private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+		private final LongAdder count = new LongAdder();
+		private final LongAdder sum = new LongAdder();
+		private final AtomicLong max = new AtomicLong();
+
+		/**
+		 * Constructor
+		 * @param nanos - true if the values are latencies in nanoseconds
+		 */
+		private Histogram(boolean nanos) {
+			this.nanos = nanos;
+		}
+
+		/**
+		 * Record a value, if metrics are enabled
+		 * @param value - the value, negative values count as 0
+		 */
+		public void record(long value) {
+			if (!enabled) {
+				return;
+			}
+			value = Math.max(0, value);
+			buckets.incrementAndGet(bucketOf(value));
+			count.increment();
+			sum.add(value);
+			long m;
+			while (value > (m = max.get()) && !max.compareAndSet(m, value)) {
+			}
+		}
+
+		/**
+		 * Record the time since start, if it was taken
+		 * @param start - the value returned by Metrics.start()
+		 */
+		public void stop(long start) {
+			if (start != 0) {
+				record(System.nanoTime() - start);
+			}
+		}
+
+		/**
+		 * Return whether the values are latencies
+		 * @return true if the values are in nanoseconds
+		 */
+		public boolean isTimer() {
+			return nanos;
+		}
+
+		public long getCount() {
+			return count.sum();
+		}
+
+		public long getSum() {
+			return sum.sum();
+		}
+
+		public long getMax() {
+			return max.get();
+		}
+
+		/**
+		 * Return the mean of the values
+		 * @return the mean, 0 if there are none
+		 */
+		public double getMean() {
+			long n = count.sum();
+			return n == 0 ? 0 : (double) sum.sum() / n;
+		}
+
+		/**
+		 * Return a percentile of the values
+		 * @param p - the percentile, 0 to 100
+		 * @return the lower bound of the bucket holding the percentile, 0
+		 * if there are no values
+		 */
+		public long getPercentile(double p) {
+			long[] counts = new long[BUCKETS];
+			long n = 0;
+			for (int i = 0; i < BUCKETS; i++) {
+				counts[i] = buckets.get(i);
+				n += counts[i];
+			}
+			long rank = (long) Math.ceil(p / 100 * n);
+			long seen = 0;
+			for (int i = 0; i < BUCKETS; i++) {
+				seen += counts[i];
+				if (seen >= rank && counts[i] > 0) {
+					return lowerBound(i);
+				}
+			}
+			return 0;
+		}
+
+		/**
+		 * Helper method to reset the histogram
+		 */
+		private void reset() {
+			for (int i = 0; i < BUCKETS; i++) {
+				buckets.set(i, 0);
+			}
+			count.reset();
+			sum.reset();
+			max.set(0);
+		}
+
+		/**
+		 * Helper method to find the bucket of a value: values below 4 have
+		 * their own bucket, larger ones share a quarter of a power of two
+		 * @param value - the value
+		 * @return the bucket
+		 */
+		private static int bucketOf(long value) {
+			if (value < 4) {
+				return (int) value;
+			}
+			int e = 63 - Long.numberOfLeadingZeros(value);
+			return 4 * (e - 1) + (int) ((value >>> (e - 2)) & 3);
+		}
+
+		/**
+		 * Helper method to get the smallest value in a bucket
+		 * @param bucket - the bucket
+		 * @return the smallest value
+		 */
+		private static long lowerBound(int bucket) {
+			if (bucket < 4) {
+				return bucket;
+			}
+			return (4L + bucket % 4) << (bucket / 4 - 1);
+		}
+	}
+
+	/**
+	 * Return whether metrics are recorded
+	 * @return true if enabled
+	 */
+	public static boolean isEnabled() {
+		return enabled;
+	}
+
+	/**
+	 * Turn recording on or off
+	 * @param on - true to record
+	 */
+	public static void setEnabled(boolean on) {
+		enabled = on;
+	}
+
+	/**
+	 * Return the time to pass to Histogram.stop when the operation ends
+	 * @return System.nanoTime(), or 0 if metrics are disabled
+	 */
+	public static long start() {
+		return enabled ? System.nanoTime() : 0;
+	}
+
+	/**
+	 * Return the counter with the name, creating it if needed
+	 * @param name - the name
+	 * @return the counter
+	 */
+	public static Counter counter(String name) {
+		return counters.computeIfAbsent(name, k -> new Counter());
+	}
+
+	/**
+	 * Return the histogram of values with the name, creating it if needed
+	 * @param name - the name
+	 * @return the histogram
+	 */
+	public static Histogram histogram(String name) {
+		return histograms.computeIfAbsent(name, k -> new Histogram(false));
+	}
+
+	/**
+	 * Return the histogram of latencies with the name, creating it if needed
+	 * @param name - the name
+	 * @return the histogram, in nanoseconds
+	 */
+	public static Histogram timer(String name) {
+		return histograms.computeIfAbsent(name, k -> new Histogram(true));
+	}
+
+	/**
+	 * Return all the counters
+	 * @return name -> counter, sorted by name
+	 */
+	public static Map<String, Counter> counters() {
+		return new TreeMap<String, Counter>(counters);
+	}
+
+	/**
+	 * Return all the histograms
+	 * @return name -> histogram, sorted by name
+	 */
+	public static Map<String, Histogram> histograms() {
+		return new TreeMap<String, Histogram>(histograms);
+	}
+
+	/**
+	 * Return the value of every counter and the number of values recorded
+	 * by every histogram
+	 * @return name -> count, sorted by name
+	 */
+	public static Map<String, Long> counts() {
+		Map<String, Long> counts = new TreeMap<String, Long>();
+		counters.forEach((name, c) -> counts.put(name, c.get()));
+		histograms.forEach((name, h) -> counts.put(name, h.getCount()));
+		return counts;
+	}
+
+	/**
+	 * Reset every counter and histogram to zero
+	 */
+	public static void reset() {
+		counters.values().forEach(c -> c.count.reset());
+		histograms.values().forEach(Histogram::reset);
+	}
+
+	/**
+	 * Return a table of all the metrics that recorded anything, with
+	 * latencies in microseconds
+	 * @return the report
+	 */
+	public static String report() {
+		StringBuilder out = new StringBuilder();
+		out.append(String.format("%-48s %12s %12s %12s %12s %12s%n", "Metric", "count", "mean", "p50", "p99", "max"));
+		counters().forEach((name, c) -> {
+			if (c.get() > 0) {
+				out.append(String.format("%-48s %12d%n", name, c.get()));
+			}
+		});
+		histograms().forEach((name, h) -> {
+			if (h.getCount() > 0) {
+				double scale = h.isTimer() ? 1e3 : 1;
+				out.append(String.format("%-48s %12d %12.1f %12.1f %12.1f %12.1f%n", name + (h.isTimer() ? " (us)" : ""),
+						h.getCount(), h.getMean() / scale, h.getPercentile(50) / scale, h.getPercentile(99) / scale,
+						h.getMax() / scale));
+			}
+		});
+		return out.toString();
+	}
+
+	/**
+	 * Export the registry over JMX, under OBJECT_NAME on the platform
+	 * MBean server. Does nothing if it is already registered.
+	 * @throws JMException if the bean cannot be registered
+	 */
+	public static synchronized void registerMBean() throws JMException {
+		ObjectName name = new ObjectName(OBJECT_NAME);
+		if (!ManagementFactory.getPlatformMBeanServer().isRegistered(name)) {
+			ManagementFactory.getPlatformMBeanServer().registerMBean(new Bean(), name);
+		}
+	}
+
+	/**
+	 * The JMX view of the registry
+	 */
+	private static final class Bean implements MetricsMXBean {
+		@Override
+		public boolean isEnabled() {
+			return Metrics.isEnabled();
+		}
+
+		@Override
+		public void setEnabled(boolean on) {
+			Metrics.setEnabled(on);
+		}
+
+		@Override
+		public Map<String, Long> getCounts() {
+			return counts();
+		}
+
+		@Override
+		public Map<String, Double> getMeans() {
+			Map<String, Double> means = new TreeMap<String, Double>();
+			histograms.forEach((name, h) -> means.put(name, h.getMean() / (h.isTimer() ? 1e3 : 1)));
+			return means;
+		}
+
+		@Override
+		public Map<String, Double> getP99s() {
+			Map<String, Double> p99s = new TreeMap<String, Double>();
+			histograms.forEach((name, h) -> p99s.put(name, h.getPercentile(99) / (h.isTimer() ? 1e3 : 1)));
+			return p99s;
+		}
+
+		@Override
+		public Map<String, Long> getMaxima() {
+			Map<String, Long> maxima = new TreeMap<String, Long>();
+			histograms.forEach((name, h) -> maxima.put(name, h.isTimer() ? h.getMax() / 1000 : h.getMax()));
+			return maxima;
+		}
+
+		@Override
+		public void reset() {
+			Metrics.reset();
+		}
+	}
+}
@@ -0,0 +1,54 @@
+import java.util.Map;
+
+/**
+ * Filename:   MetricsMXBean.java
+ * Project:    p4
+ * Authors:    Bon
+ *
+ * JMX view of the Metrics registry, registered by Metrics.registerMBean.
+ * Times are in microseconds.
+ */
+public interface MetricsMXBean {
+
+	/**
+	 * Return whether metrics are recorded
+	 * @return true if enabled
+	 */
+	boolean isEnabled();
+
+	/**
+	 * Turn recording on or off
+	 * @param enabled - true to record
+	 */
+	void setEnabled(boolean enabled);
+
+	/**
+	 * Return the value of every counter and the number of values recorded
+	 * by every histogram
+	 * @return name -> count
+	 */
+	Map<String, Long> getCounts();
+
+	/**
+	 * Return the mean of every histogram
+	 * @return name -> mean
+	 */
+	Map<String, Double> getMeans();
+
+	/**
+	 * Return the 99th percentile of every histogram
+	 * @return name -> 99th percentile
+	 */
+	Map<String, Double> getP99s();
+
+	/**
+	 * Return the largest value recorded by every histogram
+	 * @return name -> maximum
+	 */
+	Map<String, Long> getMaxima();
+
+	/**
+	 * Reset every counter and histogram to zero
+	 */
+	void reset();
+}
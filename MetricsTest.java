@@ -0,0 +1,112 @@
+///////////////////////////////////////////////////////////////////////////////
+//
+// Title:           MetricsTest
+// Files:           MetricsTest, Metrics
+// Course:          CS400 LEC001, Spring, 2020
+//
+// Author:          Binh Quoc Trinh (Bon)
+// Email:           btrinh@wisc.edu
+// Lecturer's Name: Debra Deppeler
+//
+/////////////////////////////// 80 COLUMNS WIDE ///////////////////////////////
+
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+
+import javax.management.ObjectName;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * This is the test suite for the metrics registry
+ * @author Bon
+ *
+ */
+public class MetricsTest {
+
+	/**
+	 * Called before each test
+	 * @throws Exception
+	 */
+	@Before
+	public void setUp() throws Exception {
+		Metrics.reset();
+		Metrics.setEnabled(true);
+	}
+
+	/**
+	 * Called after each test
+	 * @throws Exception
+	 */
+	@After
+	public void tearDown() throws Exception {
+		Metrics.setEnabled(false);
+		Metrics.reset();
+	}
+
+	/**
+	 * Test if nothing is recorded while metrics are disabled
+	 */
+	@Test
+	public void test00_disabled() {
+		Metrics.setEnabled(false);
+		Metrics.Counter c = Metrics.counter("test.counter");
+		Metrics.Histogram h = Metrics.histogram("test.histogram");
+		c.increment();
+		h.record(5);
+		assert(Metrics.start() == 0);
+		assert(c.get() == 0 && h.getCount() == 0);
+	}
+
+	/**
+	 * Test if the histogram percentiles are within a bucket of the truth
+	 */
+	@Test
+	public void test01_histogram() {
+		Metrics.Histogram h = Metrics.histogram("test.histogram");
+		for (int i = 1; i <= 1000; i++) {
+			h.record(i);
+		}
+		assert(h.getCount() == 1000 && h.getMax() == 1000 && h.getMean() == 500.5);
+		long p50 = h.getPercentile(50);
+		long p99 = h.getPercentile(99);
+		assert(p50 <= 500 && p50 > 500 * 3 / 4);
+		assert(p99 <= 990 && p99 > 990 * 3 / 4);
+		assert(h.getPercentile(0) == 1);
+	}
+
+	/**
+	 * Test if PackageManager queries record their latency and traversal
+	 */
+	@Test
+	public void test02_package_manager() throws Exception {
+		PackageManager pm = new PackageManager();
+		pm.constructGraph("valid.json");
+		pm.getInstallationOrder("A");
+		Map<String, Long> counts = Metrics.counts();
+		assert(counts.get("PackageManager.getInstallationOrder") == 1);
+		assert(counts.get("PackageManager.packagesRead") == 5);
+		assert(Metrics.histogram("PackageManager.getInstallationOrder.visited").getMax() == 4);
+		assert(Metrics.histogram("PackageManager.getInstallationOrder.edgeScans").getMax() == 3);
+		assert(Metrics.histogram("PackageManager.findCycles.visited").getCount() == 0);
+		assert(counts.get("Graph.addEdge") == 4);
+		assert(counts.get("Graph.containsVertex") >= 1);
+		assert(Metrics.report().contains("PackageManager.getInstallationOrder"));
+	}
+
+	/**
+	 * Test if the registry can be read over JMX
+	 */
+	@Test
+	public void test03_jmx() throws Exception {
+		Metrics.counter("test.counter").add(3);
+		Metrics.registerMBean();
+		Metrics.registerMBean();
+		Object counts = ManagementFactory.getPlatformMBeanServer().getAttribute(new ObjectName(Metrics.OBJECT_NAME), "Counts");
+		assert(counts.toString().contains("test.counter"));
+		assert((Boolean) ManagementFactory.getPlatformMBeanServer().getAttribute(new ObjectName(Metrics.OBJECT_NAME), "Enabled"));
+	}
+}
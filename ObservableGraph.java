@@ -0,0 +1,18 @@
+/**
+ * Filename:   ObservableGraph.java
+ * Project:    p4
+ * Authors:    Bon
+ *
+ * A graph that tells listeners about its changes, so derived data such
+ * as cached installation orders can be dropped exactly when it goes
+ * stale. PackageManager only caches for graphs that implement it.
+ */
+public interface ObservableGraph extends GraphADT {
+
+	/**
+	 * Register a listener to be told about every vertex whose dependencies
+	 * change from now on
+	 * @param listener - the listener
+	 */
+	void addListener(GraphListener listener);
+}
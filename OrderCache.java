@@ -0,0 +1,157 @@
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Filename:   OrderCache.java
+ * Project:    p4
+ * Authors:    Bon
+ *
+ * Cache of the installation orders of single packages, used by
+ * PackageManager.
+ *
+ * The cache is bounded by its weight, the total number of packages in
+ * the cached orders, and evicts the least recently used orders first.
+ * An order lists the whole closure of its package, so for every package
+ * the cache also keeps the cached orders that contain it. When the
+ * dependencies of a package change, exactly those orders are dropped.
+ *
+ * Every change also moves the generation on. An order computed while a
+ * change happened is not stored, as it may already be stale.
+ */
+final class OrderCache implements GraphListener {
+	private final LinkedHashMap<String, List<String>> orders; // in access order
+	private final Map<String, Set<String>> containing; // package -> cached orders containing it
+	private long capacity;
+	private long weight;
+	private long generation;
+	private long hits;
+	private long misses;
+	private long evictions;
+	private long invalidations;
+
+	/**
+	 * Constructor
+	 * @param capacity - the largest total number of packages to keep
+	 */
+	OrderCache(long capacity) {
+		this.capacity = capacity;
+		orders = new LinkedHashMap<String, List<String>>(16, 0.75f, true);
+		containing = new HashMap<String, Set<String>>();
+	}
+
+	/**
+	 * Return the cached order of a package
+	 * @param pkg - the package
+	 * @return the order, or null if it is not cached
+	 */
+	synchronized List<String> get(String pkg) {
+		List<String> order = orders.get(pkg);
+		if (order == null) {
+			misses++;
+		} else {
+			hits++;
+		}
+		return order;
+	}
+
+	/**
+	 * Return the current generation, to be read before the graph is
+	 * queried and passed to put
+	 * @return the generation
+	 */
+	synchronized long generation() {
+		return generation;
+	}
+
+	/**
+	 * Cache the order of a package, unless the graph changed since the
+	 * given generation or the order alone is over the capacity
+	 * @param pkg - the package
+	 * @param order - its installation order, not changed afterwards
+	 * @param generation - the generation read before the order was computed
+	 */
+	synchronized void put(String pkg, List<String> order, long generation) {
+		if (generation != this.generation || order.size() > capacity || orders.containsKey(pkg)) {
+			return;
+		}
+		orders.put(pkg, order);
+		for (String member : order) {
+			containing.computeIfAbsent(member, k -> new HashSet<String>()).add(pkg);
+		}
+		weight += order.size();
+		evict();
+	}
+
+	/**
+	 * Drop every cached order that contains the vertex
+	 * @param vertex - the vertex whose dependencies changed
+	 */
+	@Override
+	public synchronized void dependenciesChanged(String vertex) {
+		generation++;
+		Set<String> keys = containing.remove(vertex);
+		if (keys == null) {
+			return;
+		}
+		for (String key : keys) {
+			List<String> order = orders.remove(key);
+			unindex(key, order);
+			invalidations++;
+		}
+	}
+
+	/**
+	 * Change the capacity, evicting orders if it shrinks
+	 * @param capacity - the largest total number of packages to keep
+	 */
+	synchronized void setCapacity(long capacity) {
+		this.capacity = capacity;
+		evict();
+	}
+
+	/**
+	 * Return the statistics
+	 * @return the statistics
+	 */
+	synchronized CacheStats stats() {
+		return new CacheStats(hits, misses, evictions, invalidations, orders.size(), weight);
+	}
+
+	/**
+	 * Helper method to evict the least recently used orders until the
+	 * weight is within the capacity
+	 */
+	private void evict() {
+		Iterator<Map.Entry<String, List<String>>> oldest = orders.entrySet().iterator();
+		while (weight > capacity) {
+			Map.Entry<String, List<String>> entry = oldest.next();
+			oldest.remove();
+			unindex(entry.getKey(), entry.getValue());
+			evictions++;
+		}
+	}
+
+	/**
+	 * Helper method to remove a dropped order from the index
+	 * @param key - the package of the order
+	 * @param order - the order
+	 */
+	private void unindex(String key, List<String> order) {
+		weight -= order.size();
+		for (String member : order) {
+			Set<String> keys = containing.get(member);
+			// The set of the changed vertex is already gone
+			if (keys != null) {
+				keys.remove(key);
+				if (keys.isEmpty()) {
+					containing.remove(member);
+				}
+			}
+		}
+	}
+}
@@ -1,15 +1,25 @@
 import java.io.FileNotFoundException;
-import java.io.FileReader;
 import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
 import java.util.HashSet;
-import java.util.LinkedList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
 import java.util.Set;
-import java.util.Stack;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.stream.IntStream;
 
-import org.json.simple.JSONArray;
-import org.json.simple.JSONObject;
-import org.json.simple.parser.JSONParser;
 import org.json.simple.parser.ParseException;
 
 /**
@@ -42,41 +52,229 @@ import org.json.simple.parser.ParseException;
 
 public class PackageManager {
 	   
-    private Graph graph;
+    // Smallest wave that is worth processing in parallel
+    private static final int PARALLEL_WAVE_THRESHOLD = 4096;
+    // Default number of packages kept in the cached installation orders
+    private static final long DEFAULT_CACHE_CAPACITY = 1 << 20;
+    // Largest batch getInstallationOrders answers without indexing the graph
+    static final int SMALL_BATCH = 4;
+    
+    // Latency of the public operations and the work done by the traversals
+    private static final Metrics.Histogram CONSTRUCT_GRAPH = Metrics.timer("PackageManager.constructGraph");
+    private static final Metrics.Histogram CONSTRUCT_GRAPH_FILES = Metrics.timer("PackageManager.constructGraph.files");
+    private static final Metrics.Histogram RELOAD = Metrics.timer("PackageManager.reload");
+    private static final Metrics.Histogram SAVE_SNAPSHOT = Metrics.timer("PackageManager.saveSnapshot");
+    private static final Metrics.Histogram GET_ALL_PACKAGES = Metrics.timer("PackageManager.getAllPackages");
+    private static final Metrics.Histogram GET_INSTALLATION_ORDER = Metrics.timer("PackageManager.getInstallationOrder");
+    private static final Metrics.Histogram GET_INSTALLATION_ORDERS = Metrics.timer("PackageManager.getInstallationOrders");
+    private static final Metrics.Histogram TO_INSTALL = Metrics.timer("PackageManager.toInstall");
+    private static final Metrics.Histogram GET_INSTALLATION_ORDER_FOR_ALL = Metrics.timer("PackageManager.getInstallationOrderForAllPackages");
+    private static final Metrics.Histogram GET_INSTALLATION_WAVES = Metrics.timer("PackageManager.getInstallationWaves");
+    private static final Metrics.Histogram GET_CRITICAL_PATH = Metrics.timer("PackageManager.getCriticalPath");
+    private static final Metrics.Histogram DEPENDS_ON = Metrics.timer("PackageManager.dependsOn");
+    private static final Metrics.Histogram GET_PACKAGE_WITH_MAX_DEPENDENCIES = Metrics.timer("PackageManager.getPackageWithMaxDependencies");
+    private static final Metrics.Histogram GET_DEPENDENCY_COUNTS = Metrics.timer("PackageManager.getDependencyCounts");
+    private static final Metrics.Histogram GET_PACKAGES_WITH_MOST_DEPENDENCIES = Metrics.timer("PackageManager.getPackagesWithMostDependencies");
+    private static final Metrics.Histogram FIND_CYCLES = Metrics.timer("PackageManager.findCycles");
+    private static final Metrics.Histogram FIND_CYCLE = Metrics.timer("PackageManager.findCycle");
+    // Packages visited and edges scanned by every query, see Traversal
+    private static final Traversal GET_INSTALLATION_ORDER_SCANS = new Traversal("getInstallationOrder");
+    private static final Traversal GET_INSTALLATION_ORDERS_SCANS = new Traversal("getInstallationOrders");
+    private static final Traversal TO_INSTALL_SCANS = new Traversal("toInstall");
+    private static final Traversal GET_INSTALLATION_ORDER_FOR_ALL_SCANS = new Traversal("getInstallationOrderForAllPackages");
+    private static final Traversal GET_INSTALLATION_WAVES_SCANS = new Traversal("getInstallationWaves");
+    private static final Traversal GET_CRITICAL_PATH_SCANS = new Traversal("getCriticalPath");
+    private static final Traversal GET_PACKAGE_WITH_MAX_DEPENDENCIES_SCANS = new Traversal("getPackageWithMaxDependencies");
+    private static final Traversal GET_DEPENDENCY_COUNTS_SCANS = new Traversal("getDependencyCounts");
+    private static final Traversal GET_PACKAGES_WITH_MOST_DEPENDENCIES_SCANS = new Traversal("getPackagesWithMostDependencies");
+    private static final Traversal FIND_CYCLES_SCANS = new Traversal("findCycles");
+    private static final Metrics.Counter PACKAGES_READ = Metrics.counter("PackageManager.packagesRead");
+    private static final Metrics.Counter DEPENDENCIES_READ = Metrics.counter("PackageManager.dependenciesRead");
+    
+    private GraphADT graph;
+    private OrderCache cache; // null if the graph cannot report changes
+    private ReachabilityCache reachability; // null if the graph cannot report changes
     
     /*
      * Package Manager default no-argument constructor.
      */
     public PackageManager() {
-        graph = new Graph();
+        this(new Graph());
+    }
+    
+    /**
+     * Package Manager constructor that stores the dependency graph in the
+     * given graph implementation, e.g. a CompactGraph for large manifests.
+     * 
+     * Installation orders and the reachability index are cached if the
+     * graph reports its changes, i.e. is an ObservableGraph.
+     * 
+     * @param graph the (usually empty) graph to build the dependencies into
+     */
+    public PackageManager(GraphADT graph) {
+        this.graph = graph;
+        if (graph instanceof ObservableGraph) {
+            cache = new OrderCache(DEFAULT_CACHE_CAPACITY);
+            reachability = new ReachabilityCache();
+            ((ObservableGraph) graph).addListener(cache);
+            ((ObservableGraph) graph).addListener(reachability);
+        }
     }
     
     /**
      * Takes in a file path for a json file and builds the
      * package dependency graph from it. 
      * 
+     * The file is streamed through a ManifestReader into a compact list of
+     * packages (see ManifestShard), so the json document is never held in
+     * memory as a whole. The packages are only added to the graph once the
+     * whole file has parsed, so a malformed file changes nothing.
+     * 
      * @param jsonFilepath the name of json data file with package dependency information
      * @throws FileNotFoundException if file path is incorrect
      * @throws IOException if the give file cannot be read
-     * @throws ParseException if the given json cannot be parsed 
+     * @throws ParseException if the given json cannot be parsed, a
+     * ManifestParseException with the byte offset of the problem; the
+     * graph is not changed
+     * @throws CycleException if the graph rejects cycles and the file
+     * would close one, with the cycle; the graph is not changed
      */
-    public void constructGraph(String jsonFilepath) throws FileNotFoundException, IOException, ParseException {
-    	Object obj = new JSONParser().parse(new FileReader(jsonFilepath));
-    	JSONObject jo = (JSONObject) obj;
-    	JSONArray packageJSONArray = (JSONArray) jo.get("packages");
+    public void constructGraph(String jsonFilepath) throws FileNotFoundException, IOException, ParseException, CycleException {
+    	long start = Metrics.start();
+    	try {
+    		ManifestShard manifest = ManifestShard.parse(jsonFilepath);
+    		add(Collections.singletonList(manifest));
+    		PACKAGES_READ.add(manifest.packageCount());
+    		DEPENDENCIES_READ.add(manifest.dependencyCount());
     	
-    	for (int i = 0; i < packageJSONArray.size(); i++) {
-    		JSONObject jsonPackage = (JSONObject) packageJSONArray.get(i);
-    		String name = (String) jsonPackage.get("name");
-    		graph.addVertex(name);
-    		
-    		JSONArray dependencies = (JSONArray) jsonPackage.get("dependencies");
-    		for (int j = 0; j < dependencies.size(); j++) { //"dependencies": 
-    			String dependentVertex = (String) dependencies.get(j);
-    			graph.addEdge(name, dependentVertex);
+    		loaded();
+    	} finally {
+    		CONSTRUCT_GRAPH.stop(start);
+    	}
+    }
+    
+    /**
+     * Builds the package dependency graph from a registry split over many
+     * json files.
+     * 
+     * The files are parsed in parallel on the common fork-join pool, each
+     * into its own partial list of packages. The partial lists are then
+     * added to the graph in the order of the given paths, so the graph is
+     * the same as if the files were loaded one by one, whatever the
+     * parsing threads did.
+     * 
+     * @param jsonFilepaths the json data files, in the order to add them
+     * @throws FileNotFoundException if a file path is incorrect
+     * @throws IOException if a file cannot be read
+     * @throws ParseException if a file cannot be parsed, a
+     * ManifestParseException with the file and byte offset of the problem;
+     * the graph is not changed
+     * @throws CycleException if the graph rejects cycles and the files
+     * would close one, with the cycle; the graph is not changed
+     */
+    public void constructGraph(List<String> jsonFilepaths) throws FileNotFoundException, IOException, ParseException, CycleException {
+    	long start = Metrics.start();
+    	try {
+    		if (jsonFilepaths.isEmpty()) {
+    			loaded();
+    			return;
+    		}
+    		List<ManifestShard> shards;
+    		try {
+    			shards = ForkJoinPool.commonPool().invoke(new ManifestShard.ParseTask(jsonFilepaths, 0, jsonFilepaths.size()));
+    		} catch (ManifestShard.ShardException e) {
+    			// The pool may hand back a copy of the exception, look for the cause
+    			for (Throwable t = e; t != null; t = t.getCause()) {
+    				if (t instanceof IOException) {
+    					throw (IOException) t;
+    				}
+    				if (t instanceof ParseException) {
+    					throw (ParseException) t;
+    				}
+    			}
+    			throw e;
     		}
+    		add(shards);
+    		for (ManifestShard shard : shards) {
+    			PACKAGES_READ.add(shard.packageCount());
+    			DEPENDENCIES_READ.add(shard.dependencyCount());
+    		}
+    		loaded();
+    	} finally {
+    		CONSTRUCT_GRAPH_FILES.stop(start);
     	}
-    	
+    }
+    
+    /**
+     * Reloads a changed json file into the dependency graph, applying only
+     * the differences.
+     * 
+     * The dependency list of every package in the file is compared with
+     * the live graph and only the missing edges are added and the extra
+     * ones removed. Packages that are no longer in the file at all are 
+     * removed. Cached installation orders are only dropped for the 
+     * packages that changed. A versioned graph publishes all the changes
+     * as one version.
+     * 
+     * @param jsonFilepath the name of json data file with package dependency information
+     * @return ChangeSet, the changes made to the graph
+     * @throws FileNotFoundException if file path is incorrect
+     * @throws IOException if the give file cannot be read
+     * @throws ParseException if the given json cannot be parsed, a
+     * ManifestParseException with the byte offset of the problem; the
+     * graph is not changed
+     * @throws CycleException if the graph rejects cycles and the new file
+     * would close one, with the cycle; the graph is not changed
+     */
+    public ChangeSet reload(String jsonFilepath) throws FileNotFoundException, IOException, ParseException, CycleException {
+    	long start = Metrics.start();
+    	try {
+    		// Parse the whole file first, so a malformed file changes nothing
+    		ManifestShard manifest = ManifestShard.parse(jsonFilepath);
+    		if (graph instanceof VersionedGraph) {
+    			ChangeSet[] changes = new ChangeSet[1];
+    			update(g -> changes[0] = manifest.reloadInto(g));
+    			return changes[0];
+    		}
+    		ChangeSet changes = manifest.reloadInto(graph);
+    		if (!changes.isEmpty()) {
+    			loaded();
+    		}
+    		return changes;
+    	} finally {
+    		RELOAD.stop(start);
+    	}
+    }
+    
+    /**
+     * Save the dependency graph to a binary snapshot file, which can be
+     * opened later with openSnapshot instead of parsing the json again.
+     * 
+     * @param snapshotFilepath the snapshot file to write
+     * @throws IOException if the file cannot be written
+     */
+    public void saveSnapshot(String snapshotFilepath) throws IOException {
+    	long start = Metrics.start();
+    	try {
+    		GraphADT g = view();
+    		GraphSnapshot.save(g, snapshotFilepath);
+    	} finally {
+    		SAVE_SNAPSHOT.stop(start);
+    	}
+    }
+    
+    /**
+     * Return a package manager over a snapshot written by saveSnapshot.
+     * The file is memory-mapped read-only, so it is ready for queries
+     * without parsing. The first change to the graph, e.g. a reload,
+     * copies it into memory; the file itself is never changed.
+     * 
+     * @param snapshotFilepath the snapshot file to open
+     * @return the package manager
+     * @throws IOException if the file cannot be read or is not a snapshot
+     */
+    public static PackageManager openSnapshot(String snapshotFilepath) throws IOException {
+    	return new PackageManager(GraphSnapshot.open(snapshotFilepath));
     }
     
     /**
@@ -85,7 +283,13 @@ public class PackageManager {
      * @return Set<String> of all the packages
      */
     public Set<String> getAllPackages() {
-        return graph.getAllVertices();
+    	long start = Metrics.start();
+    	try {
+    		GraphADT g = view();
+    		return g.getAllVertices();
+    	} finally {
+    		GET_ALL_PACKAGES.stop(start);
+    	}
     }
     
     /**
@@ -95,6 +299,9 @@ public class PackageManager {
      * Valid installation order means that each package is listed 
      * before any packages that depend upon that package.
      * 
+     * Orders are cached until a package in them changes its dependencies,
+     * see getCacheStats.
+     * 
      * @return List<String>, order in which the packages have to be installed
      * 
      * @throws CycleException if you encounter a cycle in the graph while finding
@@ -106,10 +313,180 @@ public class PackageManager {
      * dependency graph.
      */
     public List<String> getInstallationOrder(String pkg) throws CycleException, PackageNotFoundException {
-    	Set<String> set = graph.getAllVertices();
-    	if (!set.contains(pkg))
-    		throw new PackageNotFoundException();
-        return topoOrder(pkg);
+    	long start = Metrics.start();
+    	try {
+    		long generation = cache == null ? 0 : cache.generation();
+    		GraphADT g = view();
+    		return new ArrayList<String>(cachedOrder(g, GET_INSTALLATION_ORDER_SCANS, pkg, generation));
+    	} finally {
+    		GET_INSTALLATION_ORDER.stop(start);
+    	}
+    }
+    
+    /**
+     * Given many package names, returns a valid installation order for
+     * each of them, computed on the calling thread.
+     * 
+     * @param pkgs the packages
+     * @return Map<String, List<String>>, package -> its installation order,
+     * in the order of pkgs
+     * @throws CycleException if any of the packages depends on a cycle
+     * @throws PackageNotFoundException if any of the packages does not exist in the 
+     * dependency graph.
+     * @see #getInstallationOrders(Collection, boolean)
+     */
+    public Map<String, List<String>> getInstallationOrders(Collection<String> pkgs) throws CycleException, PackageNotFoundException {
+    	return getInstallationOrders(pkgs, false);
+    }
+    
+    /**
+     * Given many package names, returns a valid installation order for
+     * each of them, as getInstallationOrder would for each one.
+     * 
+     * The work shared by the packages is done once for the whole batch:
+     * the graph is indexed and checked for cycles once, and its strongly
+     * connected components give every package a global rank that puts
+     * dependencies first. The order of a package is then its set of 
+     * dependencies sorted by rank, collected with a search over int 
+     * arrays that are stamped instead of cleared between packages, so
+     * every order is a subsequence of one global order. Orders already
+     * in the cache are reused and new ones are cached.
+     * 
+     * Indexing the graph costs as much as a search of all of it, so a
+     * batch of at most SMALL_BATCH packages is answered one package at a
+     * time like getInstallationOrder instead.
+     * 
+     * @param pkgs the packages
+     * @param parallel true to spread the packages over the common fork-join pool
+     * @return Map<String, List<String>>, package -> its installation order,
+     * in the order of pkgs
+     * @throws CycleException if any of the packages depends on a cycle
+     * @throws PackageNotFoundException if any of the packages does not exist in the 
+     * dependency graph.
+     */
+    public Map<String, List<String>> getInstallationOrders(Collection<String> pkgs, boolean parallel) throws CycleException, PackageNotFoundException {
+    	long start = Metrics.start();
+    	try {
+    		long generation = cache == null ? 0 : cache.generation();
+    		GraphADT g = view();
+    		String[] batch = new LinkedHashSet<String>(pkgs).toArray(new String[0]);
+    		if (batch.length <= SMALL_BATCH) {
+    			for (String pkg : batch) {
+    				if (!g.containsVertex(pkg))
+    					throw new PackageNotFoundException();
+    			}
+    			Map<String, List<String>> result = new LinkedHashMap<String, List<String>>(batch.length * 2);
+    			for (String pkg : batch) {
+    				result.put(pkg, new ArrayList<String>(cachedOrder(g, GET_INSTALLATION_ORDERS_SCANS, pkg, generation)));
+    			}
+    			return result;
+    		}
+    		GraphIndex index = GraphIndex.of(g);
+    		int n = index.order();
+    		int[] roots = new int[batch.length];
+    		for (int i = 0; i < batch.length; i++) {
+    			roots[i] = index.id(batch[i]);
+    			if (roots[i] < 0)
+    				throw new PackageNotFoundException();
+    		}
+    		
+    		// Search everything the batch depends on once for cycles
+    		boolean[] cyclic = new boolean[n];
+    		for (int[] members : index.cyclicComponents()) {
+    			for (int u : members) {
+    				cyclic[u] = true;
+    			}
+    		}
+    		int[] mark = new int[n];
+    		int[] stack = new int[n];
+    		int[] found = new int[n];
+    		for (int root : roots) {
+    			if (mark[root] == 0) {
+    				int count = index.closure(root, mark, 1, stack, found);
+    				for (int j = 0; j < count; j++) {
+    					if (cyclic[found[j]]) {
+    						throw new CycleException(index.cycleThrough(found[j]));
+    					}
+    				}
+    			}
+    		}
+    		
+    		// Without cycles every package is a component of its own
+    		int[] rank = index.components();
+    		int[] byRank = new int[index.componentCount()];
+    		for (int u = 0; u < n; u++) {
+    			byRank[rank[u]] = u;
+    		}
+    		List<List<String>> orders = new ArrayList<List<String>>(Collections.nCopies(batch.length, (List<String>) null));
+    		ThreadLocal<Scratch> scratch = ThreadLocal.withInitial(() -> new Scratch(n));
+    		IntStream all = IntStream.range(0, batch.length);
+    		if (parallel) {
+    			all = all.parallel();
+    		}
+    		all.forEach(i -> {
+    			List<String> order = cache == null ? null : cache.get(batch[i]);
+    			if (order == null) {
+    				Scratch own = scratch.get();
+    				int count = index.closure(roots[i], own.mark, ++own.stamp, own.stack, own.found);
+    				// The stack is free again, use it for the ranks
+    				int[] ranks = own.stack;
+    				for (int j = 0; j < count; j++) {
+    					ranks[j] = rank[own.found[j]];
+    				}
+    				Arrays.sort(ranks, 0, count);
+    				order = new ArrayList<String>(count);
+    				for (int j = 0; j < count; j++) {
+    					order.add(index.names[byRank[ranks[j]]]);
+    				}
+    				long edges = 0;
+    				for (int j = 0; j < count; j++) {
+    					edges += index.outDegree(own.found[j]);
+    				}
+    				GET_INSTALLATION_ORDERS_SCANS.record(count, edges);
+    				if (cache != null) {
+    					cache.put(batch[i], order, generation);
+    				}
+    			}
+    			orders.set(i, order);
+    		});
+    		
+    		Map<String, List<String>> result = new LinkedHashMap<String, List<String>>(batch.length * 2);
+    		for (int i = 0; i < batch.length; i++) {
+    			result.put(batch[i], new ArrayList<String>(orders.get(i)));
+    		}
+    		return result;
+    	} finally {
+    		GET_INSTALLATION_ORDERS.stop(start);
+    	}
+    }
+    
+    /**
+     * Return whether a package depends on another one, directly or through
+     * other packages. A package depends on itself only if it is on a cycle.
+     * 
+     * Answers come from a reachability index over the graph, built on the
+     * first call and patched as the graph changes, so most take constant
+     * time. Without change reports from the graph every call searches it.
+     * 
+     * @param pkg the package
+     * @param dependency the package that may be depended on
+     * @return true if pkg needs dependency to be installed
+     * @throws PackageNotFoundException if either package is not in the graph
+     */
+    public boolean dependsOn(String pkg, String dependency) throws PackageNotFoundException {
+    	long start = Metrics.start();
+    	try {
+    		long seen = reachability == null ? 0 : reachability.changes();
+    		GraphADT g = view();
+    		if (!g.containsVertex(pkg) || !g.containsVertex(dependency))
+    			throw new PackageNotFoundException();
+    		if (reachability == null) {
+    			return ReachabilityCache.search(g, pkg, dependency);
+    		}
+    		return reachability.dependsOn(g, pkg, dependency, seen);
+    	} finally {
+    		DEPENDS_ON.stop(start);
+    	}
     }
     
     /**
@@ -132,28 +509,81 @@ public class PackageManager {
      * do not exist in the dependency graph.
      */
     public List<String> toInstall(String newPkg, String installedPkg) throws CycleException, PackageNotFoundException {
-    	Set<String> set = graph.getAllVertices();
-    	// Throw exception if either package is not in the graph
-    	if (!set.contains(newPkg) || !set.contains(installedPkg))
-    		throw new PackageNotFoundException();
-    	List<String> all = topoOrder(newPkg);
-    	List<String> have = topoOrder(installedPkg);
-    	List<String> need = new LinkedList<String>();
+    	return toInstall(newPkg, Collections.singletonList(installedPkg));
+    }
+    
+    /**
+     * Given a package to be installed and all the packages already 
+     * installed, return a List of the packages that need to be newly 
+     * installed, in a valid installation order.
+     * 
+     * The dependencies of the installed packages are collected into one
+     * set first, and the search for newPkg stops at any package in it, so
+     * the cost only depends on what still has to be installed plus the
+     * closure of the installed packages, not on their product. When the
+     * installation orders are cached, the cached order of newPkg is 
+     * filtered by the cached closures of the installed packages instead.
+     * 
+     * @param newPkg the package to be installed
+     * @param installedPkgs the packages already installed
+     * @return List<String>, packages that need to be newly installed.
+     * 
+     * @throws CycleException if you encounter a cycle in the graph while finding
+     * the dependencies of the given packages.
+     * 
+     * @throws PackageNotFoundException if any of the packages passed 
+     * do not exist in the dependency graph.
+     */
+    public List<String> toInstall(String newPkg, Collection<String> installedPkgs) throws CycleException, PackageNotFoundException {
+    	long start = Metrics.start();
+    	try {
+    		long generation = cache == null ? 0 : cache.generation();
+    		GraphADT g = view();
+    		if (cache != null) {
+    			// Build the answer from the cached orders: leaving the installed
+    			// packages out of the order of newPkg keeps it a valid order
+    			List<String> order = cachedOrder(g, TO_INSTALL_SCANS, newPkg, generation);
+    			Set<String> installed = new HashSet<String>();
+    			for (String i : installedPkgs) {
+    				if (!installed.contains(i)) {
+    					installed.addAll(cachedOrder(g, TO_INSTALL_SCANS, i, generation));
+    				}
+    			}
+    			List<String> need = new ArrayList<String>();
+    			for (String i : order) {
+    				if (!installed.contains(i)) {
+    					need.add(i);
+    				}
+    			}
+    			return need;
+    		}
     	
-    	// Filter all packages that should have been installed to install the installedPkg
-    	for (String i : all) {
-    		boolean take = true;
-    		for (String j : have) {
-    			if (i.equals(j)) {
-    				take = false;
-    				break;
+    		// Throw exception if any package is not in the graph
+    		if (!g.containsVertex(newPkg))
+    			throw new PackageNotFoundException();
+    		for (String i : installedPkgs) {
+    			if (!g.containsVertex(i))
+    				throw new PackageNotFoundException();
+    		}
+    	
+    		// Everything the installed packages depend on is installed as well
+    		Set<String> installed = new HashSet<String>();
+    		List<String> installOrder = new ArrayList<String>();
+    		for (String i : installedPkgs) {
+    			if (!installed.contains(i)) {
+    				topoOrder(g, TO_INSTALL_SCANS, i, installed, installOrder);
     			}
     		}
-    		if (take) {
-				need.add(i);
-			}
+    	
+    		// Installed packages count as visited, so the search skips them
+    		List<String> need = new ArrayList<String>();
+    		if (!installed.contains(newPkg)) {
+    			topoOrder(g, TO_INSTALL_SCANS, newPkg, installed, need);
+    		}
+    		return need;
+    	} finally {
+    		TO_INSTALL.stop(start);
     	}
-        return need;
     }
     
     /**
@@ -169,66 +599,129 @@ public class PackageManager {
      * @throws CycleException if you encounter a cycle in the graph
      */
     public List<String> getInstallationOrderForAllPackages() throws CycleException {
-    	Set<String> vertices = new HashSet<String>(graph.getAllVertices());
-    	Set<String> check = new HashSet<String>();
-    	
-    	// Get all vertices that have at least one "predecessor"
-    	for (String i : vertices) {
-    		for (String j: graph.getAdjacentVerticesOf(i)) {
-    			check.add(j);
+    	long start = Metrics.start();
+    	try {
+    		GraphADT g = view();
+    		// A graph that keeps its topological order has no cycles and needs no search
+    		if (g instanceof Graph && ((Graph) g).keepsOrder()) {
+    			return ((Graph) g).getTopologicalOrder();
     		}
-    	}
-    	
-    	// Remove all those to get the vertices that have no "predecessor"
-    	vertices.removeAll(check);
+    		Set<String> visited = new HashSet<String>();
+    		List<String> order = new ArrayList<String>(g.order());
     	
-    	// If none of them have no "predecessor", the graph is cyclic
-    	if (vertices.size() == 0) {
-    		throw new CycleException();
+    		// Start a traversal from every package not reached by an earlier one,
+    		// so cycles that no root leads to are still detected
+    		for (String i : g.getVertexView()) {
+    			if (!visited.contains(i)) {
+    				topoOrder(g, GET_INSTALLATION_ORDER_FOR_ALL_SCANS, i, visited, order);
+    			}
+    		}
+    		return order;
+    	} finally {
+    		GET_INSTALLATION_ORDER_FOR_ALL.stop(start);
     	}
+    }
+    
+    /**
+     * Return a global installation plan of all the packages as a list of
+     * waves. Every package in a wave only depends on packages in earlier
+     * waves, so the packages of one wave can be installed in parallel once
+     * the previous waves are done. Packages within a wave are in no
+     * particular order.
+     * 
+     * The waves are computed level by level (Kahn's algorithm); on large
+     * graphs each level is processed in parallel.
+     * 
+     * @return List<List<String>>, the waves in the order they have to be installed
+     * @throws CycleException if you encounter a cycle in the graph
+     */
+    public List<List<String>> getInstallationWaves() throws CycleException {
+    	long start = Metrics.start();
+    	try {
+    		GraphADT g = view();
+    		GraphIndex index = GraphIndex.of(g);
+    		GET_INSTALLATION_WAVES_SCANS.scanned(index);
+    		int n = index.order();
+    		int[] roff = index.reverseOffsets();
+    		int[] rtargets = index.reverseTargets();
     	
-    	LinkedList<String> visited = new LinkedList<String>();
-    	Stack<String> tmp = new Stack<String>();
-    	List<String> order = new LinkedList<String>();
+    		// Number of dependencies of every package that are not installed yet
+    		AtomicIntegerArray remaining = new AtomicIntegerArray(n);
+    		int[] wave = IntStream.range(0, n).filter(u -> index.outDegree(u) == 0).toArray();
+    		for (int u = 0; u < n; u++) {
+    			remaining.set(u, index.outDegree(u));
+    		}
     	
-    	// Push all vertices with no "predecessor" to the stack and visited list
-    	for (String i : vertices) {
-    		tmp.push(i);
-    		visited.add(i);
-    	}
-    	// Perform topological order algorithm
-    	while (!tmp.isEmpty()) {
-    		String curr = tmp.peek();
-    		boolean allVisited = true;
-    		List<String> succ = graph.getAdjacentVerticesOf(curr);
-    		for (String i : succ) {
-    			if (tmp.search(i) != -1) {
-    				throw new CycleException();
-    			}
-    			boolean v = false;
-    			for (int j = 0; j < visited.size(); j++) {
-    				if (i.equals(visited.get(j))) {
-    					v = true;
-    					break;
-    				}
+    		List<List<String>> waves = new ArrayList<List<String>>();
+    		int installed = 0;
+    		while (wave.length > 0) {
+    			List<String> names = new ArrayList<String>(wave.length);
+    			for (int u : wave) {
+    				names.add(index.names[u]);
     			}
-    			if (!v) {
-    				tmp.push(i);
-    				visited.add(i);
-    				allVisited = false;
-    				break;
+    			waves.add(names);
+    			installed += wave.length;
+    		
+    			// A dependent joins the next wave when its last dependency is installed
+    			IntStream current = IntStream.of(wave);
+    			if (wave.length >= PARALLEL_WAVE_THRESHOLD) {
+    				current = current.parallel();
     			}
+    			wave = current.flatMap(u -> IntStream.range(roff[u], roff[u + 1])
+    					.map(i -> rtargets[i])
+    					.filter(v -> remaining.decrementAndGet(v) == 0))
+    					.toArray();
+    			// Keep the plan deterministic regardless of the thread interleaving
+    			Arrays.sort(wave);
     		}
-    		if (allVisited) {
-    			order.add(tmp.pop());
+    	
+    		// Packages on or behind a cycle never run out of dependencies
+    		if (installed < n) {
+    			throw cycleException(index);
     		}
+    		return waves;
+    	} finally {
+    		GET_INSTALLATION_WAVES.stop(start);
+    	}
+    }
+    
+    /**
+     * Analyse the time it takes to install all packages when they have
+     * different install costs: the critical path, the earliest start and
+     * slack of every package, and schedules for a number of workers.
+     * 
+     * @param costs - package -> install cost, CriticalPath.DEFAULT_COST if missing
+     * @return CriticalPath, the analysis
+     * @throws CycleException if you encounter a cycle in the graph
+     */
+    public CriticalPath getCriticalPath(Map<String, Long> costs) throws CycleException {
+    	try {
+    		return getCriticalPath(null, costs);
+    	} catch (PackageNotFoundException e) {
+    		throw new IllegalStateException(e); // no packages are named
+    	}
+    }
+    
+    /**
+     * Analyse the time it takes to install the given packages and their
+     * dependencies when they have different install costs.
+     * 
+     * @param pkgs - the packages to install, null for all
+     * @param costs - package -> install cost, CriticalPath.DEFAULT_COST if missing
+     * @return CriticalPath, the analysis
+     * @throws CycleException if the packages depend on a cycle
+     * @throws PackageNotFoundException if a package is not in the graph
+     */
+    public CriticalPath getCriticalPath(Collection<String> pkgs, Map<String, Long> costs)
+    		throws CycleException, PackageNotFoundException {
+    	long start = Metrics.start();
+    	try {
+    		GraphIndex index = GraphIndex.of(view());
+    		GET_CRITICAL_PATH_SCANS.scanned(index);
+    		return CriticalPath.of(index, costs, pkgs);
+    	} finally {
+    		GET_CRITICAL_PATH.stop(start);
     	}
-    	
-    	// If the size of the InstallationOrderForAllPackage list does not contain all vertices,
-    	// it terminated when encountered a cycle
-    	if (order.size() < graph.getAllVertices().size())
-    		throw new CycleException();
-    	return order;
     }
     
     /**
@@ -245,73 +738,505 @@ public class PackageManager {
      * @throws CycleException if you encounter a cycle in the graph
      */
     public String getPackageWithMaxDependencies() throws CycleException {
-    	String maxP = "";
-    	int maxD = 0;
-    	for (String i : graph.getAllVertices()) {
-    		try {
-    			// Check the size of the installation order for every vertex
-    			int tmp = getInstallationOrder(i).size();
+    	return getPackageWithMaxDependencies(false);
+    }
+    
+    /**
+     * Find and return the name of the package with the maximum number of
+     * dependencies, optionally from estimated counts.
+     * 
+     * The exact counts take memory quadratic in the number of packages,
+     * bounded by running more passes. The estimates keep a fixed size
+     * sketch per package instead (see DependencySketch), about 6.5%
+     * standard error, so on very large graphs the package returned may
+     * be one whose count is close to the maximum.
+     * 
+     * @param approximate true to use estimated counts
+     * @return String, name of the package with most dependencies.
+     * @throws CycleException if you encounter a cycle in the graph
+     */
+    public String getPackageWithMaxDependencies(boolean approximate) throws CycleException {
+    	long start = Metrics.start();
+    	try {
+    		GraphADT g = view();
+    		GraphIndex index = GraphIndex.of(g);
+    		GET_PACKAGE_WITH_MAX_DEPENDENCIES_SCANS.scanned(index);
+    		if (index.hasCycle()) {
+    			throw cycleException(index);
+    		}
+    		int[] counts = dependencyCounts(index, approximate);
+    		String maxP = "";
+    		int maxD = -1;
+    		for (int u = 0; u < counts.length; u++) {
     			// Save the one with the highest dependencies
-				if (tmp > maxD) {
-					maxP = i;
-					maxD = tmp;
-				}
-			} catch (PackageNotFoundException e) {}
+    			if (counts[u] > maxD) {
+    				maxP = index.names[u];
+    				maxD = counts[u];
+    			}
+    		}
+    		return maxP;
+    	} finally {
+    		GET_PACKAGE_WITH_MAX_DEPENDENCIES.stop(start);
     	}
-        return maxP;
     }
-
+    
+    /**
+     * Return the number of transitive dependencies of every package, 
+     * counted as in getPackageWithMaxDependencies.
+     * 
+     * All the counts are computed in a single pass over the graph. A 
+     * package on a cycle counts the other packages of the cycle, so no 
+     * exception is thrown for cyclic graphs.
+     * 
+     * @return Map<String, Integer>, package name -> number of dependencies
+     */
+    public Map<String, Integer> getDependencyCounts() {
+    	return getDependencyCounts(false);
+    }
+    
+    /**
+     * Return the number of transitive dependencies of every package, 
+     * optionally estimated as in getPackageWithMaxDependencies(boolean).
+     * 
+     * @param approximate true to estimate the counts
+     * @return Map<String, Integer>, package name -> number of dependencies
+     */
+    public Map<String, Integer> getDependencyCounts(boolean approximate) {
+    	long start = Metrics.start();
+    	try {
+    		GraphADT g = view();
+    		GraphIndex index = GraphIndex.of(g);
+    		GET_DEPENDENCY_COUNTS_SCANS.scanned(index);
+    		int[] counts = dependencyCounts(index, approximate);
+    		Map<String, Integer> map = new HashMap<String, Integer>(counts.length * 2);
+    		for (int u = 0; u < counts.length; u++) {
+    			map.put(index.names[u], counts[u]);
+    		}
+    		return map;
+    	} finally {
+    		GET_DEPENDENCY_COUNTS.stop(start);
+    	}
+    }
+    
+    /**
+     * Return the k packages with the most transitive dependencies, the one
+     * with the most first. Ties are broken by package name.
+     * 
+     * @param k the number of packages to return
+     * @return List<String>, at most k package names
+     */
+    public List<String> getPackagesWithMostDependencies(int k) {
+    	return getPackagesWithMostDependencies(k, false);
+    }
+    
+    /**
+     * Return the k packages with the most transitive dependencies, 
+     * optionally ranked by the estimated counts of
+     * getPackageWithMaxDependencies(boolean).
+     * 
+     * @param k the number of packages to return
+     * @param approximate true to rank by estimated counts
+     * @return List<String>, at most k package names
+     */
+    public List<String> getPackagesWithMostDependencies(int k, boolean approximate) {
+    	long start = Metrics.start();
+    	try {
+    		GraphADT g = view();
+    		GraphIndex index = GraphIndex.of(g);
+    		GET_PACKAGES_WITH_MOST_DEPENDENCIES_SCANS.scanned(index);
+    		int[] counts = dependencyCounts(index, approximate);
+    		return topK(index.names, counts, k);
+    	} finally {
+    		GET_PACKAGES_WITH_MOST_DEPENDENCIES.stop(start);
+    	}
+    }
+    
+    /**
+     * Return every group of packages that depend on each other in a cycle,
+     * i.e. every strongly connected component with more than one package,
+     * and every package that depends on itself. The whole graph is checked
+     * in a single pass of Tarjan's algorithm, in O(V+E).
+     * 
+     * Each group is sorted by name, and a group comes after the groups its
+     * packages depend on. Use getCycle of a CycleException, or
+     * findCycle, to get one actual path through a group.
+     * 
+     * @return List<List<String>>, the cyclic groups, empty if there are no cycles
+     */
+    public List<List<String>> findCycles() {
+    	long start = Metrics.start();
+    	try {
+    		GraphADT g = view();
+    		GraphIndex index = GraphIndex.of(g);
+    		FIND_CYCLES_SCANS.scanned(index);
+    		List<List<String>> cycles = new ArrayList<List<String>>();
+    		for (int[] members : index.cyclicComponents()) {
+    			List<String> group = new ArrayList<String>(members.length);
+    			for (int u : members) {
+    				group.add(index.names[u]);
+    			}
+    			Collections.sort(group);
+    			cycles.add(group);
+    		}
+    		return cycles;
+    	} finally {
+    		FIND_CYCLES.stop(start);
+    	}
+    }
+    
+    /**
+     * Return a shortest cycle through the given package.
+     * 
+     * @param pkg the package
+     * @return List<String>, the packages on the cycle starting and ending
+     * with pkg, or an empty list if pkg is not on a cycle
+     * @throws PackageNotFoundException if the package does not exist in the
+     * dependency graph.
+     */
+    public List<String> findCycle(String pkg) throws PackageNotFoundException {
+    	long start = Metrics.start();
+    	try {
+    		GraphADT g = view();
+    		GraphIndex index = GraphIndex.of(g);
+    		int u = index.id(pkg);
+    		if (u < 0) {
+    			throw new PackageNotFoundException();
+    		}
+    		List<String> cycle = index.cycleThrough(u);
+    		return cycle == null ? new ArrayList<String>() : cycle;
+    	} finally {
+    		FIND_CYCLE.stop(start);
+    	}
+    }
+    
+    /**
+     * Return an executor that installs packages of the current graph in
+     * parallel, each one as soon as its dependencies are installed.
+     * 
+     * @param installer installs single packages
+     * @param parallelism the largest number of installs running at once
+     * @return InstallExecutor over the graph as it is now
+     */
+    public InstallExecutor installExecutor(InstallExecutor.Installer installer, int parallelism) {
+    	return new InstallExecutor(view(), installer, parallelism);
+    }
+    
+    /**
+     * Return the hit and miss statistics of the installation order cache.
+     * 
+     * @return CacheStats, all zero if the graph does not support caching
+     */
+    public CacheStats getCacheStats() {
+    	if (cache == null) {
+    		return new CacheStats(0, 0, 0, 0, 0, 0);
+    	}
+    	return cache.stats();
+    }
+    
+    /**
+     * Set how many packages the cached installation orders may hold in
+     * total. The least recently used orders are evicted first.
+     * 
+     * @param capacity the total number of packages, 0 to stop caching
+     */
+    public void setCacheCapacity(long capacity) {
+    	if (cache != null) {
+    		cache.setCapacity(capacity);
+    	}
+    }
+    
     public static void main (String [] args) {
         
     }
     
+    /**
+     * Helper method to add the packages of the parsed files to the graph;
+     * a versioned graph publishes them as one version
+     * @param shards the parsed files, in the order to add them
+     * @throws CycleException if the graph rejects a dependency that closes
+     * a cycle; the graph is not changed
+     */
+    private void add(List<ManifestShard> shards) throws CycleException {
+    	if (graph instanceof VersionedGraph) {
+    		update(g -> ManifestShard.addAll(shards, g));
+    	} else {
+    		ManifestShard.addAll(shards, graph);
+    	}
+    }
+    
+    /**
+     * Helper method to make changes to a versioned graph in one update,
+     * carrying a CycleException out of it
+     * @param changes the changes
+     * @throws CycleException if the changes throw it; nothing is published
+     */
+    private void update(ShardChange changes) throws CycleException {
+    	try {
+    		((VersionedGraph) graph).update(g -> {
+    			try {
+    				changes.apply(g);
+    			} catch (CycleException e) {
+    				throw new ManifestShard.ShardException(e);
+    			}
+    		});
+    	} catch (ManifestShard.ShardException e) {
+    		throw (CycleException) e.getCause();
+    	}
+    }
+    
+    /**
+     * Change to the graph made from a parsed file
+     */
+    private interface ShardChange {
+    	/**
+    	 * Make the change
+    	 * @param g the graph to change
+    	 * @throws CycleException if the graph rejects a dependency
+    	 */
+    	void apply(GraphADT g) throws CycleException;
+    }
+    
+    /**
+     * Helper method to prepare the graph for queries once all the
+     * packages are in: a compact graph packs its adjacency for traversal
+     */
+    private void loaded() {
+    	if (graph instanceof CompactGraph) {
+    		((CompactGraph) graph).freeze();
+    	}
+    }
+    
+    /**
+     * Search arrays of one thread in getInstallationOrders
+     */
+    private static final class Scratch {
+    	final int[] mark;
+    	final int[] stack;
+    	final int[] found;
+    	int stamp;
+    	
+    	Scratch(int n) {
+    		mark = new int[n];
+    		stack = new int[n];
+    		found = new int[n];
+    	}
+    }
+    
+    /**
+     * The histograms of the packages visited and the edges scanned by one
+     * query, named PackageManager.<query>.visited and .edgeScans
+     */
+    private static final class Traversal {
+    	final Metrics.Histogram visited;
+    	final Metrics.Histogram edgeScans;
+    	
+    	Traversal(String query) {
+    		visited = Metrics.histogram("PackageManager." + query + ".visited");
+    		edgeScans = Metrics.histogram("PackageManager." + query + ".edgeScans");
+    	}
+    	
+    	/**
+    	 * Record one traversal
+    	 * @param packages the number of packages visited
+    	 * @param edges the number of edges scanned
+    	 */
+    	void record(long packages, long edges) {
+    		visited.record(packages);
+    		edgeScans.record(edges);
+    	}
+    	
+    	/**
+    	 * Record that the query looked at the whole graph
+    	 * @param index the index of the graph
+    	 */
+    	void scanned(GraphIndex index) {
+    		record(index.order(), index.targets.length);
+    	}
+    }
+    
+    /**
+     * Helper method to get the graph a query should run on. A query on a
+     * VersionedGraph runs on one published version from start to end, so
+     * it is not affected by concurrent updates.
+     * @return the graph to query
+     */
+    private GraphADT view() {
+    	if (graph instanceof VersionedGraph) {
+    		return ((VersionedGraph) graph).snapshot();
+    	}
+    	return graph;
+    }
+    
+    /**
+     * Helper method to select the k names with the highest counts
+     * @param names id -> name
+     * @param counts id -> count
+     * @param k the number of names to return
+     * @return the names, highest count first and ties by name
+     */
+    private static List<String> topK(String[] names, int[] counts, int k) {
+    	if (k <= 0) {
+    		return new ArrayList<String>();
+    	}
+    	Comparator<Integer> rank = Comparator.<Integer>comparingInt(u -> counts[u])
+    			.thenComparing(u -> names[u], Comparator.reverseOrder());
+    	// Keep the k best seen so far, with the worst of them on top
+    	PriorityQueue<Integer> best = new PriorityQueue<Integer>(k, rank);
+    	for (int u = 0; u < counts.length; u++) {
+    		if (best.size() < k) {
+    			best.add(u);
+    		} else if (rank.compare(u, best.peek()) > 0) {
+    			best.poll();
+    			best.add(u);
+    		}
+    	}
+    	List<String> top = new ArrayList<String>(best.size());
+    	while (!best.isEmpty()) {
+    		top.add(names[best.poll()]);
+    	}
+    	Collections.reverse(top);
+    	return top;
+    }
+    
+    /**
+     * Helper method to count the transitive dependencies of every package
+     * @param index the graph
+     * @param approximate true to estimate the counts with sketches
+     * @return vertex id -> number of transitive dependencies
+     */
+    private static int[] dependencyCounts(GraphIndex index, boolean approximate) {
+    	if (approximate) {
+    		return DependencySketch.estimate(index, DependencySketch.PRECISION);
+    	}
+    	return DependencyCounter.count(index);
+    }
+    
+    /**
+     * Helper method to get the installation order of one package from the
+     * cache, computing and caching it on a miss
+     * @param g the graph to search
+     * @param traversal the histograms of the query
+     * @param pkg the package
+     * @param generation the cache generation read before g was taken
+     * @return the order, shared with the cache so it must not be changed
+     * @throws CycleException if cycle is detected
+     * @throws PackageNotFoundException if the package is not in the graph
+     */
+    private List<String> cachedOrder(GraphADT g, Traversal traversal, String pkg, long generation) throws CycleException, PackageNotFoundException {
+    	List<String> order = cache == null ? null : cache.get(pkg);
+    	if (order == null) {
+    		if (!g.containsVertex(pkg))
+    			throw new PackageNotFoundException();
+    		order = topoOrder(g, traversal, pkg);
+    		if (cache != null) {
+    			cache.put(pkg, order, generation);
+    		}
+    	}
+    	return order;
+    }
+    
+    /**
+     * Helper method to build the exception for a graph known to have a
+     * cycle, carrying a shortest cycle through the first cyclic component
+     * @param index the index of the graph
+     * @return the exception
+     */
+    private static CycleException cycleException(GraphIndex index) {
+    	List<int[]> cyclic = index.cyclicComponents();
+    	if (cyclic.isEmpty()) {
+    		return new CycleException();
+    	}
+    	return new CycleException(index.cycleThrough(cyclic.get(0)[0]));
+    }
+    
+    /**
+     * Helper method to read a cycle off the search path when an edge back
+     * to a package on the path is found
+     * @param path the search path, the current package on top
+     * @param pkg the package on the path the edge goes back to
+     * @return the cycle from pkg back to itself
+     */
+    private static List<String> cycleOnPath(Deque<String> path, String pkg) {
+    	List<String> cycle = new ArrayList<String>();
+    	cycle.add(pkg);
+    	for (String i : path) {
+    		if (i.equals(pkg)) {
+    			break;
+    		}
+    		cycle.add(i);
+    	}
+    	cycle.add(pkg);
+    	Collections.reverse(cycle);
+    	return cycle;
+    }
+    
     /**
      * Helper method to get the topological order from one package
+     * @param g the graph to search
+     * @param traversal the histograms of the query
      * @param pkg
      * @return the list in topological order
      * @throws CycleException if cycle is detected
      */
-    private List<String> topoOrder(String pkg) throws CycleException {
-    	LinkedList<String> visited = new LinkedList<String>();
-    	Stack<String> tmp = new Stack<String>();
-    	List<String> order = new LinkedList<String>();
-    	// Push the package needs installing into the stack and visited list
-    	tmp.push(pkg);
+    private List<String> topoOrder(GraphADT g, Traversal traversal, String pkg) throws CycleException {
+    	List<String> order = new ArrayList<String>();
+    	topoOrder(g, traversal, pkg, new HashSet<String>(), order);
+    	return order;
+    }
+    
+    /**
+     * Helper method to append the topological order from one package to
+     * the given order, skipping packages that are already visited.
+     * 
+     * Runs an iterative depth first search in O(V+E): every package on the
+     * current path keeps its own position in its adjacency list, so no
+     * list is walked twice, and both the visited and the on-path checks
+     * are hash lookups.
+     * 
+     * @param g the graph to search
+     * @param traversal the histograms of the query
+     * @param pkg the package to start from
+     * @param visited packages already in the order, updated as packages are added
+     * @param order the order to append to
+     * @throws CycleException if cycle is detected
+     */
+    private void topoOrder(GraphADT g, Traversal traversal, String pkg, Set<String> visited, List<String> order) throws CycleException {
+    	Set<String> onPath = new HashSet<String>();
+    	Deque<String> path = new ArrayDeque<String>();
+    	Deque<Iterator<String>> pending = new ArrayDeque<Iterator<String>>();
+    	int before = order.size();
+    	long edges = 0;
+    	// Push the package needs installing into the path
     	visited.add(pkg);
+    	onPath.add(pkg);
+    	path.push(pkg);
+    	pending.push(g.getAdjacentViewOf(pkg).iterator());
     	
-    	while (!tmp.isEmpty()) {
-    		String curr = tmp.peek();
-    		boolean allVisited = true;
-    		for (String i : graph.getAdjacentVerticesOf(curr)) {
-    			// If the adjacent vertex of the current vertex is in the previous
-    			// topo order to the package, it is a cycle
-    			if (tmp.search(i) != -1) {
-    				throw new CycleException();
+    	while (!pending.isEmpty()) {
+    		Iterator<String> succ = pending.peek();
+    		if (succ.hasNext()) {
+    			String i = succ.next();
+    			edges++;
+    			// If the adjacent vertex is on the current path, it is a cycle
+    			if (onPath.contains(i)) {
+    				traversal.record(order.size() - before, edges);
+    				throw new CycleException(cycleOnPath(path, i));
     			}
-    			// Check if it is visited
-    			boolean v = false;
-    			for (int j = 0; j < visited.size(); j++) {
-    				if (i.equals(visited.get(j))) {
-    					v = true;
-    					break;
-    				}
+    			// If it is not visited, continue the search from it
+    			if (visited.add(i)) {
+    				onPath.add(i);
+    				path.push(i);
+    				pending.push(g.getAdjacentViewOf(i).iterator());
     			}
-    			// If it is not, push it in the stack and visited list
-    			if (!v) {
-    				tmp.push(i);
-    				visited.add(i);
-    				// If at least one vertex is not visited, allVisited is false
-    				allVisited = false;
-    				break;
-    			}
-    		}
-    		// If all adjacent vertex is visited, pop the stack
-    		if (allVisited) {
-    			order.add(tmp.pop());
+    		} else {
+    			// All adjacent vertices are installed, so the current one can be
+    			pending.pop();
+    			String curr = path.pop();
+    			onPath.remove(curr);
+    			order.add(curr);
     		}
     	}
-    	
-    	return order;
+    	traversal.record(order.size() - before, edges);
     }
     
 }
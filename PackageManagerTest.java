@@ -14,7 +14,17 @@
 // org.junit.Assert.*; 
 import static org.junit.jupiter.api.Assertions.fail;
 
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Random;
 import java.util.Set;
 
 import org.junit.After;
@@ -231,4 +241,871 @@ public class PackageManagerTest {
 			fail();
 		}
 	}
+	
+	/**
+	 * Test if a PackageManager backed by a CompactGraph gives the same order
+	 */
+	@Test
+	public void test10_getInstallationOrder_compactGraph() {
+		try {
+			pm = new PackageManager(new CompactGraph());
+			pm.constructGraph("valid.json");
+			List<String> a = pm.getInstallationOrder("A");
+			if (a.size() != 4 || !a.get(2).equals("B") || !a.get(3).equals("A")) {
+				fail();
+			}
+		} catch (Exception e) {
+			fail();
+		}
+	}
+	
+	/**
+	 * Test if getInstallationOrder handles a long dependency chain
+	 */
+	@Test
+	public void test11_getInstallationOrder_long_chain() {
+		try {
+			Graph g = new Graph();
+			for (int i = 0; i < 100000; i++) {
+				g.addEdge("p" + i, "p" + (i + 1));
+			}
+			pm = new PackageManager(g);
+			List<String> a = pm.getInstallationOrder("p0");
+			// The deepest dependency comes first and the package itself last
+			if (a.size() != 100001 || !a.get(0).equals("p100000") || !a.get(100000).equals("p0")) {
+				fail();
+			}
+		} catch (Exception e) {
+			fail();
+		}
+	}
+	
+	/**
+	 * Test if getInstallationOrderForAllPackages detects a cycle that no
+	 * root package leads to
+	 */
+	@Test
+	public void test12_getInstallationOrderForAllPackages_unreachable_cycle() {
+		try {
+			Graph g = new Graph();
+			g.addEdge("A", "B");
+			g.addEdge("C", "D");
+			g.addEdge("D", "C");
+			pm = new PackageManager(g);
+			pm.getInstallationOrderForAllPackages();
+			fail();
+		} catch (CycleException e) {}
+		catch (Exception e) {
+			fail();
+		}
+	}
+	
+	/**
+	 * Test if getInstallationWaves groups the packages correctly
+	 */
+	@Test
+	public void test13_getInstallationWaves() {
+		try {
+			pm.constructGraph("valid.json");
+			List<List<String>> waves = pm.getInstallationWaves();
+			// C and D first, then B, then A and E
+			if (waves.size() != 3 
+					|| !new HashSet<String>(waves.get(0)).equals(new HashSet<String>(Arrays.asList("C", "D")))
+					|| !waves.get(1).equals(Arrays.asList("B"))
+					|| !new HashSet<String>(waves.get(2)).equals(new HashSet<String>(Arrays.asList("A", "E")))) {
+				fail();
+			}
+		} catch (Exception e) {
+			fail();
+		}
+	}
+	
+	/**
+	 * Test if getInstallationWaves detects cycle
+	 */
+	@Test
+	public void test14_getInstallationWaves_with_cycle() {
+		try {
+			pm.constructGraph("cyclic.json");
+			pm.getInstallationWaves();
+			fail();
+		} catch (CycleException e) {}
+		catch (Exception e) {
+			fail();
+		}
+	}
+	
+	/**
+	 * Test if every package of a large wave plan comes after its dependencies
+	 */
+	@Test
+	public void test15_getInstallationWaves_large() {
+		try {
+			Graph g = new Graph();
+			for (int i = 1; i < 50000; i++) {
+				g.addEdge("p" + i, "p" + (i / 2));
+				g.addEdge("p" + i, "p" + (i / 3));
+			}
+			pm = new PackageManager(g);
+			List<List<String>> waves = pm.getInstallationWaves();
+			Map<String, Integer> level = new HashMap<String, Integer>();
+			for (int w = 0; w < waves.size(); w++) {
+				for (String p : waves.get(w)) {
+					level.put(p, w);
+				}
+			}
+			if (level.size() != g.order()) {
+				fail();
+			}
+			for (String p : g.getAllVertices()) {
+				for (String d : g.getAdjacentVerticesOf(p)) {
+					if (level.get(d) >= level.get(p)) {
+						fail();
+					}
+				}
+			}
+		} catch (Exception e) {
+			fail();
+		}
+	}
+	
+	/**
+	 * Test if getDependencyCounts counts shared dependencies once
+	 */
+	@Test
+	public void test16_getDependencyCounts() {
+		try {
+			pm.constructGraph("valid.json");
+			Map<String, Integer> counts = pm.getDependencyCounts();
+			if (counts.get("A") != 3 || counts.get("B") != 2 || counts.get("C") != 0) {
+				fail();
+			}
+			// A and E both have three, ties are broken by name
+			if (!pm.getPackagesWithMostDependencies(3).equals(Arrays.asList("A", "E", "B"))) {
+				fail();
+			}
+		} catch (Exception e) {
+			fail();
+		}
+	}
+	
+	/**
+	 * Test if getDependencyCounts counts the rest of a cycle and does not throw
+	 */
+	@Test
+	public void test17_getDependencyCounts_with_cycle() {
+		try {
+			Graph g = new Graph();
+			g.addEdge("A", "B");
+			g.addEdge("B", "C");
+			g.addEdge("C", "B");
+			g.addEdge("C", "D");
+			pm = new PackageManager(g);
+			Map<String, Integer> counts = pm.getDependencyCounts();
+			if (counts.get("A") != 3 || counts.get("B") != 2 || counts.get("C") != 2 || counts.get("D") != 0) {
+				fail();
+			}
+		} catch (Exception e) {
+			fail();
+		}
+	}
+	
+	/**
+	 * Test if a saved snapshot answers the same queries as the json
+	 */
+	@Test
+	public void test18_saveSnapshot_openSnapshot() {
+		try {
+			File file = File.createTempFile("valid", ".snapshot");
+			file.deleteOnExit();
+			pm.constructGraph("valid.json");
+			pm.saveSnapshot(file.getPath());
+			PackageManager snapshot = PackageManager.openSnapshot(file.getPath());
+			if (!snapshot.getAllPackages().equals(pm.getAllPackages())
+					|| !snapshot.getInstallationOrder("B").get(2).equals("B")
+					|| !snapshot.getPackageWithMaxDependencies().equals(pm.getPackageWithMaxDependencies())) {
+				fail();
+			}
+		} catch (Exception e) {
+			fail();
+		}
+	}
+	
+	/**
+	 * Test if openSnapshot rejects a file that is not a snapshot
+	 */
+	@Test
+	public void test19_openSnapshot_invalid() {
+		try {
+			PackageManager.openSnapshot("valid.json");
+			fail();
+		} catch (IOException e) {}
+		catch (Exception e) {
+			fail();
+		}
+	}
+	
+	/**
+	 * Test if toInstall skips everything several installed packages need
+	 */
+	@Test
+	public void test20_toInstall_many_installed() {
+		try {
+			Graph g = new Graph();
+			g.addEdge("A", "B");
+			g.addEdge("A", "C");
+			g.addEdge("A", "F");
+			g.addEdge("B", "D");
+			g.addEdge("C", "E");
+			g.addEdge("F", "G");
+			pm = new PackageManager(g);
+			List<String> a = pm.toInstall("A", Arrays.asList("B", "C"));
+			if (!a.equals(Arrays.asList("G", "F", "A"))) {
+				fail();
+			}
+			if (!pm.toInstall("B", Arrays.asList("A")).isEmpty()) {
+				fail();
+			}
+		} catch (Exception e) {
+			fail();
+		}
+	}
+	
+	/**
+	 * Test if toInstall throws PackageNotFoundException for an unknown
+	 * installed package
+	 */
+	@Test
+	public void test21_toInstall_many_throws_PackageNotFoundException() {
+		try {
+			pm.constructGraph("valid.json");
+			pm.toInstall("A", Arrays.asList("B", "T"));
+			fail();
+		}
+		catch (PackageNotFoundException e) {}
+		catch (Exception e) {
+			fail();
+		}
+	}
+	
+	/**
+	 * Test if getInstallationOrderForAllPackages uses the order kept by
+	 * the graph
+	 */
+	@Test
+	public void test22_getInstallationOrderForAllPackages_kept_order() {
+		try {
+			pm = new PackageManager(new Graph(true));
+			pm.constructGraph("valid.json");
+			List<String> a = pm.getInstallationOrderForAllPackages();
+			if (a.size() != 5 || !a.get(2).equals("B") || a.indexOf("B") > a.indexOf("A")) {
+				fail();
+			}
+		} catch (Exception e) {
+			fail();
+		}
+	}
+	
+	/**
+	 * Test if the CycleException carries the cycle that was found
+	 */
+	@Test
+	public void test23_CycleException_cycle() {
+		try {
+			pm.constructGraph("cyclic.json");
+			pm.getInstallationOrder("A");
+			fail();
+		} catch (CycleException e) {
+			if (!e.getCycle().equals(Arrays.asList("A", "B", "C", "A"))) {
+				fail();
+			}
+		} catch (Exception e) {
+			fail();
+		}
+		try {
+			pm.getInstallationWaves();
+			fail();
+		} catch (CycleException e) {
+			// Any rotation of the cycle is fine
+			List<String> c = e.getCycle();
+			if (c.size() != 4 || !c.get(0).equals(c.get(3)) || !new HashSet<String>(c).equals(new HashSet<String>(Arrays.asList("A", "B", "C")))) {
+				fail();
+			}
+		} catch (Exception e) {
+			fail();
+		}
+	}
+	
+	/**
+	 * Test if findCycles reports every cyclic group and nothing else
+	 */
+	@Test
+	public void test24_findCycles() {
+		try {
+			Graph g = new Graph();
+			g.addEdge("A", "B");
+			g.addEdge("B", "C");
+			g.addEdge("C", "B");
+			g.addEdge("C", "D");
+			g.addEdge("D", "E");
+			g.addEdge("E", "F");
+			g.addEdge("F", "D");
+			g.addEdge("F", "G");
+			g.addEdge("H", "H");
+			pm = new PackageManager(g);
+			List<List<String>> cycles = pm.findCycles();
+			// D, E, F come before B, C because C depends on them
+			if (cycles.size() != 3 || cycles.indexOf(Arrays.asList("D", "E", "F")) > cycles.indexOf(Arrays.asList("B", "C"))
+					|| cycles.indexOf(Arrays.asList("B", "C")) < 0 || !cycles.contains(Arrays.asList("H"))) {
+				fail();
+			}
+			if (!pm.findCycle("E").equals(Arrays.asList("E", "F", "D", "E")) || !pm.findCycle("A").isEmpty()
+					|| !pm.findCycle("H").equals(Arrays.asList("H", "H"))) {
+				fail();
+			}
+			pm = new PackageManager();
+			pm.constructGraph("valid.json");
+			if (!pm.findCycles().isEmpty()) {
+				fail();
+			}
+		} catch (Exception e) {
+			fail();
+		}
+	}
+	
+	/**
+	 * Test if cached orders are reused and only dropped when a package in
+	 * them changes
+	 */
+	@Test
+	public void test25_cache_invalidation() {
+		try {
+			Graph g = new Graph();
+			pm = new PackageManager(g);
+			pm.constructGraph("valid.json");
+			pm.getInstallationOrder("A");
+			pm.getInstallationOrder("E");
+			pm.getInstallationOrder("A");
+			if (pm.getCacheStats().getHitCount() != 1 || pm.getCacheStats().getMissCount() != 2) {
+				fail();
+			}
+			// Only the order of E contains E
+			g.addEdge("E", "D");
+			pm.getInstallationOrder("A");
+			List<String> e = pm.getInstallationOrder("E");
+			if (pm.getCacheStats().getInvalidationCount() != 1 || pm.getCacheStats().getHitCount() != 2
+					|| e.indexOf("D") > e.indexOf("E")) {
+				fail();
+			}
+			// C is in both orders
+			g.addEdge("C", "F");
+			if (pm.getCacheStats().getEntryCount() != 0 || !pm.getInstallationOrder("A").contains("F")) {
+				fail();
+			}
+			if (!pm.toInstall("E", "B").equals(Arrays.asList("E"))) {
+				fail();
+			}
+			g.removeVertex("F");
+			if (pm.getInstallationOrder("A").contains("F")) {
+				fail();
+			}
+		} catch (Exception e) {
+			fail();
+		}
+	}
+	
+	/**
+	 * Test if the cache stays within its capacity and evicts the least
+	 * recently used orders
+	 */
+	@Test
+	public void test26_cache_eviction() {
+		try {
+			pm.constructGraph("valid.json");
+			pm.setCacheCapacity(6);
+			pm.getInstallationOrder("A"); // 4 packages
+			pm.getInstallationOrder("C"); // 1 package
+			pm.getInstallationOrder("A");
+			pm.getInstallationOrder("D"); // 1 package
+			pm.getInstallationOrder("B"); // 3 packages, evicts C, then A
+			CacheStats stats = pm.getCacheStats();
+			if (stats.getEvictionCount() != 2 || stats.getWeight() != 1 + 3 || stats.getEntryCount() != 2) {
+				fail();
+			}
+			pm.getInstallationOrder("D");
+			pm.getInstallationOrder("A");
+			if (pm.getCacheStats().getHitCount() != 2) {
+				fail();
+			}
+		} catch (Exception e) {
+			fail();
+		}
+	}
+	
+	/**
+	 * Test if loading many manifests in parallel gives the same graph as
+	 * loading them one by one
+	 */
+	@Test
+	public void test27_constructGraph_many_files() {
+		try {
+			List<String> paths = new ArrayList<String>();
+			for (int f = 0; f < 20; f++) {
+				File file = File.createTempFile("shard" + f, ".json");
+				file.deleteOnExit();
+				try (FileWriter out = new FileWriter(file)) {
+					out.write("{\"packages\": [");
+					for (int i = 0; i < 100; i++) {
+						// Packages depend on packages of later shards
+						out.write((i == 0 ? "" : ",") + "{\"name\": \"p" + f + "_" + i + "\", \"dependencies\": [\"p"
+								+ (f + 1) + "_" + i + "\", \"p" + (f + 2) + "_" + (i * 7 % 100) + "\"]}");
+					}
+					out.write("]}");
+				}
+				paths.add(file.getPath());
+			}
+			CompactGraph parallel = new CompactGraph();
+			pm = new PackageManager(parallel);
+			pm.constructGraph(paths);
+			CompactGraph sequential = new CompactGraph();
+			PackageManager one = new PackageManager(sequential);
+			for (String path : paths) {
+				one.constructGraph(path);
+			}
+			if (parallel.order() != 2200 || parallel.size() != 4000
+					|| !parallel.getAllVertices().equals(sequential.getAllVertices())) {
+				fail();
+			}
+			for (String v : sequential.getAllVertices()) {
+				if (!parallel.getAdjacentVerticesOf(v).equals(sequential.getAdjacentVerticesOf(v))) {
+					fail();
+				}
+			}
+			if (pm.getInstallationOrder("p0_0").size() != one.getInstallationOrder("p0_0").size()) {
+				fail();
+			}
+		} catch (Exception e) {
+			fail();
+		}
+	}
+	
+	/**
+	 * Test if a malformed manifest among many is reported with its file
+	 */
+	@Test
+	public void test28_constructGraph_many_files_invalid() {
+		File bad = null;
+		try {
+			bad = File.createTempFile("bad", ".json");
+			bad.deleteOnExit();
+			try (FileWriter out = new FileWriter(bad)) {
+				out.write("{\"packages\": [{\"name\": }]}");
+			}
+			pm.constructGraph(Arrays.asList("valid.json", bad.getPath(), "valid.json"));
+			fail();
+		} catch (ManifestParseException e) {
+			if (!bad.getPath().equals(e.getFile())) {
+				fail();
+			}
+		} catch (Exception e) {
+			fail();
+		}
+		try {
+			pm.constructGraph(Arrays.asList("valid.json", "missing.json"));
+			fail();
+		} catch (FileNotFoundException e) {}
+		catch (Exception e) {
+			fail();
+		}
+	}
+	
+	/**
+	 * Test if reload applies only the differences and reports them
+	 */
+	@Test
+	public void test29_reload() {
+		try {
+			File file = File.createTempFile("reload", ".json");
+			file.deleteOnExit();
+			try (FileWriter out = new FileWriter(file)) {
+				out.write("{\"packages\": [{\"name\": \"A\", \"dependencies\": [\"B\", \"F\"]},"
+						+ " {\"name\": \"B\", \"dependencies\": [\"C\"]}, {\"name\": \"C\", \"dependencies\": []}]}");
+			}
+			pm.constructGraph("valid.json");
+			pm.getInstallationOrder("C");
+			ChangeSet changes = pm.reload(file.getPath());
+			if (!changes.getAddedPackages().equals(Arrays.asList("F"))
+					|| !new HashSet<String>(changes.getRemovedPackages()).equals(new HashSet<String>(Arrays.asList("D", "E")))
+					|| !changes.getAddedDependencies().get("A").equals(Arrays.asList("F"))
+					|| !changes.getRemovedDependencies().get("B").equals(Arrays.asList("D"))
+					|| changes.size() != 5) {
+				fail();
+			}
+			if (!pm.getAllPackages().equals(new HashSet<String>(Arrays.asList("A", "B", "C", "F")))
+					|| pm.getInstallationOrder("B").size() != 2) {
+				fail();
+			}
+			// The order of C did not change, so it is still cached
+			pm.getInstallationOrder("C");
+			if (pm.getCacheStats().getHitCount() != 1) {
+				fail();
+			}
+			// Nothing changes the second time
+			if (!pm.reload(file.getPath()).isEmpty()) {
+				fail();
+			}
+		} catch (Exception e) {
+			fail();
+		}
+	}
+	
+	/**
+	 * Test if a batch of installation orders holds the same packages as
+	 * the orders of one package at a time, in a valid order
+	 */
+	@Test
+	public void test30_getInstallationOrders() {
+		try {
+			Graph g = new Graph();
+			for (int i = 0; i < 200; i++) {
+				g.addEdge("P" + i, "P" + (i / 2));
+				g.addEdge("P" + i, "P" + (i / 3));
+			}
+			g.removeEdge("P0", "P0");
+			pm = new PackageManager(g);
+			List<String> pkgs = new ArrayList<String>();
+			for (int i = 199; i >= 0; i -= 7) {
+				pkgs.add("P" + i);
+			}
+			pkgs.add("P199");
+			pm.getInstallationOrder("P0");
+			for (boolean parallel : new boolean[] {false, true}) {
+				Map<String, List<String>> orders = pm.getInstallationOrders(pkgs, parallel);
+				if (!new ArrayList<String>(orders.keySet()).equals(pkgs.subList(0, pkgs.size() - 1))) {
+					fail();
+				}
+				for (String pkg : pkgs) {
+					List<String> order = orders.get(pkg);
+					if (!new HashSet<String>(order).equals(new HashSet<String>(pm.getInstallationOrder(pkg)))
+							|| !order.get(order.size() - 1).equals(pkg)) {
+						fail();
+					}
+					for (String p : order) {
+						for (String d : g.getAdjacentVerticesOf(p)) {
+							if (order.indexOf(d) > order.indexOf(p)) {
+								fail();
+							}
+						}
+					}
+				}
+			}
+			if (pm.getCacheStats().getHitCount() == 0) {
+				fail();
+			}
+		} catch (Exception e) {
+			fail();
+		}
+	}
+	
+	/**
+	 * Test if a batch of installation orders fails for a cycle or an
+	 * unknown package
+	 */
+	@Test
+	public void test31_getInstallationOrders_errors() {
+		try {
+			pm.constructGraph("cyclic.json");
+			pm.getInstallationOrders(Arrays.asList("A"));
+			fail();
+		} catch (CycleException e) {
+			if (e.getCycle().isEmpty()) {
+				fail();
+			}
+		} catch (Exception e) {
+			fail();
+		}
+		try {
+			pm.constructGraph("valid.json");
+			pm.getInstallationOrders(Arrays.asList("A", "T"));
+			fail();
+		} catch (PackageNotFoundException e) {
+			// expected
+		} catch (Exception e) {
+			fail();
+		}
+	}
+	
+	/**
+	 * Test if the queries check packages without copying the vertex set
+	 */
+	@Test
+	public void test32_queries_do_not_copy_vertices() {
+		try {
+			int[] copies = new int[1];
+			Graph g = new Graph() {
+				@Override
+				public Set<String> getAllVertices() {
+					copies[0]++;
+					return super.getAllVertices();
+				}
+			};
+			pm = new PackageManager(g);
+			pm.constructGraph("valid.json");
+			pm.getInstallationOrder("A");
+			pm.toInstall("A", "B");
+			pm.getInstallationOrderForAllPackages();
+			pm.toInstall("A", Arrays.asList("C"));
+			if (copies[0] != 0) {
+				fail();
+			}
+			try {
+				pm.getInstallationOrder("T");
+				fail();
+			} catch (PackageNotFoundException e) {}
+		} catch (Exception e) {
+			fail();
+		}
+	}
+	
+	/**
+	 * Test if the estimated dependency counts are exact on small graphs
+	 * and close on a large one
+	 */
+	@Test
+	public void test33_approximate_dependency_counts() {
+		try {
+			pm.constructGraph("valid.json");
+			if (!pm.getDependencyCounts(true).equals(pm.getDependencyCounts())
+					|| !pm.getPackagesWithMostDependencies(3, true).equals(Arrays.asList("A", "E", "B"))) {
+				fail();
+			}
+			Graph g = new Graph();
+			Random random = new Random(11);
+			int n = 5000;
+			for (int i = 0; i < n; i++) {
+				g.addVertex("P" + i);
+				for (int d = 0; d < 3 && i > 0; d++) {
+					g.addEdge("P" + i, "P" + random.nextInt(i));
+				}
+			}
+			g.addEdge("P10", "P4000"); // a cycle through P10 and P4000
+			pm = new PackageManager(g);
+			Map<String, Integer> exact = pm.getDependencyCounts();
+			Map<String, Integer> estimated = pm.getDependencyCounts(true);
+			double error = 0;
+			for (Map.Entry<String, Integer> count : exact.entrySet()) {
+				int e = estimated.get(count.getKey());
+				if (count.getValue() >= 100 && Math.abs(e - count.getValue()) > 0.25 * count.getValue()) {
+					fail();
+				}
+				error += Math.abs(e - count.getValue()) / (double) Math.max(1, count.getValue());
+			}
+			if (error / n > 0.1) {
+				fail();
+			}
+			int max = exact.get(pm.getPackagesWithMostDependencies(1).get(0));
+			if (exact.get(pm.getPackagesWithMostDependencies(1, true).get(0)) < 0.8 * max) {
+				fail();
+			}
+			try {
+				pm.getPackageWithMaxDependencies(true);
+				fail();
+			} catch (CycleException e) {}
+		} catch (Exception e) {
+			fail();
+		}
+	}
+	
+	/**
+	 * Test if reload removes the old edges before adding the new ones, so
+	 * a graph that rejects cycles can reverse an edge
+	 */
+	@Test
+	public void test34_reload_reverses_edge() {
+		try {
+			File file = File.createTempFile("reload", ".json");
+			file.deleteOnExit();
+			try (FileWriter out = new FileWriter(file)) {
+				out.write("{\"packages\": [{\"name\": \"B\", \"dependencies\": [\"A\"]},"
+						+ " {\"name\": \"A\", \"dependencies\": []}]}");
+			}
+			Graph g = new Graph(true);
+			g.addEdge("A", "B");
+			pm = new PackageManager(g);
+			ChangeSet changes = pm.reload(file.getPath());
+			if (!changes.getRemovedDependencies().get("A").equals(Arrays.asList("B"))
+					|| !changes.getAddedDependencies().get("B").equals(Arrays.asList("A"))
+					|| changes.size() != 2) {
+				fail();
+			}
+			if (!g.getAdjacentVerticesOf("A").isEmpty() || !pm.getInstallationOrder("B").equals(Arrays.asList("A", "B"))) {
+				fail();
+			}
+		} catch (Exception e) {
+			fail();
+		}
+	}
+	
+	/**
+	 * Test if a manifest that is malformed halfway leaves the graph as it was
+	 */
+	@Test
+	public void test35_constructGraph_invalid_changes_nothing() {
+		try {
+			File bad = File.createTempFile("bad", ".json");
+			bad.deleteOnExit();
+			try (FileWriter out = new FileWriter(bad)) {
+				out.write("{\"packages\": [{\"name\": \"X\", \"dependencies\": [\"A\"]},"
+						+ " {\"name\": \"Y\", \"dependencies\": [\"Z\" }]}");
+			}
+			pm.constructGraph("valid.json");
+			Set<String> packages = pm.getAllPackages();
+			try {
+				pm.constructGraph(bad.getPath());
+				fail();
+			} catch (ManifestParseException e) {}
+			if (!pm.getAllPackages().equals(packages)) {
+				fail();
+			}
+		} catch (Exception e) {
+			fail();
+		}
+	}
+	
+	/**
+	 * Test if a snapshot keeps its index and can be changed like any graph,
+	 * without touching the file
+	 */
+	@Test
+	public void test36_snapshot_copy_on_write() {
+		try {
+			File file = File.createTempFile("valid", ".snapshot");
+			file.deleteOnExit();
+			File json = File.createTempFile("reload", ".json");
+			json.deleteOnExit();
+			try (FileWriter out = new FileWriter(json)) {
+				out.write("{\"packages\": [{\"name\": \"A\", \"dependencies\": [\"F\"]}]}");
+			}
+			pm.constructGraph("valid.json");
+			pm.saveSnapshot(file.getPath());
+			GraphSnapshot snapshot = GraphSnapshot.open(file.getPath());
+			if (GraphIndex.of(snapshot) != GraphIndex.of(snapshot)) {
+				fail();
+			}
+			PackageManager opened = new PackageManager(snapshot);
+			List<String> order = opened.getInstallationOrder("A");
+			// The first change copies the snapshot, and the cache follows it
+			opened.reload(json.getPath());
+			if (!opened.getAllPackages().equals(new HashSet<String>(Arrays.asList("A", "F")))
+					|| !opened.getInstallationOrder("A").equals(Arrays.asList("F", "A"))) {
+				fail();
+			}
+			if (!PackageManager.openSnapshot(file.getPath()).getInstallationOrder("A").equals(order)) {
+				fail();
+			}
+		} catch (Exception e) {
+			fail();
+		}
+	}
+
+	/**
+	 * Test if a small batch gives the orders of one package at a time,
+	 * also with a cycle the batch does not depend on
+	 */
+	@Test
+	public void test37_getInstallationOrders_small_batch() {
+		try {
+			Graph g = new Graph();
+			for (int i = 1; i < 50; i++) {
+				g.addEdge("P" + i, "P" + (i / 2));
+			}
+			g.addEdge("X", "Y");
+			g.addEdge("Y", "X");
+			pm = new PackageManager(g);
+			List<String> pkgs = Arrays.asList("P49", "P7", "P49");
+			Map<String, List<String>> orders = pm.getInstallationOrders(pkgs, true);
+			if (!new ArrayList<String>(orders.keySet()).equals(Arrays.asList("P49", "P7"))
+					|| !orders.get("P49").equals(pm.getInstallationOrder("P49"))
+					|| !orders.get("P7").equals(pm.getInstallationOrder("P7"))) {
+				fail();
+			}
+		} catch (Exception e) {
+			fail();
+		}
+		try {
+			pm.getInstallationOrders(Arrays.asList("P1", "Z"));
+			fail();
+		} catch (PackageNotFoundException e) {
+			// expected
+		} catch (Exception e) {
+			fail();
+		}
+	}
+
+	/**
+	 * Test if loading a cyclic manifest into a graph that rejects cycles
+	 * fails with the cycle and changes nothing
+	 */
+	@Test
+	public void test38_cyclic_manifest_into_ordered_graph() {
+		File cyclic = null;
+		File closing = null;
+		try {
+			cyclic = File.createTempFile("cyclic", ".json");
+			cyclic.deleteOnExit();
+			try (FileWriter out = new FileWriter(cyclic)) {
+				out.write("{\"packages\": [{\"name\": \"A\", \"dependencies\": [\"B\"]},"
+						+ " {\"name\": \"B\", \"dependencies\": [\"A\"]}, {\"name\": \"C\", \"dependencies\": []}]}");
+			}
+			closing = File.createTempFile("closing", ".json");
+			closing.deleteOnExit();
+			try (FileWriter out = new FileWriter(closing)) {
+				out.write("{\"packages\": [{\"name\": \"N\", \"dependencies\": [\"C\"]},"
+						+ " {\"name\": \"C\", \"dependencies\": [\"A\"]}]}");
+			}
+		} catch (Exception e) {
+			fail();
+		}
+		Graph g = new Graph(true);
+		pm = new PackageManager(g);
+		try {
+			pm.constructGraph(cyclic.getPath());
+			fail();
+		} catch (CycleException e) {
+			if (!e.getCycle().equals(Arrays.asList("B", "A", "B")) || g.order() != 0 || g.size() != 0) {
+				fail();
+			}
+		} catch (Exception e) {
+			fail();
+		}
+		try {
+			pm.constructGraph("valid.json");
+			pm.getInstallationOrder("A");
+			pm.constructGraph(Arrays.asList("valid.json", closing.getPath()));
+			fail();
+		} catch (CycleException e) {
+			if (!e.getCycle().equals(Arrays.asList("C", "A", "B", "C")) || g.order() != 5 || g.size() != 4
+					|| g.containsVertex("N")) {
+				fail();
+			}
+		} catch (Exception e) {
+			fail();
+		}
+		try {
+			pm.reload(cyclic.getPath());
+			fail();
+		} catch (CycleException e) {
+			try {
+				if (!pm.getAllPackages().equals(new HashSet<String>(Arrays.asList("A", "B", "C", "D", "E")))
+						|| g.size() != 4 || !g.containsEdge("E", "B") || g.containsEdge("B", "A")
+						|| !pm.getInstallationOrder("A").get(3).equals("A")) {
+					fail();
+				}
+			} catch (Exception f) {
+				fail();
+			}
+		} catch (Exception e) {
+			fail();
+		}
+	}
 }
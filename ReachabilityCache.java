@@ -0,0 +1,135 @@
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Filename:   ReachabilityCache.java
+ * Project:    p4
+ * Authors:    Bon
+ *
+ * Keeps a ReachabilityIndex of a graph up to date for PackageManager.
+ *
+ * The index is built on the first query. When the dependencies of a
+ * package change, the index is patched by remembering the package: the
+ * changed edges can only affect packages that reached it before, so
+ * queries from other packages are still answered by the index and the
+ * ones from affected packages by a search of the graph. The index is
+ * rebuilt on the next query once more than DIRTY_LIMIT packages changed
+ * or SEARCH_LIMIT queries needed a search.
+ *
+ * Queries do not lock; changes replace the whole state at once.
+ */
+final class ReachabilityCache implements GraphListener {
+	// Changed packages remembered before the index is rebuilt
+	static final int DIRTY_LIMIT = 32;
+	// Queries answered by a search before the index is rebuilt
+	static final int SEARCH_LIMIT = 256;
+
+	private static final String[] CLEAN = new String[0];
+
+	private volatile State state = new State(null, CLEAN);
+	private final AtomicInteger searches = new AtomicInteger();
+	private long changes; // guarded by this
+
+	/**
+	 * An index and the packages whose dependencies changed since it was built
+	 */
+	private static final class State {
+		final ReachabilityIndex index; // null if it has to be rebuilt
+		final String[] dirty;
+
+		State(ReachabilityIndex index, String[] dirty) {
+			this.index = index;
+			this.dirty = dirty;
+		}
+	}
+
+	/**
+	 * Return the number of changes so far, to be read before the graph is
+	 * taken for a query
+	 * @return the number of changes
+	 */
+	synchronized long changes() {
+		return changes;
+	}
+
+	/**
+	 * Return whether a package depends on another one, directly or
+	 * through other packages
+	 * @param g - the current graph, holding both packages
+	 * @param pkg - the package
+	 * @param dependency - the package that may be depended on
+	 * @param seen - the number of changes read before g was taken
+	 * @return true if it does
+	 */
+	boolean dependsOn(GraphADT g, String pkg, String dependency, long seen) {
+		State s = state;
+		if (s.index == null || searches.get() >= SEARCH_LIMIT) {
+			ReachabilityIndex index = ReachabilityIndex.of(g);
+			synchronized (this) {
+				// An index built while the graph changed may already be stale
+				if (changes == seen) {
+					state = new State(index, CLEAN);
+					searches.set(0);
+				}
+			}
+			return index.dependsOn(pkg, dependency);
+		}
+		for (String changed : s.dirty) {
+			if (pkg.equals(changed) || s.index.reachesOrIs(pkg, changed)) {
+				searches.incrementAndGet();
+				return search(g, pkg, dependency);
+			}
+		}
+		// Packages added since the index was built have no edges yet
+		return s.index.dependsOn(pkg, dependency);
+	}
+
+	/**
+	 * Remember the package whose dependencies changed, or drop the index
+	 * once too many did
+	 * @param vertex - the package whose dependencies changed
+	 */
+	@Override
+	public synchronized void dependenciesChanged(String vertex) {
+		changes++;
+		State s = state;
+		if (s.index == null || Arrays.asList(s.dirty).contains(vertex)) {
+			return;
+		}
+		if (s.dirty.length >= DIRTY_LIMIT) {
+			state = new State(null, CLEAN);
+			return;
+		}
+		String[] dirty = Arrays.copyOf(s.dirty, s.dirty.length + 1);
+		dirty[s.dirty.length] = vertex;
+		state = new State(s.index, dirty);
+	}
+
+	/**
+	 * Helper method to answer a query by a depth first search of the graph
+	 * @param g - the graph
+	 * @param pkg - the package
+	 * @param dependency - the package that may be depended on
+	 * @return true if the search from pkg finds dependency
+	 */
+	static boolean search(GraphADT g, String pkg, String dependency) {
+		Set<String> visited = new HashSet<String>();
+		Deque<String> stack = new ArrayDeque<String>();
+		stack.push(pkg);
+		while (!stack.isEmpty()) {
+			for (String d : g.getAdjacentViewOf(stack.pop())) {
+				if (d.equals(dependency)) {
+					return true;
+				}
+				if (visited.add(d)) {
+					stack.push(d);
+				}
+			}
+		}
+		return false;
+	}
+}
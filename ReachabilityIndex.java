@@ -0,0 +1,292 @@
+import java.util.Arrays;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+/**
+ * Filename:   ReachabilityIndex.java
+ * Project:    p4
+ * Authors:    Bon
+ *
+ * Precomputed answers to "does package A depend on package B", directly
+ * or through other packages, for a snapshot of a graph.
+ *
+ * Packages on a cycle all depend on each other, so the index works on
+ * the strongly connected components and the edges between them, which
+ * form a DAG. Every component gets LABELS intervals [low, high] from
+ * randomized depth first searches (GRAIL labeling): high is the post
+ * order number of the component and low the smallest one it reaches. If
+ * A reaches B, each interval of B lies within the one of A, so most
+ * negative answers take a few comparisons. The first search also gives
+ * the range of A's search tree, which answers most positive ones. What
+ * is left is a depth first search that skips every component whose
+ * intervals rule it out.
+ *
+ * The labelings are independent and built in parallel. The index does
+ * not follow changes to the graph; see ReachabilityCache.
+ */
+public final class ReachabilityIndex {
+	// Number of random labelings, more rule out more queries but take more room
+	static final int LABELS = 3;
+
+	private final GraphIndex index;
+	private final int[] comp; // vertex id -> component, dependencies first
+	private final boolean[] cyclic; // component -> whether it holds a cycle
+	private final int[] offsets; // component rows of the condensed graph
+	private final int[] targets; // components depended on, all smaller
+	private final int[][] low; // labeling -> component -> smallest post order reached
+	private final int[][] high; // labeling -> component -> post order
+	private final int[] treeLow; // component -> smallest post order of its tree in labeling 0
+	private final ThreadLocal<int[][]> scratch; // {mark, stack, stamp} of the searches
+
+	/**
+	 * Build the index of the current state of a graph
+	 * @param graph - the graph
+	 * @return the index
+	 */
+	public static ReachabilityIndex of(GraphADT graph) {
+		return new ReachabilityIndex(GraphIndex.of(graph));
+	}
+
+	/**
+	 * Constructor
+	 * @param index - the index of the graph
+	 */
+	ReachabilityIndex(GraphIndex index) {
+		this.index = index;
+		int n = index.order();
+		comp = index.components();
+		int count = index.componentCount();
+		cyclic = new boolean[count];
+		for (int[] component : index.cyclicComponents()) {
+			cyclic[comp[component[0]]] = true;
+		}
+
+		// Group the vertices by component with a counting sort
+		int[] start = new int[count + 1];
+		for (int u = 0; u < n; u++) {
+			start[comp[u] + 1]++;
+		}
+		for (int c = 0; c < count; c++) {
+			start[c + 1] += start[c];
+		}
+		int[] fill = Arrays.copyOf(start, count);
+		int[] members = new int[n];
+		for (int u = 0; u < n; u++) {
+			members[fill[comp[u]]++] = u;
+		}
+
+		// Condensed edges, without duplicates or edges inside a component
+		int[] seen = new int[count];
+		Arrays.fill(seen, -1);
+		int[] rows = new int[count + 1];
+		int[] edges = new int[Math.max(index.targets.length, 1)];
+		int m = 0;
+		for (int c = 0; c < count; c++) {
+			seen[c] = c;
+			for (int j = start[c]; j < start[c + 1]; j++) {
+				int u = members[j];
+				for (int i = index.offsets[u]; i < index.offsets[u + 1]; i++) {
+					int d = comp[index.targets[i]];
+					if (seen[d] != c) {
+						seen[d] = c;
+						edges[m++] = d;
+					}
+				}
+			}
+			rows[c + 1] = m;
+		}
+		offsets = rows;
+		targets = Arrays.copyOf(edges, m);
+
+		low = new int[LABELS][];
+		high = new int[LABELS][];
+		treeLow = new int[count];
+		IntStream.range(0, LABELS).parallel().forEach(this::label);
+
+		scratch = ThreadLocal.withInitial(() -> new int[][] {new int[count], new int[count], new int[1]});
+	}
+
+	/**
+	 * Return whether a package depends on another one, directly or
+	 * through other packages. A package depends on itself only if it is
+	 * on a cycle.
+	 * @param pkg - the package
+	 * @param dependency - the package that may be depended on
+	 * @return true if it does, false if it does not or either package was
+	 * not in the graph
+	 */
+	public boolean dependsOn(String pkg, String dependency) {
+		int a = index.id(pkg);
+		int b = index.id(dependency);
+		if (a < 0 || b < 0) {
+			return false;
+		}
+		if (a == b) {
+			return cyclic[comp[a]];
+		}
+		return reaches(comp[a], comp[b]);
+	}
+
+	/**
+	 * Return whether a package is the other one or depends on it
+	 * @param pkg - the package
+	 * @param dependency - the package that may be depended on
+	 * @return true if it is or does
+	 */
+	boolean reachesOrIs(String pkg, String dependency) {
+		int a = index.id(pkg);
+		int b = index.id(dependency);
+		return a >= 0 && b >= 0 && (a == b || reaches(comp[a], comp[b]));
+	}
+
+	/**
+	 * Return whether the index has a package
+	 * @param pkg - the package
+	 * @return true if it was in the graph
+	 */
+	boolean contains(String pkg) {
+		return index.id(pkg) >= 0;
+	}
+
+	/**
+	 * Helper method to check whether a component reaches another one
+	 * @param a - the component to start from
+	 * @param b - the component to reach
+	 * @return true if b is a or reachable from it
+	 */
+	private boolean reaches(int a, int b) {
+		if (a == b) {
+			return true;
+		}
+		if (!mayReach(a, b)) {
+			return false;
+		}
+		if (treeReaches(a, b)) {
+			return true;
+		}
+		// Search what is left, skipping the components that cannot reach b
+		int[][] s = scratch.get();
+		int[] mark = s[0];
+		int[] stack = s[1];
+		int stamp = ++s[2][0];
+		if (stamp == 0) {
+			Arrays.fill(mark, 0);
+			stamp = s[2][0] = 1;
+		}
+		int sp = 0;
+		mark[a] = stamp;
+		stack[sp++] = a;
+		while (sp > 0) {
+			int c = stack[--sp];
+			for (int i = offsets[c]; i < offsets[c + 1]; i++) {
+				int d = targets[i];
+				if (d == b || treeReaches(d, b)) {
+					return true;
+				}
+				if (mark[d] != stamp && mayReach(d, b)) {
+					mark[d] = stamp;
+					stack[sp++] = d;
+				}
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Helper method to rule out reaching a component: edges only go to
+	 * smaller components, and the intervals of b have to lie within the
+	 * ones of a
+	 * @param a - the component to start from
+	 * @param b - the component to reach
+	 * @return false if a cannot reach b
+	 */
+	private boolean mayReach(int a, int b) {
+		if (a < b) {
+			return false;
+		}
+		for (int k = 0; k < LABELS; k++) {
+			if (low[k][b] < low[k][a] || high[k][b] > high[k][a]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Helper method to check whether a component is in the search tree of
+	 * another one in the first labeling, which means it is reachable
+	 * @param a - the component to start from
+	 * @param b - the component to reach
+	 * @return true if a reaches b through the tree
+	 */
+	private boolean treeReaches(int a, int b) {
+		return treeLow[a] <= high[0][b] && high[0][b] <= high[0][a];
+	}
+
+	/**
+	 * Helper method to compute one labeling with a depth first search
+	 * that starts from the components nothing depends on in random order
+	 * and visits the dependencies of every component from a random one on
+	 * @param k - the labeling
+	 */
+	private void label(int k) {
+		int count = offsets.length - 1;
+		Random random = new Random(k);
+		boolean[] hasDependents = new boolean[count];
+		for (int d : targets) {
+			hasDependents[d] = true;
+		}
+		int[] roots = IntStream.range(0, count).filter(c -> !hasDependents[c]).toArray();
+		for (int i = roots.length - 1; i > 0; i--) {
+			int j = random.nextInt(i + 1);
+			int t = roots[i];
+			roots[i] = roots[j];
+			roots[j] = t;
+		}
+
+		int[] lo = new int[count];
+		int[] hi = new int[count];
+		int[] entry = new int[count]; // post order count when the component was entered
+		boolean[] visited = new boolean[count];
+		int[] rotation = new int[count];
+		int[] callComponent = new int[count];
+		int[] callEdge = new int[count]; // edges looked at for each call
+		int post = 0;
+		for (int root : roots) {
+			int depth = 0;
+			callComponent[0] = root;
+			callEdge[0] = 0;
+			visited[root] = true;
+			entry[root] = post;
+			rotation[root] = random.nextInt(offsets[root + 1] - offsets[root] + 1);
+			while (depth >= 0) {
+				int c = callComponent[depth];
+				int degree = offsets[c + 1] - offsets[c];
+				if (callEdge[depth] < degree) {
+					int d = targets[offsets[c] + (rotation[c] + callEdge[depth]++) % degree];
+					if (!visited[d]) {
+						visited[d] = true;
+						entry[d] = post;
+						rotation[d] = random.nextInt(offsets[d + 1] - offsets[d] + 1);
+						depth++;
+						callComponent[depth] = d;
+						callEdge[depth] = 0;
+					}
+				} else {
+					// Every dependency is done, so their intervals are known
+					hi[c] = post++;
+					lo[c] = hi[c];
+					for (int i = offsets[c]; i < offsets[c + 1]; i++) {
+						lo[c] = Math.min(lo[c], lo[targets[i]]);
+					}
+					depth--;
+				}
+			}
+		}
+		low[k] = lo;
+		high[k] = hi;
+		if (k == 0) {
+			System.arraycopy(entry, 0, treeLow, 0, count);
+		}
+	}
+}
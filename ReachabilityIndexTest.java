@@ -0,0 +1,125 @@
+///////////////////////////////////////////////////////////////////////////////
+//
+// Title:           ReachabilityIndexTest
+// Files:           ReachabilityIndexTest, ReachabilityIndex, ReachabilityCache
+// Course:          CS400 LEC001, Spring, 2020
+//
+// Author:          Binh Quoc Trinh (Bon)
+// Email:           btrinh@wisc.edu
+// Lecturer's Name: Debra Deppeler
+//
+/////////////////////////////// 80 COLUMNS WIDE ///////////////////////////////
+
+
+import static org.junit.jupiter.api.Assertions.fail;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * This is the test suite for the reachability index
+ * @author Bon
+ *
+ */
+public class ReachabilityIndexTest {
+
+	/**
+	 * Helper method to build a random graph with a few cycles
+	 * @param random - the random numbers
+	 * @param n - the number of vertices
+	 * @return the graph
+	 */
+	private static Graph randomGraph(Random random, int n) {
+		Graph g = new Graph();
+		for (int i = 0; i < n; i++) {
+			g.addVertex("P" + i);
+			for (int d = 0; d < 2 && i > 0; d++) {
+				g.addEdge("P" + i, "P" + random.nextInt(i));
+			}
+		}
+		for (int c = 0; c < 5; c++) {
+			g.addEdge("P" + random.nextInt(n), "P" + random.nextInt(n));
+		}
+		return g;
+	}
+
+	/**
+	 * Test if the index gives the same answers as a search of the graph,
+	 * cycles included
+	 */
+	@Test
+	public void test00_dependsOn_matches_search() {
+		Random random = new Random(5);
+		for (int round = 0; round < 5; round++) {
+			int n = 300;
+			Graph g = randomGraph(random, n);
+			ReachabilityIndex index = ReachabilityIndex.of(g);
+			for (int a = 0; a < n; a++) {
+				for (int b = 0; b < n; b += 3) {
+					String pkg = "P" + a;
+					String dependency = "P" + b;
+					if (index.dependsOn(pkg, dependency) != ReachabilityCache.search(g, pkg, dependency)) {
+						fail();
+					}
+				}
+			}
+		}
+		Graph g = new Graph();
+		g.addEdge("A", "B");
+		g.addEdge("B", "A");
+		g.addEdge("C", "A");
+		ReachabilityIndex index = ReachabilityIndex.of(g);
+		if (!index.dependsOn("A", "A") || index.dependsOn("C", "C") || !index.dependsOn("C", "B")
+				|| index.dependsOn("A", "C") || index.dependsOn("A", "Z")) {
+			fail();
+		}
+	}
+
+	/**
+	 * Test if the package manager keeps answering right while the graph
+	 * changes, patching the index and rebuilding it
+	 */
+	@Test
+	public void test01_dependsOn_follows_changes() {
+		Random random = new Random(9);
+		int n = 200;
+		Graph g = randomGraph(random, n);
+		PackageManager pm = new PackageManager(g);
+		try {
+			for (int change = 0; change < 3 * ReachabilityCache.DIRTY_LIMIT; change++) {
+				String from = "P" + random.nextInt(n);
+				String to = "P" + random.nextInt(n);
+				if (random.nextBoolean()) {
+					g.addEdge(from, to);
+				} else if (!g.getAdjacentVerticesOf(from).isEmpty()) {
+					g.removeEdge(from, g.getAdjacentVerticesOf(from).get(0));
+				}
+				for (int q = 0; q < 50; q++) {
+					String pkg = "P" + random.nextInt(n);
+					String dependency = "P" + random.nextInt(n);
+					if (pm.dependsOn(pkg, dependency) != ReachabilityCache.search(g, pkg, dependency)) {
+						fail();
+					}
+				}
+			}
+			// New packages and removed ones
+			g.addEdge("NEW", "P0");
+			if (!pm.dependsOn("NEW", "P0") || pm.dependsOn("P0", "NEW")) {
+				fail();
+			}
+			g.removeVertex("NEW");
+			g.addVertex("NEW");
+			if (pm.dependsOn("NEW", "P0")) {
+				fail();
+			}
+		} catch (Exception e) {
+			fail();
+		}
+		try {
+			pm.dependsOn("P0", "Z");
+			fail();
+		} catch (PackageNotFoundException e) {
+		}
+	}
+}
@@ -0,0 +1,106 @@
+import java.util.Arrays;
+
+/**
+ * Filename:   Version.java
+ * Project:    p4
+ * Authors:    Bon
+ *
+ * A release number made of dot separated non-negative numbers, such as
+ * 1.4.2. Versions compare number by number, and missing trailing numbers
+ * count as 0, so 1.4 and 1.4.0 are the same version.
+ */
+public final class Version implements Comparable<Version> {
+	private final int[] parts; // without trailing zeros
+	private final String text;
+
+	/**
+	 * Constructor
+	 * @param parts - the numbers
+	 */
+	private Version(int[] parts, String text) {
+		int n = parts.length;
+		while (n > 0 && parts[n - 1] == 0) {
+			n--;
+		}
+		this.parts = Arrays.copyOf(parts, n);
+		this.text = text;
+	}
+
+	/**
+	 * Parse a version
+	 * @param text - the version, e.g. "1.4.2"
+	 * @return the version
+	 * @throws IllegalArgumentException if the text is not a version
+	 */
+	public static Version parse(String text) {
+		String[] fields = text.trim().split("\\.", -1);
+		int[] parts = new int[fields.length];
+		for (int i = 0; i < fields.length; i++) {
+			try {
+				parts[i] = Integer.parseInt(fields[i]);
+			} catch (NumberFormatException e) {
+				parts[i] = -1;
+			}
+			if (parts[i] < 0 || fields[i].startsWith("+")) {
+				throw new IllegalArgumentException("Not a version: " + text);
+			}
+		}
+		return new Version(parts, text.trim());
+	}
+
+	/**
+	 * Return the version made of the given numbers
+	 * @param parts - the numbers, none negative
+	 * @return the version
+	 */
+	public static Version of(int... parts) {
+		StringBuilder text = new StringBuilder();
+		for (int part : parts) {
+			if (part < 0) {
+				throw new IllegalArgumentException("Negative version number " + part);
+			}
+			text.append(text.length() == 0 ? "" : ".").append(part);
+		}
+		return new Version(parts, text.length() == 0 ? "0" : text.toString());
+	}
+
+	/**
+	 * Return one of the numbers of the version
+	 * @param i - the position, 0 for the major number
+	 * @return the number, 0 past the last one
+	 */
+	public int part(int i) {
+		return i < parts.length ? parts[i] : 0;
+	}
+
+	@Override
+	public int compareTo(Version other) {
+		int n = Math.max(parts.length, other.parts.length);
+		for (int i = 0; i < n; i++) {
+			int c = Integer.compare(part(i), other.part(i));
+			if (c != 0) {
+				return c;
+			}
+		}
+		return 0;
+	}
+
+	@Override
+	public boolean equals(Object other) {
+		return other instanceof Version && Arrays.equals(parts, ((Version) other).parts);
+	}
+
+	@Override
+	public int hashCode() {
+		return Arrays.hashCode(parts);
+	}
+
+	/**
+	 * Return the version as it was written
+	 * @return the text
+	 */
+	@Override
+	public String toString() {
+		return text;
+	}
+}
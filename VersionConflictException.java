@@ -0,0 +1,19 @@
+/**
+ * Filename:   VersionConflictException.java
+ * Project:    p4
+ * Authors:    Bon
+ *
+ * Thrown by VersionResolver when no set of versions satisfies every
+ * dependency range.
+ */
+@SuppressWarnings("serial")
+public class VersionConflictException extends Exception {
+
+	/**
+	 * Constructor
+	 * @param message - the conflict that was found
+	 */
+	public VersionConflictException(String message) {
+		super(message);
+	}
+}
@@ -0,0 +1,284 @@
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Filename:   VersionRange.java
+ * Project:    p4
+ * Authors:    Bon
+ *
+ * A set of versions a dependency accepts, written the usual way:
+ *
+ *     *                  any version
+ *     1.4.2  =1.4.2      exactly that version
+ *     >=1.2 <2           every comparator must hold
+ *     ^1.4.2             >=1.4.2 <2, or <0.5 for ^0.4.2
+ *     ~1.4.2             >=1.4.2 <1.5
+ *     ^1.2 || >=3        either one
+ *
+ * Comparators can also be separated by commas. A range is kept as a
+ * union of intervals, so testing a version is a few comparisons and the
+ * matching versions of a sorted list are found by binary search.
+ */
+public final class VersionRange {
+	// Matches every version
+	public static final VersionRange ANY = parse("*");
+
+	private final List<Interval> intervals;
+	private final String text;
+	private final int hash; // ranges are looked up in maps while resolving
+
+	/**
+	 * The versions between two bounds
+	 */
+	private static final class Interval {
+		Version lower; // null if unbounded
+		boolean lowerIncluded;
+		Version upper; // null if unbounded
+		boolean upperIncluded;
+
+		/**
+		 * Return whether the version is in the interval
+		 * @param v - the version
+		 * @return true if it is
+		 */
+		boolean contains(Version v) {
+			if (lower != null) {
+				int c = v.compareTo(lower);
+				if (c < 0 || c == 0 && !lowerIncluded) {
+					return false;
+				}
+			}
+			if (upper != null) {
+				int c = v.compareTo(upper);
+				if (c > 0 || c == 0 && !upperIncluded) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		/**
+		 * Raise the lower bound if the given one is higher
+		 */
+		void atLeast(Version v, boolean included) {
+			int c = lower == null ? 1 : v.compareTo(lower);
+			if (c > 0 || c == 0 && !included) {
+				lower = v;
+				lowerIncluded = included;
+			}
+		}
+
+		/**
+		 * Lower the upper bound if the given one is lower
+		 */
+		void atMost(Version v, boolean included) {
+			int c = upper == null ? -1 : v.compareTo(upper);
+			if (c < 0 || c == 0 && !included) {
+				upper = v;
+				upperIncluded = included;
+			}
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			if (!(other instanceof Interval)) {
+				return false;
+			}
+			Interval i = (Interval) other;
+			return Objects.equals(lower, i.lower) && Objects.equals(upper, i.upper)
+					&& (lower == null || lowerIncluded == i.lowerIncluded)
+					&& (upper == null || upperIncluded == i.upperIncluded);
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(lower, upper);
+		}
+	}
+
+	/**
+	 * Constructor
+	 * @param intervals - the intervals, none empty
+	 * @param text - the range as it was written
+	 */
+	private VersionRange(List<Interval> intervals, String text) {
+		this.intervals = intervals;
+		this.text = text;
+		hash = intervals.hashCode();
+	}
+
+	/**
+	 * Parse a range
+	 * @param text - the range, e.g. "^1.2 || >=3"
+	 * @return the range
+	 * @throws IllegalArgumentException if the text is not a range
+	 */
+	public static VersionRange parse(String text) {
+		List<Interval> intervals = new ArrayList<Interval>();
+		for (String alternative : text.split("\\|\\|", -1)) {
+			// Join operators to their versions, then split the comparators
+			String[] comparators = alternative.trim().replaceAll("(>=|<=|>|<|=|\\^|~)\\s+", "$1").split("[\\s,]+");
+			Interval interval = new Interval();
+			for (String comparator : comparators) {
+				restrict(interval, comparator, text);
+			}
+			if (!isEmpty(interval)) {
+				intervals.add(interval);
+			}
+		}
+		return new VersionRange(intervals, text.trim());
+	}
+
+	/**
+	 * Return the range holding exactly one version
+	 * @param version - the version
+	 * @return the range
+	 */
+	public static VersionRange exactly(Version version) {
+		return parse("=" + version);
+	}
+
+	/**
+	 * Return whether the range accepts a version
+	 * @param version - the version
+	 * @return true if it does
+	 */
+	public boolean contains(Version version) {
+		for (Interval interval : intervals) {
+			if (interval.contains(version)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Return the positions of the versions the range accepts in a sorted
+	 * array, found by binary search
+	 * @param sorted - versions in increasing order
+	 * @return the positions of the accepted versions
+	 */
+	BitSet matches(Version[] sorted) {
+		BitSet found = new BitSet(sorted.length);
+		for (Interval interval : intervals) {
+			int from = 0;
+			int to = sorted.length;
+			if (interval.lower != null) {
+				from = search(sorted, interval.lower, !interval.lowerIncluded);
+			}
+			if (interval.upper != null) {
+				to = search(sorted, interval.upper, interval.upperIncluded);
+			}
+			if (from < to) {
+				found.set(from, to);
+			}
+		}
+		return found;
+	}
+
+	@Override
+	public boolean equals(Object other) {
+		return other instanceof VersionRange && intervals.equals(((VersionRange) other).intervals);
+	}
+
+	@Override
+	public int hashCode() {
+		return hash;
+	}
+
+	/**
+	 * Return the range as it was written
+	 * @return the text
+	 */
+	@Override
+	public String toString() {
+		return text;
+	}
+
+	/**
+	 * Helper method to narrow an interval by one comparator
+	 * @param interval - the interval
+	 * @param comparator - the comparator, e.g. ">=1.2"
+	 * @param text - the whole range, for the error message
+	 */
+	private static void restrict(Interval interval, String comparator, String text) {
+		if (comparator.isEmpty() || comparator.equals("*") || comparator.equalsIgnoreCase("x")) {
+			return;
+		}
+		try {
+			if (comparator.startsWith(">=")) {
+				interval.atLeast(Version.parse(comparator.substring(2)), true);
+			} else if (comparator.startsWith("<=")) {
+				interval.atMost(Version.parse(comparator.substring(2)), true);
+			} else if (comparator.startsWith(">")) {
+				interval.atLeast(Version.parse(comparator.substring(1)), false);
+			} else if (comparator.startsWith("<")) {
+				interval.atMost(Version.parse(comparator.substring(1)), false);
+			} else if (comparator.startsWith("^") || comparator.startsWith("~")) {
+				String version = comparator.substring(1);
+				Version v = Version.parse(version);
+				int written = version.split("\\.").length;
+				int last; // the number that is raised for the upper bound
+				if (comparator.startsWith("~")) {
+					last = written > 1 ? 1 : 0;
+				} else {
+					last = 0;
+					while (last < written - 1 && v.part(last) == 0) {
+						last++;
+					}
+				}
+				int[] upper = new int[last + 1];
+				for (int i = 0; i < last; i++) {
+					upper[i] = v.part(i);
+				}
+				upper[last] = v.part(last) + 1;
+				interval.atLeast(v, true);
+				interval.atMost(Version.of(upper), false);
+			} else {
+				Version v = Version.parse(comparator.startsWith("=") ? comparator.substring(1) : comparator);
+				interval.atLeast(v, true);
+				interval.atMost(v, true);
+			}
+		} catch (IllegalArgumentException e) {
+			throw new IllegalArgumentException("Not a version range: " + text);
+		}
+	}
+
+	/**
+	 * Helper method to check whether an interval holds no version
+	 * @param interval - the interval
+	 * @return true if it is empty
+	 */
+	private static boolean isEmpty(Interval interval) {
+		if (interval.lower == null || interval.upper == null) {
+			return false;
+		}
+		int c = interval.lower.compareTo(interval.upper);
+		return c > 0 || c == 0 && !(interval.lowerIncluded && interval.upperIncluded);
+	}
+
+	/**
+	 * Helper method to find the first position in a sorted array holding
+	 * a version above the given one, or at least the given one
+	 * @param sorted - versions in increasing order
+	 * @param v - the version
+	 * @param above - true to skip versions equal to v
+	 * @return the position, sorted.length if there is none
+	 */
+	private static int search(Version[] sorted, Version v, boolean above) {
+		int low = 0;
+		int high = sorted.length;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			int c = sorted[mid].compareTo(v);
+			if (c < 0 || c == 0 && above) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+		return low;
+	}
+}
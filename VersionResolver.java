@@ -0,0 +1,486 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * Filename:   VersionResolver.java
+ * Project:    p4
+ * Authors:    Bon
+ *
+ * Chooses one version of every package needed by a set of requirements,
+ * such that every chosen release accepts the chosen versions of its
+ * dependencies.
+ *
+ * The releases of every package are kept sorted by version, so the
+ * versions a range accepts are found by binary search and remembered as
+ * a bit set per package and range. The search decides the packages that
+ * are needed dependents first, in the order of the strongly connected
+ * components of the graph of all releases, so a package is only decided
+ * once every needed package that can depend on it has narrowed its
+ * versions, and it takes the newest version left. Choosing a release
+ * narrows the allowed versions of its
+ * dependencies at once, so a dependency left without versions is a
+ * conflict right away. Every narrowing remembers the choice it came from,
+ * so when a package runs out of versions the search jumps straight back
+ * to the latest choice that took part in the conflict, over the choices
+ * that had nothing to do with it, and that choice remembers the others
+ * for when it runs out in turn (conflict-directed backjumping). The
+ * releases chosen by those choices can never be chosen together, so the
+ * combination is remembered and ruled out at once wherever the search
+ * meets it again.
+ *
+ * The chosen versions can be turned into a dependency graph with graphOf
+ * and handed to PackageManager for installation orders.
+ */
+public class VersionResolver {
+	private static final Metrics.Histogram RESOLVE = Metrics.timer("VersionResolver.resolve");
+	private static final Metrics.Histogram BACKTRACKS = Metrics.histogram("VersionResolver.backtracks");
+
+	private final Map<String, Entry> entries = new HashMap<String, Entry>();
+
+	// State of a resolution
+	private final List<Entry> needed = new ArrayList<Entry>(); // in the order they were needed
+	private final PriorityQueue<Entry> open = new PriorityQueue<Entry>((a, b) -> Integer.compare(b.rank, a.rank)); // needed packages to decide, may hold stale ones
+	private final List<Entry> narrowed = new ArrayList<Entry>(); // trail of allowed changes
+	private final List<BitSet> previous = new ArrayList<BitSet>(); // allowed before each change
+	private final List<Entry> learners = new ArrayList<Entry>(); // packages with nogoods
+	private int learned; // number of nogoods
+	private String conflict; // last conflict found
+
+	// Most combinations remembered by one resolution
+	private static final int MAX_NOGOODS = 1 << 16;
+
+	/**
+	 * The releases of one package
+	 */
+	private static final class Entry {
+		final String name;
+		int rank; // dependents come first
+		final VersionedPackage[] releases; // by increasing version
+		final Version[] versions;
+		Entry[][] dependencies; // per release, null for unknown packages
+		VersionRange[][] ranges;
+		BitSet[][] accepted; // per release, the versions of each dependency it accepts
+		final Map<VersionRange, BitSet> matches = new HashMap<VersionRange, BitSet>();
+		BitSet allowed; // releases allowed so far, null if all
+		int[] narrowedBy = new int[4]; // depths of the choices that narrowed allowed
+		int narrowings;
+		int choice = -1; // chosen release, -1 if none
+		int chosenAt; // depth of the choice
+		int neededBy; // depth of the choice that first needed the package
+		boolean needed;
+		Map<Integer, List<Nogood>> nogoods; // release -> combinations it is in
+
+		Entry(String name, VersionedPackage[] releases) {
+			this.name = name;
+			this.releases = releases;
+			versions = new Version[releases.length];
+			for (int i = 0; i < releases.length; i++) {
+				versions[i] = releases[i].getVersion();
+			}
+		}
+
+		/**
+		 * Add the depths of the choices that narrowed the allowed versions
+		 * @param depths - the set to add to
+		 */
+		void addNarrowers(BitSet depths) {
+			for (int k = 0; k < narrowings; k++) {
+				depths.set(narrowedBy[k]);
+			}
+		}
+
+		/**
+		 * Return the releases a range accepts, found once per range
+		 * @param range - the range
+		 * @return the positions of the releases, not to be changed
+		 */
+		BitSet matches(VersionRange range) {
+			BitSet found = matches.get(range);
+			if (found == null) {
+				found = range.matches(versions);
+				matches.put(range, found);
+			}
+			return found;
+		}
+	}
+
+	/**
+	 * Releases that cannot be chosen together
+	 */
+	private static final class Nogood {
+		final Entry[] entries;
+		final int[] choices;
+
+		Nogood(Entry[] entries, int[] choices) {
+			this.entries = entries;
+			this.choices = choices;
+		}
+
+		/**
+		 * Return whether every release but the one of a package is chosen
+		 * @param entry - the package
+		 * @return true if they are
+		 */
+		boolean chosenBesides(Entry entry) {
+			for (int k = 0; k < entries.length; k++) {
+				if (entries[k] != entry && entries[k].choice != choices[k]) {
+					return false;
+				}
+			}
+			return true;
+		}
+	}
+
+	/**
+	 * A choice of the search: the package and the versions left to try
+	 */
+	private static final class Frame {
+		final Entry entry;
+		final int trail; // size of the trail when the package was chosen
+		final int needs; // number of needed packages then
+		final int depth; // number of choices down to this one
+		final BitSet conflicts = new BitSet(); // depths of earlier choices that ruled versions out
+		int next; // next release to try, downwards
+
+		Frame(Entry entry, int trail, int needs, int depth) {
+			this.entry = entry;
+			this.trail = trail;
+			this.needs = needs;
+			this.depth = depth;
+			next = entry.releases.length - 1;
+		}
+	}
+
+	/**
+	 * Constructor
+	 * @param releases - every known release of every package
+	 * @throws IllegalArgumentException if a release is listed twice
+	 */
+	public VersionResolver(Collection<VersionedPackage> releases) {
+		Map<String, List<VersionedPackage>> byName = new LinkedHashMap<String, List<VersionedPackage>>();
+		for (VersionedPackage release : releases) {
+			byName.computeIfAbsent(release.getName(), k -> new ArrayList<VersionedPackage>()).add(release);
+		}
+		for (List<VersionedPackage> list : byName.values()) {
+			list.sort(Comparator.comparing(VersionedPackage::getVersion));
+			for (int i = 1; i < list.size(); i++) {
+				if (list.get(i).getVersion().equals(list.get(i - 1).getVersion())) {
+					throw new IllegalArgumentException("Release " + list.get(i) + " is listed twice");
+				}
+			}
+			Entry entry = new Entry(list.get(0).getName(), list.toArray(new VersionedPackage[0]));
+			entries.put(entry.name, entry);
+		}
+		// Look the dependencies up once and rank the packages
+		Graph graph = new Graph();
+		for (Entry entry : entries.values()) {
+			graph.addVertex(entry.name);
+			entry.dependencies = new Entry[entry.releases.length][];
+			entry.ranges = new VersionRange[entry.releases.length][];
+			entry.accepted = new BitSet[entry.releases.length][];
+			for (int i = 0; i < entry.releases.length; i++) {
+				Map<String, VersionRange> ranges = entry.releases[i].getDependencyRanges();
+				entry.dependencies[i] = new Entry[ranges.size()];
+				entry.ranges[i] = new VersionRange[ranges.size()];
+				entry.accepted[i] = new BitSet[ranges.size()];
+				int j = 0;
+				for (Map.Entry<String, VersionRange> range : ranges.entrySet()) {
+					Entry dependency = entries.get(range.getKey());
+					entry.dependencies[i][j] = dependency;
+					entry.ranges[i][j] = range.getValue();
+					entry.accepted[i][j++] = dependency == null ? null : dependency.matches(range.getValue());
+					graph.addEdge(entry.name, range.getKey());
+				}
+			}
+		}
+		GraphIndex index = GraphIndex.of(graph);
+		int[] components = index.components();
+		for (Entry entry : entries.values()) {
+			entry.rank = components[index.id(entry.name)];
+		}
+	}
+
+	/**
+	 * Return the known versions of a package
+	 * @param name - the package
+	 * @return the versions in increasing order, empty if the package is
+	 * not known
+	 */
+	public List<Version> getVersions(String name) {
+		Entry entry = entries.get(name);
+		if (entry == null) {
+			return Collections.emptyList();
+		}
+		List<Version> versions = new ArrayList<Version>(entry.versions.length);
+		Collections.addAll(versions, entry.versions);
+		return versions;
+	}
+
+	/**
+	 * Choose a version of every package the requirements need, directly
+	 * or through dependencies, preferring newer versions
+	 * @param requirements - package name -> accepted versions
+	 * @return package name -> chosen version, in the order the packages
+	 * were first needed
+	 * @throws PackageNotFoundException if a required package is not known
+	 * @throws VersionConflictException if no choice satisfies every range
+	 */
+	public synchronized Map<String, Version> resolve(Map<String, VersionRange> requirements)
+			throws PackageNotFoundException, VersionConflictException {
+		long start = Metrics.start();
+		int backtracks = 0;
+		try {
+			for (Map.Entry<String, VersionRange> requirement : requirements.entrySet()) {
+				Entry entry = entries.get(requirement.getKey());
+				if (entry == null) {
+					throw new PackageNotFoundException();
+				}
+				if (!narrow(entry, entry.matches(requirement.getValue()), 0)) {
+					throw new VersionConflictException("No version of " + entry.name + " matches " + requirement.getValue());
+				}
+			}
+			List<Frame> frames = new ArrayList<Frame>();
+			while (true) {
+				Entry next = open.poll();
+				while (next != null && (!next.needed || next.choice >= 0)) {
+					next = open.poll();
+				}
+				if (next == null) {
+					break;
+				}
+				Frame frame = new Frame(next, narrowed.size(), needed.size(), frames.size() + 1);
+				frames.add(frame);
+				while (!advance(frame)) {
+					// No version worked: blame the choices that ruled versions
+					// out and the one that needed the package
+					BitSet culprits = frame.conflicts;
+					frame.entry.addNarrowers(culprits);
+					culprits.set(frame.entry.neededBy);
+					culprits.clear(0);
+					culprits.clear(frame.depth);
+					int target = culprits.length() - 1;
+					if (target < 1) {
+						throw new VersionConflictException("No consistent versions: " + conflict);
+					}
+					learn(frames, culprits);
+					// Jump back to the latest of them, undoing the choices after it
+					open.add(frames.remove(frames.size() - 1).entry);
+					while (frames.size() > target) {
+						Frame skipped = frames.remove(frames.size() - 1);
+						undo(skipped);
+						open.add(skipped.entry);
+					}
+					frame = frames.get(target - 1);
+					culprits.clear(target);
+					frame.conflicts.or(culprits);
+					backtracks++;
+				}
+			}
+			Map<String, Version> versions = new LinkedHashMap<String, Version>();
+			for (Entry entry : needed) {
+				versions.put(entry.name, entry.versions[entry.choice]);
+			}
+			return versions;
+		} finally {
+			for (Entry entry : needed) {
+				entry.allowed = null;
+				entry.narrowings = 0;
+				entry.choice = -1;
+				entry.needed = false;
+			}
+			for (Entry entry : learners) {
+				entry.nogoods = null;
+			}
+			learners.clear();
+			learned = 0;
+			needed.clear();
+			open.clear();
+			narrowed.clear();
+			previous.clear();
+			conflict = null;
+			BACKTRACKS.record(backtracks);
+			RESOLVE.stop(start);
+		}
+	}
+
+	/**
+	 * Build the dependency graph of chosen versions, for PackageManager
+	 * @param versions - package name -> version, as returned by resolve
+	 * @return the graph, an edge from every package to its dependencies
+	 * @throws IllegalArgumentException if a version is not known
+	 */
+	public GraphADT graphOf(Map<String, Version> versions) {
+		Graph graph = new Graph();
+		for (Map.Entry<String, Version> version : versions.entrySet()) {
+			Entry entry = entries.get(version.getKey());
+			int i = entry == null ? -1 : Arrays.binarySearch(entry.versions, version.getValue());
+			if (i < 0) {
+				throw new IllegalArgumentException("Release " + version.getKey() + "@" + version.getValue() + " is not known");
+			}
+			graph.addVertex(entry.name);
+			for (String dependency : entry.releases[i].getDependencyRanges().keySet()) {
+				graph.addEdge(entry.name, dependency);
+			}
+		}
+		return graph;
+	}
+
+	/**
+	 * Helper method to try the next version of a choice, newest first,
+	 * undoing whatever the previous version did
+	 * @param frame - the choice
+	 * @return true if a version was chosen, false if none is left
+	 */
+	private boolean advance(Frame frame) {
+		Entry entry = frame.entry;
+		undo(frame);
+		for (int i = frame.next; i >= 0; i--) {
+			if (entry.allowed != null && (i = entry.allowed.previousSetBit(i)) < 0) {
+				break;
+			}
+			frame.next = i - 1;
+			if (choose(frame, i)) {
+				return true;
+			}
+			undo(frame);
+		}
+		return false;
+	}
+
+	/**
+	 * Helper method to choose a release and narrow its dependencies. On a
+	 * conflict, the earlier choices that caused it are added to the
+	 * conflicts of the frame.
+	 * @param frame - the choice
+	 * @param i - the release
+	 * @return false if a dependency has no version left
+	 */
+	private boolean choose(Frame frame, int i) {
+		Entry entry = frame.entry;
+		entry.choice = i;
+		entry.chosenAt = frame.depth;
+		List<Nogood> nogoods = entry.nogoods == null ? null : entry.nogoods.get(i);
+		if (nogoods != null) {
+			for (Nogood nogood : nogoods) {
+				if (nogood.chosenBesides(entry)) {
+					conflict = entry.releases[i] + " failed before with the same choices";
+					for (Entry other : nogood.entries) {
+						if (other != entry) {
+							frame.conflicts.set(other.chosenAt);
+						}
+					}
+					return false;
+				}
+			}
+		}
+		Entry[] dependencies = entry.dependencies[i];
+		for (int j = 0; j < dependencies.length; j++) {
+			Entry dependency = dependencies[j];
+			if (dependency == null) {
+				conflict = entry.releases[i] + " needs an unknown package";
+				return false;
+			}
+			if (!narrow(dependency, entry.accepted[i][j], frame.depth)) {
+				conflict = entry.releases[i] + " needs " + dependency.name + " " + entry.ranges[i][j];
+				if (dependency.choice >= 0) {
+					frame.conflicts.set(dependency.chosenAt);
+				} else {
+					dependency.addNarrowers(frame.conflicts);
+				}
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Helper method to remember that the releases chosen at some depths
+	 * cannot be chosen together
+	 * @param frames - the choices, by depth
+	 * @param depths - the depths
+	 */
+	private void learn(List<Frame> frames, BitSet depths) {
+		if (learned == MAX_NOGOODS) {
+			return;
+		}
+		learned++;
+		Entry[] entries = new Entry[depths.cardinality()];
+		int[] choices = new int[entries.length];
+		int k = 0;
+		for (int depth = depths.nextSetBit(0); depth >= 0; depth = depths.nextSetBit(depth + 1)) {
+			entries[k] = frames.get(depth - 1).entry;
+			choices[k++] = entries[k - 1].choice;
+		}
+		Nogood nogood = new Nogood(entries, choices);
+		for (k = 0; k < entries.length; k++) {
+			if (entries[k].nogoods == null) {
+				entries[k].nogoods = new HashMap<Integer, List<Nogood>>();
+				learners.add(entries[k]);
+			}
+			entries[k].nogoods.computeIfAbsent(choices[k], c -> new ArrayList<Nogood>()).add(nogood);
+		}
+	}
+
+	/**
+	 * Helper method to allow only the versions of a package a range
+	 * accepts, and mark the package as needed
+	 * @param entry - the package
+	 * @param accepted - the versions the range accepts
+	 * @param depth - depth of the choice that needs the range, 0 for a
+	 * requirement
+	 * @return false, changing nothing, if no allowed version is left or
+	 * the chosen one is not accepted
+	 */
+	private boolean narrow(Entry entry, BitSet accepted, int depth) {
+		BitSet allowed = accepted;
+		if (entry.allowed != null) {
+			allowed = (BitSet) entry.allowed.clone();
+			allowed.and(accepted);
+		}
+		if (entry.choice >= 0 ? !allowed.get(entry.choice) : allowed.isEmpty()) {
+			return false;
+		}
+		if (entry.allowed == null ? accepted.cardinality() < entry.releases.length : !allowed.equals(entry.allowed)) {
+			narrowed.add(entry);
+			previous.add(entry.allowed);
+			entry.allowed = allowed;
+			if (entry.narrowings == entry.narrowedBy.length) {
+				entry.narrowedBy = Arrays.copyOf(entry.narrowedBy, 2 * entry.narrowings);
+			}
+			entry.narrowedBy[entry.narrowings++] = depth;
+		}
+		if (!entry.needed) {
+			entry.needed = true;
+			entry.neededBy = depth;
+			needed.add(entry);
+			open.add(entry);
+		}
+		return true;
+	}
+
+	/**
+	 * Helper method to undo everything since a choice was made, including
+	 * the choice itself
+	 * @param frame - the choice
+	 */
+	private void undo(Frame frame) {
+		for (int k = narrowed.size() - 1; k >= frame.trail; k--) {
+			Entry entry = narrowed.remove(k);
+			entry.allowed = previous.remove(k);
+			entry.narrowings--;
+		}
+		for (int k = needed.size() - 1; k >= frame.needs; k--) {
+			needed.remove(k).needed = false;
+		}
+		frame.entry.choice = -1;
+	}
+}
@@ -0,0 +1,183 @@
+///////////////////////////////////////////////////////////////////////////////
+//
+// Title:           VersionResolverTest
+// Files:           VersionResolverTest, VersionResolver, VersionRange, Version
+// Course:          CS400 LEC001, Spring, 2020
+//
+// Author:          Binh Quoc Trinh (Bon)
+// Email:           btrinh@wisc.edu
+// Lecturer's Name: Debra Deppeler
+//
+/////////////////////////////// 80 COLUMNS WIDE ///////////////////////////////
+
+
+import static org.junit.jupiter.api.Assertions.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * This is the test suite for the version resolver
+ * @author Bon
+ *
+ */
+public class VersionResolverTest {
+
+	/**
+	 * Helper method to build requirements
+	 * @param names - name, range, name, range, ...
+	 * @return name -> range
+	 */
+	private static Map<String, VersionRange> require(String... names) {
+		Map<String, VersionRange> requirements = new HashMap<String, VersionRange>();
+		for (int i = 0; i < names.length; i += 2) {
+			requirements.put(names[i], VersionRange.parse(names[i + 1]));
+		}
+		return requirements;
+	}
+
+	/**
+	 * Test if versions compare number by number and ranges accept the
+	 * right versions
+	 */
+	@Test
+	public void test00_ranges() {
+		assert(Version.parse("1.10").compareTo(Version.parse("1.9")) > 0);
+		assert(Version.parse("1.2").equals(Version.parse("1.2.0")));
+		assert(VersionRange.parse("^1.2.3").contains(Version.parse("1.9")));
+		assert(!VersionRange.parse("^1.2.3").contains(Version.parse("2.0")));
+		assert(!VersionRange.parse("^0.4.2").contains(Version.parse("0.5")));
+		assert(VersionRange.parse("~1.4.2").contains(Version.parse("1.4.9")));
+		assert(!VersionRange.parse("~1.4.2").contains(Version.parse("1.5")));
+		assert(VersionRange.parse(">= 1.2, <2 || 3.1").contains(Version.parse("3.1.0")));
+		assert(!VersionRange.parse(">=1.2 <2 || 3.1").contains(Version.parse("2.5")));
+		assert(VersionRange.parse("*").contains(Version.parse("0.0.1")));
+		assert(VersionRange.parse(">=1 <2").equals(VersionRange.parse("^1.0")));
+		try {
+			VersionRange.parse(">=1.a");
+			fail();
+		} catch (IllegalArgumentException e) {}
+	}
+
+	/**
+	 * Test if the newest consistent versions are chosen, going back when
+	 * the newest version of a package conflicts with a later one
+	 */
+	@Test
+	public void test01_resolve_backtracks() {
+		try {
+			List<VersionedPackage> releases = Arrays.asList(
+					new VersionedPackage("A", "1.0", "B ^1", "C"),
+					new VersionedPackage("B", "1.0", "D ^1"),
+					new VersionedPackage("B", "1.5", "D ^2"),
+					new VersionedPackage("C", "1.0", "D <2"),
+					new VersionedPackage("D", "1.3"),
+					new VersionedPackage("D", "2.1"));
+			VersionResolver resolver = new VersionResolver(releases);
+			Map<String, Version> versions = resolver.resolve(require("A", "*"));
+			// B 1.5 needs D 2, which C does not accept
+			if (!versions.get("B").equals(Version.parse("1.0")) || !versions.get("D").equals(Version.parse("1.3"))
+					|| versions.size() != 4) {
+				fail();
+			}
+			// The chosen versions give installation orders
+			PackageManager pm = new PackageManager(resolver.graphOf(versions));
+			if (!pm.getInstallationOrder("A").get(0).equals("D")) {
+				fail();
+			}
+			// Alone, B takes its newest version
+			if (!resolver.resolve(require("B", "*")).get("D").equals(Version.parse("2.1"))) {
+				fail();
+			}
+		} catch (Exception e) {
+			fail();
+		}
+	}
+
+	/**
+	 * Test if conflicts and unknown packages are reported
+	 */
+	@Test
+	public void test02_resolve_conflict() {
+		VersionResolver resolver = new VersionResolver(Arrays.asList(
+				new VersionedPackage("A", "1.0", "C ^1"),
+				new VersionedPackage("B", "1.0", "C ^2"),
+				new VersionedPackage("C", "1.0"),
+				new VersionedPackage("C", "2.0"),
+				new VersionedPackage("E", "1.0", "X")));
+		try {
+			resolver.resolve(require("A", "*", "B", "*"));
+			fail();
+		} catch (VersionConflictException e) {
+		} catch (Exception e) {
+			fail();
+		}
+		try {
+			resolver.resolve(require("E", "*"));
+			fail();
+		} catch (VersionConflictException e) {
+		} catch (Exception e) {
+			fail();
+		}
+		try {
+			resolver.resolve(require("Z", "*"));
+			fail();
+		} catch (PackageNotFoundException e) {
+		} catch (Exception e) {
+			fail();
+		}
+		// A failed resolution leaves nothing behind
+		try {
+			if (!resolver.resolve(require("A", "*")).get("C").equals(Version.parse("1.0"))) {
+				fail();
+			}
+		} catch (Exception e) {
+			fail();
+		}
+	}
+
+	/**
+	 * Test if a large registry resolves to versions accepted by every
+	 * chosen release
+	 */
+	@Test
+	public void test03_resolve_large() {
+		Random random = new Random(3);
+		List<VersionedPackage> releases = new ArrayList<VersionedPackage>();
+		int n = 3000;
+		for (int p = 0; p < n; p++) {
+			for (int v = 1; v <= 4; v++) {
+				List<String> dependencies = new ArrayList<String>();
+				for (int d = 0; d < 3 && p > 0; d++) {
+					dependencies.add("p" + random.nextInt(p) + " >=" + (1 + random.nextInt(2)));
+				}
+				releases.add(new VersionedPackage("p" + p, v + ".0", dependencies.toArray(new String[0])));
+			}
+		}
+		VersionResolver resolver = new VersionResolver(releases);
+		Map<String, VersionRange> requirements = new HashMap<String, VersionRange>();
+		for (int p = n - 100; p < n; p++) {
+			requirements.put("p" + p, VersionRange.parse("*"));
+		}
+		try {
+			Map<String, Version> versions = resolver.resolve(requirements);
+			for (VersionedPackage release : releases) {
+				if (release.getVersion().equals(versions.get(release.getName()))) {
+					for (Map.Entry<String, VersionRange> range : release.getDependencyRanges().entrySet()) {
+						if (!range.getValue().contains(versions.get(range.getKey()))) {
+							fail();
+						}
+					}
+				}
+			}
+		} catch (Exception e) {
+			fail();
+		}
+	}
+}
@@ -0,0 +1,682 @@
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * Filename:   VersionedGraph.java
+ * Project:    p4
+ * Authors:    Bon
+ *
+ * Graph for serving queries from many threads while it is being changed.
+ *
+ * Writers change a private Graph under a lock. Readers never see it:
+ * they read an immutable version of it that is published through a
+ * volatile field, so reads take no lock and every reader sees a
+ * consistent graph. Writers publish the new version before they release
+ * the lock, after every single mutator call or at the end of every
+ * update() batch, so snapshot() is a plain volatile read.
+ *
+ * Versions share their structure. Every vertex has a fixed id, and a
+ * version keeps the rows of the vertices in pages of PAGE ids: a new
+ * version copies the page table and only the pages holding the vertices
+ * that changed, so one edge change copies a few hundred references
+ * rather than the whole graph.
+ */
+public class VersionedGraph implements ObservableGraph {
+	// Latency of the graph operations, see Metrics
+	private static final Metrics.Histogram ADD_VERTEX = Metrics.timer("VersionedGraph.addVertex");
+	private static final Metrics.Histogram REMOVE_VERTEX = Metrics.timer("VersionedGraph.removeVertex");
+	private static final Metrics.Histogram ADD_EDGE = Metrics.timer("VersionedGraph.addEdge");
+	private static final Metrics.Histogram REMOVE_EDGE = Metrics.timer("VersionedGraph.removeEdge");
+	private static final Metrics.Histogram UPDATE = Metrics.timer("VersionedGraph.update");
+	private static final Metrics.Histogram PUBLISH = Metrics.timer("VersionedGraph.publish");
+
+	// log2 of the number of vertex ids per page of a version
+	private static final int PAGE_BITS = 8;
+	private static final int PAGE = 1 << PAGE_BITS;
+	private static final String[] NO_ADJACENT = new String[0];
+
+	private final Graph master; // guarded by this
+	private final GraphADT writer = new Writer(); // guarded by this
+	private final Set<String> touched = new HashSet<String>(); // guarded by this, rows to publish
+	private final Set<String> changed = new HashSet<String>(); // guarded by this, for the listeners
+	private final List<GraphListener> listeners = new ArrayList<GraphListener>(); // guarded by this
+	// Vertex name -> id; ids are never reused, so all versions share the map
+	private final Map<String, Integer> ids = new ConcurrentHashMap<String, Integer>();
+	private int nextId; // guarded by this
+	private volatile Version current;
+
+	/*
+	 * Default no-argument constructor
+	 */
+	public VersionedGraph() {
+		master = new Graph();
+		master.addListener(changed::add);
+		current = new Version(new Row[0][], ids, 0, 0, 0, 0);
+	}
+
+	/**
+	 * Return the latest version of the graph. The returned graph does not
+	 * follow later changes and is safe to query from any thread without
+	 * locking; changing it copies it first.
+	 * @return the latest version
+	 */
+	public GraphADT snapshot() {
+		return current;
+	}
+
+	/**
+	 * Return the number of the latest published version
+	 * @return the version number, increased by every publication
+	 */
+	public long version() {
+		return current.number;
+	}
+
+	/**
+	 * Apply several changes atomically and publish them as one version.
+	 * Readers see either none or all of the changes: if the changes throw,
+	 * the ones made so far are undone and nothing is published.
+	 * @param changes - receives the graph to change
+	 */
+	public synchronized void update(Consumer<GraphADT> changes) {
+		long start = Metrics.start();
+		try {
+			apply(changes);
+		} finally {
+			UPDATE.stop(start);
+		}
+	}
+
+	/**
+	 * Register a listener to be told about every vertex whose dependencies
+	 * change, when the change is published
+	 * @param listener - the listener
+	 */
+	@Override
+	public synchronized void addListener(GraphListener listener) {
+		listeners.add(listener);
+	}
+
+	/**
+	 * Add vertex to the graph, do nothing if the vertex is null
+	 * @param vertex - the vertex needs adding
+	 */
+	@Override
+	public synchronized void addVertex(String vertex) {
+		long start = Metrics.start();
+		try {
+			apply(w -> w.addVertex(vertex));
+		} finally {
+			ADD_VERTEX.stop(start);
+		}
+	}
+
+	/**
+	 * Remove the vertex from the graph
+	 * @param vertex - the vertex needs removing
+	 */
+	@Override
+	public synchronized void removeVertex(String vertex) {
+		long start = Metrics.start();
+		try {
+			apply(w -> w.removeVertex(vertex));
+		} finally {
+			REMOVE_VERTEX.stop(start);
+		}
+	}
+
+	/**
+	 * Add the edge to the graph
+	 * @param vertex1 - the starting point
+	 * @param vertex2 - the destination
+	 */
+	@Override
+	public synchronized void addEdge(String vertex1, String vertex2) {
+		long start = Metrics.start();
+		try {
+			apply(w -> w.addEdge(vertex1, vertex2));
+		} finally {
+			ADD_EDGE.stop(start);
+		}
+	}
+
+	/**
+	 * Remove the edge from the graph
+	 * @param vertex1 - the starting point
+	 * @param vertex2 - the destination
+	 */
+	@Override
+	public synchronized void removeEdge(String vertex1, String vertex2) {
+		long start = Metrics.start();
+		try {
+			apply(w -> w.removeEdge(vertex1, vertex2));
+		} finally {
+			REMOVE_EDGE.stop(start);
+		}
+	}
+
+	/**
+	 * Return the set of all vertices in the latest version
+	 * @return set of all vertices
+	 */
+	@Override
+	public Set<String> getAllVertices() {
+		return new HashSet<String>(current.vertices());
+	}
+
+	/**
+	 * Return the list of all vertices adjacent to the given one in the
+	 * latest version
+	 * @param vertex - the vertex needs finding adjacent vertices
+	 * @return the list of all adjacent vertices
+	 */
+	@Override
+	public List<String> getAdjacentVerticesOf(String vertex) {
+		return new ArrayList<String>(current.adjacent(vertex));
+	}
+
+	/**
+	 * Return whether a vertex is in the latest version
+	 * @param vertex - the vertex
+	 * @return true if it is
+	 */
+	@Override
+	public boolean containsVertex(String vertex) {
+		return current.row(vertex) != null;
+	}
+
+	/**
+	 * Return whether an edge is in the latest version
+	 * @param vertex1 - the starting point
+	 * @param vertex2 - the destination
+	 * @return true if it is
+	 */
+	@Override
+	public boolean containsEdge(String vertex1, String vertex2) {
+		return vertex2 != null && current.adjacent(vertex1).contains(vertex2);
+	}
+
+	/**
+	 * Return a view of all the vertices of the latest version. The view
+	 * stays on that version: take a new one to see later changes.
+	 * @return the vertices
+	 */
+	@Override
+	public Set<String> getVertexView() {
+		return current.vertices();
+	}
+
+	/**
+	 * Return a view of the vertices adjacent to the given one in the
+	 * latest version, which stays on that version like getVertexView
+	 * @param vertex - the vertex needs finding adjacent vertices
+	 * @return the adjacent vertices, empty if the vertex is not in the graph
+	 */
+	@Override
+	public Collection<String> getAdjacentViewOf(String vertex) {
+		return current.adjacent(vertex);
+	}
+
+	/**
+	 * Return the size of the latest version
+	 * @return size
+	 */
+	@Override
+	public int size() {
+		return current.size;
+	}
+
+	/**
+	 * Return the order of the latest version
+	 * @return order
+	 */
+	@Override
+	public int order() {
+		return current.order;
+	}
+
+	/**
+	 * Helper method to make changes to master and publish them, or undo
+	 * them if they throw
+	 * @param changes - receives the graph to change
+	 */
+	private void apply(Consumer<GraphADT> changes) {
+		try {
+			changes.accept(writer);
+		} catch (RuntimeException | Error e) {
+			rollback();
+			throw e;
+		}
+		publish();
+	}
+
+	/**
+	 * Helper method to bring the rows that changed back to the latest
+	 * version, dropping the ids handed out since, without publishing
+	 */
+	private void rollback() {
+		Version base = current;
+		// Vertices that are new go first, taking their edges along
+		for (String vertex : touched) {
+			if (base.row(vertex) == null) {
+				master.removeVertex(vertex);
+			}
+		}
+		for (String vertex : touched) {
+			Row row = base.row(vertex);
+			if (row == null) {
+				continue;
+			}
+			master.addVertex(vertex);
+			Set<String> adjacent = new HashSet<String>(Arrays.asList(row.adjacent));
+			for (String d : master.getAdjacentVerticesOf(vertex)) {
+				if (!adjacent.remove(d)) {
+					master.removeEdge(vertex, d);
+				}
+			}
+			// What is left was removed by the changes
+			for (String d : adjacent) {
+				master.addEdge(vertex, d);
+			}
+		}
+		for (String vertex : touched) {
+			if (ids.get(vertex) >= base.bound) {
+				ids.remove(vertex);
+			}
+		}
+		nextId = base.bound;
+		touched.clear();
+		changed.clear();
+	}
+
+	/**
+	 * Helper method to publish the rows that changed as a new version,
+	 * copying only the pages that hold them. Listeners are told about the
+	 * changed vertices after the version is published, so anything
+	 * computed from an older version can be recognised as stale.
+	 */
+	private void publish() {
+		if (touched.isEmpty() && changed.isEmpty()) {
+			return;
+		}
+		long start = Metrics.start();
+		try {
+			Version base = current;
+			int bound = nextId;
+			Row[][] pages = Arrays.copyOf(base.pages, (bound + PAGE - 1) >>> PAGE_BITS);
+			boolean[] copied = new boolean[pages.length];
+			int order = base.order;
+			int size = base.size;
+			for (String vertex : touched) {
+				int id = ids.get(vertex);
+				int p = id >>> PAGE_BITS;
+				if (!copied[p]) {
+					pages[p] = pages[p] == null ? new Row[PAGE] : pages[p].clone();
+					copied[p] = true;
+				}
+				Row old = pages[p][id & (PAGE - 1)];
+				if (old != null) {
+					order--;
+					size -= old.adjacent.length;
+				}
+				Row row = null;
+				if (master.containsVertex(vertex)) {
+					Collection<String> adjacent = master.getAdjacentViewOf(vertex);
+					row = new Row(vertex, adjacent.isEmpty() ? NO_ADJACENT : adjacent.toArray(NO_ADJACENT));
+					order++;
+					size += row.adjacent.length;
+				}
+				pages[p][id & (PAGE - 1)] = row;
+			}
+			touched.clear();
+			current = new Version(pages, ids, bound, order, size, base.number + 1);
+			for (String vertex : changed) {
+				for (GraphListener listener : listeners) {
+					listener.dependenciesChanged(vertex);
+				}
+			}
+			changed.clear();
+		} finally {
+			PUBLISH.stop(start);
+		}
+	}
+
+	/**
+	 * Helper method to remember a vertex whose row has to be published,
+	 * giving it an id on first sight
+	 * @param vertex - the vertex
+	 */
+	private void touch(String vertex) {
+		if (vertex != null) {
+			if (!ids.containsKey(vertex)) {
+				ids.put(vertex, nextId++);
+			}
+			touched.add(vertex);
+		}
+	}
+
+	/**
+	 * A vertex and the vertices it has edges to, shared between versions
+	 */
+	private static final class Row {
+		final String name;
+		final String[] adjacent;
+
+		Row(String name, String[] adjacent) {
+			this.name = name;
+			this.adjacent = adjacent;
+		}
+	}
+
+	/**
+	 * The graph writers change: master, remembering which rows changed.
+	 * Only used with the lock of the VersionedGraph held. Rows are
+	 * remembered before master changes, and only if it does change.
+	 */
+	private final class Writer implements GraphADT {
+
+		@Override
+		public void addVertex(String vertex) {
+			if (vertex == null || master.containsVertex(vertex)) {
+				return;
+			}
+			touch(vertex);
+			master.addVertex(vertex);
+		}
+
+		@Override
+		public void removeVertex(String vertex) {
+			if (!master.containsVertex(vertex)) {
+				return;
+			}
+			// The rows of its dependents lose it too
+			for (String dependent : master.getDependentsOf(vertex)) {
+				touch(dependent);
+			}
+			touch(vertex);
+			master.removeVertex(vertex);
+		}
+
+		@Override
+		public void addEdge(String vertex1, String vertex2) {
+			if (vertex1 == null || vertex2 == null || master.containsEdge(vertex1, vertex2)) {
+				return;
+			}
+			touch(vertex1);
+			touch(vertex2);
+			master.addEdge(vertex1, vertex2);
+		}
+
+		@Override
+		public void removeEdge(String vertex1, String vertex2) {
+			if (!master.containsEdge(vertex1, vertex2)) {
+				return;
+			}
+			touch(vertex1);
+			master.removeEdge(vertex1, vertex2);
+		}
+
+		@Override
+		public Set<String> getAllVertices() {
+			return master.getAllVertices();
+		}
+
+		@Override
+		public List<String> getAdjacentVerticesOf(String vertex) {
+			return master.getAdjacentVerticesOf(vertex);
+		}
+
+		@Override
+		public boolean containsVertex(String vertex) {
+			return master.containsVertex(vertex);
+		}
+
+		@Override
+		public boolean containsEdge(String vertex1, String vertex2) {
+			return master.containsEdge(vertex1, vertex2);
+		}
+
+		@Override
+		public Set<String> getVertexView() {
+			return master.getVertexView();
+		}
+
+		@Override
+		public Collection<String> getAdjacentViewOf(String vertex) {
+			return master.getAdjacentViewOf(vertex);
+		}
+
+		@Override
+		public List<String> getDependentsOf(String vertex) {
+			return master.getDependentsOf(vertex);
+		}
+
+		@Override
+		public int size() {
+			return master.size();
+		}
+
+		@Override
+		public int order() {
+			return master.order();
+		}
+	}
+
+	/**
+	 * One published version. Its pages are never changed once it is
+	 * published; changing the version copies it into a Graph first.
+	 */
+	private static final class Version implements GraphADT {
+		final Row[][] pages; // id >> PAGE_BITS -> page, null rows for absent vertices
+		final Map<String, Integer> ids; // shared, may hold ids of later vertices
+		final int bound; // ids below it were handed out before this version
+		final int order;
+		final int size;
+		final long number;
+		private volatile Graph written; // copy made by the first change, null before
+
+		Version(Row[][] pages, Map<String, Integer> ids, int bound, int order, int size, long number) {
+			this.pages = pages;
+			this.ids = ids;
+			this.bound = bound;
+			this.order = order;
+			this.size = size;
+			this.number = number;
+		}
+
+		/**
+		 * Return the row of a vertex in this version as published
+		 * @param vertex - the vertex
+		 * @return the row, or null if the vertex is not in this version
+		 */
+		Row row(String vertex) {
+			Integer id = vertex == null ? null : ids.get(vertex);
+			if (id == null || id >= bound) {
+				return null;
+			}
+			return pages[id >>> PAGE_BITS][id & (PAGE - 1)];
+		}
+
+		@Override
+		public void addVertex(String vertex) {
+			writable().addVertex(vertex);
+		}
+
+		@Override
+		public void removeVertex(String vertex) {
+			writable().removeVertex(vertex);
+		}
+
+		@Override
+		public void addEdge(String vertex1, String vertex2) {
+			writable().addEdge(vertex1, vertex2);
+		}
+
+		@Override
+		public void removeEdge(String vertex1, String vertex2) {
+			writable().removeEdge(vertex1, vertex2);
+		}
+
+		@Override
+		public Set<String> getAllVertices() {
+			Graph copy = written;
+			if (copy != null) {
+				return copy.getAllVertices();
+			}
+			return new HashSet<String>(vertices());
+		}
+
+		@Override
+		public List<String> getAdjacentVerticesOf(String vertex) {
+			Graph copy = written;
+			if (copy != null) {
+				return copy.getAdjacentVerticesOf(vertex);
+			}
+			return new ArrayList<String>(adjacent(vertex));
+		}
+
+		@Override
+		public boolean containsVertex(String vertex) {
+			Graph copy = written;
+			if (copy != null) {
+				return copy.containsVertex(vertex);
+			}
+			return row(vertex) != null;
+		}
+
+		@Override
+		public boolean containsEdge(String vertex1, String vertex2) {
+			Graph copy = written;
+			if (copy != null) {
+				return copy.containsEdge(vertex1, vertex2);
+			}
+			return vertex2 != null && adjacent(vertex1).contains(vertex2);
+		}
+
+		@Override
+		public Set<String> getVertexView() {
+			Graph copy = written;
+			return copy != null ? copy.getVertexView() : vertices();
+		}
+
+		@Override
+		public Collection<String> getAdjacentViewOf(String vertex) {
+			Graph copy = written;
+			return copy != null ? copy.getAdjacentViewOf(vertex) : adjacent(vertex);
+		}
+
+		@Override
+		public int size() {
+			Graph copy = written;
+			return copy != null ? copy.size() : size;
+		}
+
+		@Override
+		public int order() {
+			Graph copy = written;
+			return copy != null ? copy.order() : order;
+		}
+
+		/**
+		 * Return a view of the vertices of this version as published,
+		 * whatever was changed in the copy
+		 * @return the vertices
+		 */
+		Set<String> vertices() {
+			return new AbstractSet<String>() {
+				@Override
+				public boolean contains(Object o) {
+					return o instanceof String && row((String) o) != null;
+				}
+
+				@Override
+				public int size() {
+					return order;
+				}
+
+				@Override
+				public Iterator<String> iterator() {
+					return new Iterator<String>() {
+						private int id = advance(0);
+
+						@Override
+						public boolean hasNext() {
+							return id < bound;
+						}
+
+						@Override
+						public String next() {
+							if (id >= bound) {
+								throw new NoSuchElementException();
+							}
+							String name = pages[id >>> PAGE_BITS][id & (PAGE - 1)].name;
+							id = advance(id + 1);
+							return name;
+						}
+					};
+				}
+			};
+		}
+
+		/**
+		 * Return a view of the vertices adjacent to the given one in this
+		 * version as published
+		 * @param vertex - the vertex
+		 * @return the adjacent vertices, empty if the vertex is not in it
+		 */
+		Collection<String> adjacent(String vertex) {
+			Row row = row(vertex);
+			return row == null ? Collections.<String>emptyList() : Collections.unmodifiableList(Arrays.asList(row.adjacent));
+		}
+
+		/**
+		 * Helper method to find the first id from the given one that is a
+		 * vertex of this version
+		 * @param id - the id to start from
+		 * @return the id, or bound if there is none
+		 */
+		private int advance(int id) {
+			while (id < bound) {
+				Row[] page = pages[id >>> PAGE_BITS];
+				if (page == null) {
+					id = (id | (PAGE - 1)) + 1;
+				} else if (page[id & (PAGE - 1)] == null) {
+					id++;
+				} else {
+					return id;
+				}
+			}
+			return bound;
+		}
+
+		/**
+		 * Helper method to return the copy to change, copying the version
+		 * on the first change
+		 * @return the copy
+		 */
+		private synchronized Graph writable() {
+			if (written == null) {
+				Graph copy = new Graph();
+				for (String vertex : vertices()) {
+					copy.addVertex(vertex);
+					for (String adjacent : adjacent(vertex)) {
+						copy.addEdge(vertex, adjacent);
+					}
+				}
+				written = copy;
+			}
+			return written;
+		}
+	}
+}
@@ -0,0 +1,202 @@
+///////////////////////////////////////////////////////////////////////////////
+//
+// Title:           VersionedGraphTest
+// Files:           VersionedGraphTest, VersionedGraph
+// Course:          CS400 LEC001, Spring, 2020
+//
+// Author:          Binh Quoc Trinh (Bon)
+// Email:           btrinh@wisc.edu
+// Lecturer's Name: Debra Deppeler
+//
+/////////////////////////////// 80 COLUMNS WIDE ///////////////////////////////
+
+
+import static org.junit.jupiter.api.Assertions.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * This is the test suite for the versioned graph class
+ * @author Bon
+ *
+ */
+public class VersionedGraphTest {
+	VersionedGraph g; // The graph used for the test
+
+	/**
+	 * Called before each test
+	 * @throws Exception
+	 */
+	@Before
+	public void setUp() throws Exception {
+		g = new VersionedGraph();
+	}
+
+	/**
+	 * Called after each test
+	 * @throws Exception
+	 */
+	@After
+	public void tearDown() throws Exception {
+		g = null;
+	}
+
+	/**
+	 * Test if a snapshot keeps its state after later changes
+	 */
+	@Test
+	public void test00_snapshot_does_not_change() {
+		g.addEdge("A", "B");
+		GraphADT before = g.snapshot();
+		long version = g.version();
+		g.addEdge("B", "C");
+		g.removeVertex("A");
+		assert(before.order() == 2 && before.size() == 1);
+		assert(g.order() == 2 && g.size() == 1);
+		assert(g.getAdjacentVerticesOf("B").get(0).equals("C"));
+		assert(g.version() > version);
+	}
+
+	/**
+	 * Test if readers only ever see whole update batches
+	 */
+	@Test
+	public void test01_update_is_atomic() throws Exception {
+		AtomicBoolean torn = new AtomicBoolean();
+		AtomicBoolean done = new AtomicBoolean();
+		Thread[] readers = new Thread[4];
+		for (int t = 0; t < readers.length; t++) {
+			readers[t] = new Thread(() -> {
+				while (!done.get()) {
+					// Every batch adds two vertices and the edge between them
+					GraphADT s = g.snapshot();
+					if (s.order() != 2 * s.size()) {
+						torn.set(true);
+					}
+				}
+			});
+			readers[t].start();
+		}
+		for (int i = 0; i < 200; i++) {
+			int n = i;
+			g.update(w -> {
+				w.addVertex("a" + n);
+				w.addVertex("b" + n);
+				w.addEdge("a" + n, "b" + n);
+			});
+		}
+		done.set(true);
+		for (Thread reader : readers) {
+			reader.join();
+		}
+		if (torn.get() || g.size() != 200) {
+			fail();
+		}
+	}
+
+	/**
+	 * Test if listeners hear about changes when they are published
+	 */
+	@Test
+	public void test02_listener_on_publish() {
+		List<String> changed = new ArrayList<String>();
+		g.addListener(changed::add);
+		g.addEdge("A", "B");
+		g.addVertex("C");
+		assert(changed.equals(Arrays.asList("A")));
+		g.update(w -> w.removeVertex("B"));
+		assert(changed.size() == 2 && changed.get(1).equals("B"));
+	}
+
+	/**
+	 * Test if versions across many pages of vertices stay correct, and if
+	 * changing a version copies it instead of changing the graph
+	 */
+	@Test
+	public void test03_versions_share_pages() {
+		for (int i = 0; i < 1000; i++) {
+			g.addVertex("P" + i);
+		}
+		g.update(w -> {
+			for (int i = 1; i < 1000; i++) {
+				w.addEdge("P" + i, "P" + (i - 1));
+			}
+		});
+		GraphADT before = g.snapshot();
+		g.removeVertex("P500");
+		g.addEdge("P0", "P999");
+		if (before.order() != 1000 || before.size() != 999 || !before.containsEdge("P501", "P500")
+				|| before.containsEdge("P0", "P999") || before.getVertexView().size() != 1000) {
+			fail();
+		}
+		if (g.order() != 999 || g.size() != 998 || g.containsVertex("P500")
+				|| !g.getAdjacentViewOf("P501").isEmpty() || !g.containsEdge("P0", "P999")
+				|| g.getAllVertices().size() != 999) {
+			fail();
+		}
+		GraphADT after = g.snapshot();
+		after.addEdge("P500", "P1");
+		if (!after.containsEdge("P500", "P1") || g.containsVertex("P500") || after.order() != 1000) {
+			fail();
+		}
+	}
+
+	/**
+	 * Test if a batch that throws changes nothing, and the graph keeps
+	 * working after it
+	 */
+	@Test
+	public void test04_update_throws() {
+		g.addEdge("A", "B");
+		g.addEdge("A", "C");
+		long version = g.version();
+		try {
+			g.update(w -> {
+				w.removeEdge("A", "B");
+				w.addEdge("A", "B");
+				w.addEdge("D", "A");
+				w.removeVertex("C");
+				throw new IllegalStateException();
+			});
+			fail();
+		} catch (IllegalStateException e) {
+			// expected
+		}
+		List<String> adjacent = g.getAdjacentVerticesOf("A");
+		if (g.version() != version || !new HashSet<String>(adjacent).equals(new HashSet<String>(Arrays.asList("B", "C")))
+				|| g.containsVertex("D") || g.order() != 3 || g.size() != 2) {
+			fail();
+		}
+		g.update(w -> w.addEdge("C", "D"));
+		if (!g.getAdjacentVerticesOf("A").equals(adjacent) || !g.containsEdge("C", "D")
+				|| g.getDependentsOf("D").size() != 1 || g.order() != 4) {
+			fail();
+		}
+	}
+
+	/**
+	 * Test if changes that change nothing publish no version
+	 */
+	@Test
+	public void test05_no_change_no_version() {
+		g.addEdge("A", "B");
+		long version = g.version();
+		for (int i = 0; i < 5; i++) {
+			g.removeEdge("ghost" + i, "A");
+		}
+		g.addEdge("A", "B");
+		g.addVertex("B");
+		g.removeVertex("ghost");
+		if (g.version() != version || g.containsVertex("ghost0") || g.order() != 2) {
+			fail();
+		}
+	}
+}
@@ -0,0 +1,89 @@
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Filename:   VersionedPackage.java
+ * Project:    p4
+ * Authors:    Bon
+ *
+ * One release of a package: a package with a version, whose dependencies
+ * each accept a range of versions of another package. The dependency
+ * names are also the dependencies of the Package.
+ */
+public class VersionedPackage extends Package {
+	private final Version version;
+	private final Map<String, VersionRange> ranges;
+
+	/**
+	 * Constructor
+	 * @param name - the package name
+	 * @param version - the version of this release
+	 * @param dependencies - dependency name -> accepted versions
+	 */
+	public VersionedPackage(String name, Version version, Map<String, VersionRange> dependencies) {
+		super(name, dependencies.keySet().toArray(new String[0]));
+		this.version = version;
+		this.ranges = Collections.unmodifiableMap(new LinkedHashMap<String, VersionRange>(dependencies));
+	}
+
+	/**
+	 * Constructor for a release written as text
+	 * @param name - the package name
+	 * @param version - the version of this release, e.g. "1.4.2"
+	 * @param dependencies - each a package name, optionally followed by a
+	 * space and a range, e.g. "B ^1.2"; a name alone accepts any version
+	 * @throws IllegalArgumentException if a version or range is malformed
+	 */
+	public VersionedPackage(String name, String version, String... dependencies) {
+		this(name, Version.parse(version), parse(dependencies));
+	}
+
+	/**
+	 * Return the version of this release
+	 * @return the version
+	 */
+	public Version getVersion() {
+		return version;
+	}
+
+	/**
+	 * Return the accepted versions of every dependency
+	 * @return dependency name -> range, in the order they were given
+	 */
+	public Map<String, VersionRange> getDependencyRanges() {
+		return ranges;
+	}
+
+	/**
+	 * The dependencies are fixed by the ranges
+	 * @throws UnsupportedOperationException always
+	 */
+	@Override
+	public void setDependencies(String[] dependencies) {
+		throw new UnsupportedOperationException("Dependencies of a versioned package are fixed");
+	}
+
+	/**
+	 * Return the release as name@version
+	 * @return the text
+	 */
+	@Override
+	public String toString() {
+		return getName() + "@" + version;
+	}
+
+	/**
+	 * Helper method to parse the dependencies written as text
+	 * @param dependencies - "name range" for each dependency
+	 * @return name -> range
+	 */
+	private static Map<String, VersionRange> parse(String[] dependencies) {
+		Map<String, VersionRange> ranges = new LinkedHashMap<String, VersionRange>();
+		for (String dependency : dependencies) {
+			String[] fields = dependency.trim().split("\\s+", 2);
+			ranges.put(fields[0], fields.length > 1 ? VersionRange.parse(fields[1]) : VersionRange.ANY);
+		}
+		return ranges;
+	}
+}